@@ -0,0 +1,152 @@
+# hotel_embeddings.py
+#
+# Local, batched embedding precomputation for hotel documents. Instead of sending a
+# "$vectorize" string with every hotel (one embedding-provider call per document inside
+# Astra during insert_many), the migration can embed the hotel text in-process and write
+# "$vector" directly.
+#
+# * The model is pluggable: EMBEDDING_PROVIDER is "sentence_transformers" (default, runs on
+#   CPU) or "<module>:<Class>" for any class implementing EmbeddingModel.
+# * Identical texts are embedded once per call.
+# * Vectors are cached on disk (SQLite) by a hash of model name and text, so re-runs and
+#   re-migrations only embed hotels whose text changed.
+#
+# The default model matches the vectorize service configured on the hotel collection
+# (sentence-transformers/all-MiniLM-L6-v2, 384 dimensions), so query-time $vectorize sorts
+# in the backend keep working against precomputed vectors.
+import hashlib
+import importlib
+import logging
+import os
+import sqlite3
+import threading
+from array import array
+
+# --- Configuration ---
+EMBEDDING_PROVIDER = os.getenv("EMBEDDING_PROVIDER", "sentence_transformers")
+EMBEDDING_MODEL = os.getenv("EMBEDDING_MODEL", "sentence-transformers/all-MiniLM-L6-v2")
+EMBEDDING_DEVICE = os.getenv("EMBEDDING_DEVICE", "cpu")
+EMBEDDING_BATCH_SIZE = int(os.getenv("EMBEDDING_BATCH_SIZE", "256")) # Texts per model call
+EMBEDDING_CACHE_FILE = os.getenv("EMBEDDING_CACHE_FILE", "embedding_cache.sqlite")
+
+
+# --- Models ---
+
+class EmbeddingModel:
+    """Interface for in-process embedding models used by HotelEmbedder."""
+
+    def __init__(self, model_name: str, device: str):
+        self.model_name = model_name
+        self.device = device
+
+    def embed(self, texts: list) -> list:
+        """Returns one vector (list of floats) per input text."""
+        raise NotImplementedError
+
+
+class SentenceTransformerModel(EmbeddingModel):
+    """sentence-transformers model; normalized embeddings to match cosine similarity in Astra."""
+
+    def __init__(self, model_name: str, device: str):
+        super().__init__(model_name, device)
+        from sentence_transformers import SentenceTransformer # Optional dependency, only needed for this stage
+        logging.info(f"Loading embedding model '{model_name}' on device '{device}'...")
+        self.model = SentenceTransformer(model_name, device=device)
+
+    def embed(self, texts: list) -> list:
+        vectors = self.model.encode(texts, batch_size=EMBEDDING_BATCH_SIZE, normalize_embeddings=True,
+                                    convert_to_numpy=True, show_progress_bar=False)
+        return [vector.tolist() for vector in vectors]
+
+
+def load_model() -> EmbeddingModel:
+    if EMBEDDING_PROVIDER == "sentence_transformers":
+        return SentenceTransformerModel(EMBEDDING_MODEL, EMBEDDING_DEVICE)
+    module_name, _, class_name = EMBEDDING_PROVIDER.partition(":")
+    model_class = getattr(importlib.import_module(module_name), class_name)
+    return model_class(EMBEDDING_MODEL, EMBEDDING_DEVICE)
+
+
+# --- Vector Cache ---
+
+class EmbeddingCache:
+    """On-disk vector cache keyed by sha256(model name, text), stored as float32 blobs."""
+
+    def __init__(self, path: str):
+        self.lock = threading.Lock()
+        self.conn = sqlite3.connect(path, check_same_thread=False)
+        self.conn.execute("CREATE TABLE IF NOT EXISTS embeddings (key TEXT PRIMARY KEY, vector BLOB NOT NULL)")
+        self.conn.commit()
+
+    @staticmethod
+    def key(model_name: str, text: str) -> str:
+        return hashlib.sha256(f"{model_name}\0{text}".encode("utf-8")).hexdigest()
+
+    def get_many(self, keys: list) -> dict:
+        found = {}
+        with self.lock:
+            for i in range(0, len(keys), 500): # Stay below SQLite's bound-parameter limit
+                chunk = keys[i:i + 500]
+                rows = self.conn.execute(
+                    f"SELECT key, vector FROM embeddings WHERE key IN ({','.join('?' * len(chunk))})", chunk)
+                for key, blob in rows:
+                    found[key] = array("f", blob).tolist()
+        return found
+
+    def put_many(self, entries: dict):
+        with self.lock:
+            self.conn.executemany("INSERT OR REPLACE INTO embeddings (key, vector) VALUES (?, ?)",
+                                  [(key, array("f", vector).tobytes()) for key, vector in entries.items()])
+            self.conn.commit()
+
+
+# --- Embedding Stage ---
+
+class HotelEmbedder:
+    """Replaces "$vectorize" text on prepared hotel documents with a locally computed "$vector"."""
+
+    def __init__(self, dimension: int, model: EmbeddingModel = None, cache_path: str = EMBEDDING_CACHE_FILE):
+        self.dimension = dimension
+        self.model = model or load_model()
+        self.cache = EmbeddingCache(cache_path)
+        self.model_lock = threading.Lock()
+        self.documents = 0
+        self.cache_hits = 0
+        self.embedded = 0
+
+    def embed_documents(self, docs: list) -> list:
+        """Embeds all documents carrying "$vectorize" in place and returns the list."""
+        pending = [doc for doc in docs if doc.get("$vectorize")]
+        if not pending:
+            return docs
+
+        keys = {}
+        for doc in pending:
+            keys.setdefault(EmbeddingCache.key(self.model.model_name, doc["$vectorize"]), doc["$vectorize"])
+        vectors = self.cache.get_many(list(keys))
+        misses = [key for key in keys if key not in vectors]
+
+        for i in range(0, len(misses), EMBEDDING_BATCH_SIZE):
+            batch_keys = misses[i:i + EMBEDDING_BATCH_SIZE]
+            with self.model_lock:
+                batch_vectors = self.model.embed([keys[key] for key in batch_keys])
+            computed = dict(zip(batch_keys, batch_vectors))
+            for vector in computed.values():
+                if len(vector) != self.dimension:
+                    raise ValueError(f"Embedding model '{self.model.model_name}' returned {len(vector)} dimensions, "
+                                     f"expected {self.dimension}")
+            self.cache.put_many(computed)
+            vectors.update(computed)
+
+        for doc in pending:
+            doc["$vector"] = vectors[EmbeddingCache.key(self.model.model_name, doc.pop("$vectorize"))]
+
+        self.documents += len(pending)
+        self.cache_hits += len(keys) - len(misses)
+        self.embedded += len(misses)
+        logging.debug(f"Embedded {len(pending)} hotels: {len(keys)} unique texts, {len(misses)} computed, "
+                      f"{len(keys) - len(misses)} from cache.")
+        return docs
+
+    def summary(self) -> str:
+        return f"{self.documents} documents, {self.embedded} texts embedded, {self.cache_hits} cache hits"
@@ -2,12 +2,15 @@
 import json
 import logging
 import os
+import threading
 import time
 from concurrent.futures import ThreadPoolExecutor, as_completed
 from datetime import timedelta
 import collections
 from dotenv import load_dotenv
 
+import hotel_embeddings
+
 # Using astrapy now
 from astrapy import DataAPIClient
 from astrapy.constants import VectorMetric
@@ -48,9 +51,27 @@ DOCUMENT_TYPES_TO_MIGRATE = ["airline", "airport", "route", "landmark", "hotel",
 VECTOR_DIMENSION = 384 # Match dimension expected by $vectorize service (e.g., all-MiniLM-L6-v2)
 VECTOR_METRIC = VectorMetric.COSINE # Use Enum for builder syntax
 VECTOR_SOURCE_FIELDS = ["name", "description", "address", "city", "state", "country"] # Used for $vectorize
+# Compute hotel embeddings locally in batches (hotel_embeddings.py) and write $vector instead of
+# sending $vectorize text for Astra to embed per document during insert_many.
+PRECOMPUTE_HOTEL_EMBEDDINGS = os.getenv("PRECOMPUTE_HOTEL_EMBEDDINGS", "false").lower() in ("1", "true", "yes")
+
+# Couchbase fetch configuration
+CB_FETCH_BATCH_SIZE = 50 # Keys fetched from Couchbase per round before handing docs to the insert pipeline
+
+# Adaptive bulk-load configuration (AIMD control of insert_many chunk size and in-flight requests)
+ADAPTIVE_INITIAL_CHUNK_SIZE = 20
+ADAPTIVE_MIN_CHUNK_SIZE = 1
+ADAPTIVE_MAX_CHUNK_SIZE = 100 # Data API limit for documents per insertMany request
+ADAPTIVE_INITIAL_IN_FLIGHT = 1
+ADAPTIVE_MAX_IN_FLIGHT = 16
+ADAPTIVE_TARGET_LATENCY_SECONDS = 2.0 # Requests slower than this count as a congestion signal
+ADAPTIVE_MAX_PAYLOAD_BYTES = 2 * 1024 * 1024 # Upper bound for the JSON size of a single insertMany request
+ADAPTIVE_DECREASE_FACTOR = 0.5 # Multiplicative decrease on throttling/timeouts
+ADAPTIVE_SLOW_DECREASE_FACTOR = 0.8 # Gentler decrease when a request succeeded but exceeded the target latency
+ADAPTIVE_MAX_RETRIES = 5
+ADAPTIVE_BACKOFF_SECONDS = 1.0
 
 # Other configs
-CONCURRENCY = 1 # Set low for debugging/embedding generation
 LOG_LEVEL = logging.INFO
 # Removed DROP_COLLECTIONS_BEFORE_MIGRATION flag
 # DROP_COLLECTIONS_BEFORE_MIGRATION = False
@@ -60,14 +81,20 @@ logging.basicConfig(level=LOG_LEVEL, format='%(asctime)s - %(levelname)s - %(mes
 # --- Astra DB Client Initialization ---
 astra_client = None
 astra_db = None
-try:
-    logging.info("Initializing DataAPIClient...")
-    astra_client = DataAPIClient(ASTRA_APPLICATION_TOKEN)
-    astra_db = astra_client.get_database(ASTRA_API_ENDPOINT, keyspace=ASTRA_KEYSPACE)
-    logging.info(f"DataAPIClient connected to database at {ASTRA_API_ENDPOINT}, targeting keyspace '{ASTRA_KEYSPACE}'.")
-except Exception as e:
-    logging.critical(f"Failed to initialize DataAPIClient or connect to database: {e}", exc_info=True)
-    exit(1)
+
+def connect_astra():
+    """Initializes the DataAPIClient and target database. Exits the process on failure.
+       Kept out of module import so other tools (e.g. the change sync) can reuse this module."""
+    global astra_client, astra_db
+    try:
+        logging.info("Initializing DataAPIClient...")
+        astra_client = DataAPIClient(ASTRA_APPLICATION_TOKEN)
+        astra_db = astra_client.get_database(ASTRA_API_ENDPOINT, keyspace=ASTRA_KEYSPACE)
+        logging.info(f"DataAPIClient connected to database at {ASTRA_API_ENDPOINT}, targeting keyspace '{ASTRA_KEYSPACE}'.")
+    except Exception as e:
+        logging.critical(f"Failed to initialize DataAPIClient or connect to database: {e}", exc_info=True)
+        exit(1)
+    return astra_db
 
 # --- Astra DB Functions ---
 
@@ -120,30 +147,159 @@ def ensure_astra_collection(collection_name: str, vector_enabled: bool = False):
         return None
 
 
-def insert_batch_astra(astra_collection, documents: list, collection_name_for_log: str):
-    """Inserts a batch of documents into a specific Astra collection using astrapy."""
+class AdaptiveInsertController:
+    """AIMD controller for the bulk-load path of a single collection.
+
+    Grows the insert_many chunk size and the number of in-flight requests additively
+    while requests come back under ADAPTIVE_TARGET_LATENCY_SECONDS, and shrinks them
+    multiplicatively on rate-limit/timeout errors (or, more gently, on slow requests).
+    The chunk size is additionally capped so that a request stays below
+    ADAPTIVE_MAX_PAYLOAD_BYTES, based on the observed average document size.
+    """
+
+    def __init__(self, collection_name: str):
+        self.collection_name = collection_name
+        self.chunk_size = float(ADAPTIVE_INITIAL_CHUNK_SIZE)
+        self.in_flight_limit = float(ADAPTIVE_INITIAL_IN_FLIGHT)
+        self.in_flight = 0
+        self.avg_doc_bytes = None
+        self.last_decrease = 0.0
+        self.inserted = 0
+        self.throttled = 0
+        self.start_time = time.time()
+        self._cond = threading.Condition()
+
+    def next_chunk_size(self) -> int:
+        with self._cond:
+            size = int(self.chunk_size)
+            if self.avg_doc_bytes:
+                size = min(size, int(ADAPTIVE_MAX_PAYLOAD_BYTES // self.avg_doc_bytes))
+            return max(ADAPTIVE_MIN_CHUNK_SIZE, min(ADAPTIVE_MAX_CHUNK_SIZE, size))
+
+    def acquire(self):
+        """Blocks until another insert_many request may be put in flight."""
+        with self._cond:
+            while self.in_flight >= int(self.in_flight_limit):
+                self._cond.wait()
+            self.in_flight += 1
+
+    def release(self):
+        with self._cond:
+            self.in_flight -= 1
+            self._cond.notify_all()
+
+    def on_success(self, doc_count: int, payload_bytes: int, latency: float):
+        with self._cond:
+            self.inserted += doc_count
+            doc_bytes = payload_bytes / max(1, doc_count)
+            self.avg_doc_bytes = doc_bytes if self.avg_doc_bytes is None else 0.8 * self.avg_doc_bytes + 0.2 * doc_bytes
+            if latency > ADAPTIVE_TARGET_LATENCY_SECONDS:
+                self._decrease(ADAPTIVE_SLOW_DECREASE_FACTOR, latency)
+            else:
+                # Additive increase: roughly +1 document / +1 request per window of completed requests
+                self.chunk_size = min(ADAPTIVE_MAX_CHUNK_SIZE, self.chunk_size + 1)
+                self.in_flight_limit = min(ADAPTIVE_MAX_IN_FLIGHT, self.in_flight_limit + 1.0 / self.in_flight_limit)
+            self._cond.notify_all()
+
+    def on_throttled(self, latency: float):
+        with self._cond:
+            self.throttled += 1
+            self._decrease(ADAPTIVE_DECREASE_FACTOR, latency)
+
+    def _decrease(self, factor: float, latency: float):
+        # Requests that were already in flight when we backed off report the same congestion
+        # event; only react once per observed round trip.
+        now = time.time()
+        if now - self.last_decrease < latency:
+            return
+        self.last_decrease = now
+        self.chunk_size = max(ADAPTIVE_MIN_CHUNK_SIZE, self.chunk_size * factor)
+        self.in_flight_limit = max(1.0, self.in_flight_limit * factor)
+        logging.info(f"[{self.collection_name}] Backing off: chunk size {int(self.chunk_size)}, in-flight limit {int(self.in_flight_limit)}")
+
+    def docs_per_second(self) -> float:
+        elapsed = time.time() - self.start_time
+        return self.inserted / elapsed if elapsed > 0 else 0.0
+
+
+def is_throttling_error(e: Exception) -> bool:
+    """Best-effort classification of rate-limit and timeout errors raised by astrapy/httpx."""
+    if 'timeout' in type(e).__name__.lower():
+        return True
+    message = str(e).lower()
+    return any(marker in message for marker in ('429', 'too many requests', 'rate limit', 'timed out', 'timeout'))
+
+
+def get_partially_inserted_ids(e: Exception) -> set:
+    """Extracts ids that were inserted before an insert_many failure, if astrapy reports them."""
+    inserted_ids = getattr(e, 'inserted_ids', None)
+    if inserted_ids is None:
+        inserted_ids = getattr(getattr(e, 'partial_result', None), 'inserted_ids', None)
+    return set(inserted_ids or [])
+
+
+def insert_batch_astra(astra_collection, documents: list, collection_name_for_log: str, controller: AdaptiveInsertController):
+    """Inserts documents into a specific Astra collection using astrapy, one insert_many
+       request per chunk. Chunk sizes come from the adaptive controller; chunks that fail
+       with a rate-limit/timeout error are retried (minus any partially inserted documents)
+       after a backoff. The caller must already hold an in-flight slot from the controller; it is
+       kept through backoffs (a worker that waited for a new slot could deadlock with the
+       submitting thread, which takes slots for tasks still queued) and released at the end."""
     if not documents:
+        controller.release()
         return 0
     if not astra_collection:
         logging.error("Invalid Collection object provided to insert_batch_astra.")
+        controller.release()
         return 0
 
+    inserted_count = 0
+    pending = collections.deque(documents)
+    attempts = 0
     try:
-        logging.info(f"Attempting insert_many for {len(documents)} docs into '{collection_name_for_log}'...")
-        result = astra_collection.insert_many(documents)
-        inserted_count = len(result.inserted_ids)
-        logging.debug(f"Astrapy insert_many successful for {inserted_count} docs into '{collection_name_for_log}'.")
-        if inserted_count < len(documents):
-             logging.warning(f"Astrapy insert_many might have partially failed for collection '{collection_name_for_log}'. Expected {len(documents)}, got {inserted_count} IDs.")
-        return inserted_count
-    except Exception as e:
-        logging.error(f"Unexpected error during astrapy insert_many in collection '{collection_name_for_log}': {e}", exc_info=True)
-        try:
-            failing_ids = [doc.get('_id', 'unknown') for doc in documents]
-            logging.error(f"Failing document IDs (attempted batch): {failing_ids}")
-        except Exception as log_e:
-            logging.error(f"Error logging failing document IDs: {log_e}")
-        return 0
+        while pending:
+            chunk = [pending.popleft() for _ in range(min(controller.next_chunk_size(), len(pending)))]
+            payload_bytes = len(json.dumps(chunk, default=str))
+            request_start = time.time()
+            try:
+                logging.debug(f"Attempting insert_many for {len(chunk)} docs ({payload_bytes} bytes) into '{collection_name_for_log}'...")
+                # chunk_size/concurrency are pinned so that the controller, not astrapy, shapes the requests
+                result = astra_collection.insert_many(chunk, chunk_size=len(chunk), concurrency=1)
+                chunk_inserted = len(result.inserted_ids)
+                controller.on_success(chunk_inserted, payload_bytes, time.time() - request_start)
+                inserted_count += chunk_inserted
+                if chunk_inserted < len(chunk):
+                    logging.warning(f"Astrapy insert_many might have partially failed for collection '{collection_name_for_log}'. Expected {len(chunk)}, got {chunk_inserted} IDs.")
+                attempts = 0
+            except Exception as e:
+                latency = time.time() - request_start
+                done_ids = get_partially_inserted_ids(e)
+                inserted_count += len(done_ids)
+                remaining = [doc for doc in chunk if doc.get('_id') not in done_ids]
+                if is_throttling_error(e) and attempts < ADAPTIVE_MAX_RETRIES:
+                    attempts += 1
+                    controller.on_throttled(latency)
+                    logging.warning(f"Throttled/timed out inserting {len(remaining)} docs into '{collection_name_for_log}' (attempt {attempts}/{ADAPTIVE_MAX_RETRIES}): {e}")
+                    pending.extendleft(reversed(remaining))
+                    time.sleep(ADAPTIVE_BACKOFF_SECONDS * (2 ** (attempts - 1)))
+                    continue
+                logging.error(f"Unexpected error during astrapy insert_many in collection '{collection_name_for_log}': {e}", exc_info=True)
+                try:
+                    failing_ids = [doc.get('_id', 'unknown') for doc in remaining]
+                    logging.error(f"Failing document IDs (attempted batch): {failing_ids}")
+                except Exception as log_e:
+                    logging.error(f"Error logging failing document IDs: {log_e}")
+                attempts = 0
+    finally:
+        controller.release()
+    return inserted_count
+
+
+def create_hotel_embedder():
+    """Creates the local embedding stage for hotels (vectors must match VECTOR_DIMENSION)."""
+    logging.info(f"Precomputing hotel embeddings locally with '{hotel_embeddings.EMBEDDING_MODEL}' "
+                 f"(cache: '{hotel_embeddings.EMBEDDING_CACHE_FILE}').")
+    return hotel_embeddings.HotelEmbedder(VECTOR_DIMENSION)
 
 
 # --- Couchbase Functions ---
@@ -178,46 +334,10 @@ def get_document_keys_by_type(cluster, doc_type: str):
 
 # --- Modified Document Content Fetching ---
 def get_document_content(cb_collection, key: str):
-    """Fetches the content of a single document from Couchbase, prepares it for Astra,
-       and adds a $vectorize field for hotel documents."""
+    """Fetches the content of a single document from Couchbase and prepares it for Astra."""
     try:
         result = cb_collection.get(key)
-        original_doc = result.content_as[dict]
-        doc_type = original_doc.get('type')
-
-        migrated_doc = {'_id': key}
-        text_for_vectorize = []
-
-        for field_key, field_value in original_doc.items():
-            # Skip Couchbase CAS field
-            if field_key == 'cas':
-                continue
-
-            # Handle 'content' field specifically for hotels - skip
-            # Also skip '_id' as we set it manually
-            if field_key == '_id' or (doc_type == 'hotel' and field_key == 'content'):
-                continue
-
-            # Copy field
-            migrated_doc[field_key] = field_value
-
-            # Collect text fields for hotel vectorization
-            if doc_type == 'hotel' and isinstance(field_value, str) and field_key in ['name', 'description', 'address', 'city', 'state', 'country']:
-                text_for_vectorize.append(field_value)
-
-        # Add $vectorize field for hotels if text was collected
-        if doc_type == 'hotel':
-            if text_for_vectorize:
-                combined_text = " ".join(filter(None, text_for_vectorize)) # Join non-null strings
-                if combined_text:
-                    migrated_doc['$vectorize'] = combined_text
-                    logging.debug(f"Added '$vectorize' field for hotel '{key}' with text: \"{combined_text[:50]}...\"")
-                else:
-                    logging.warning(f"Combined text for vectorization was empty for hotel '{key}'.")
-            else:
-                logging.warning(f"No text fields found to add '$vectorize' for hotel '{key}'.")
-
-        return migrated_doc
+        return prepare_astra_document(key, result.content_as[dict])
 
     except DocumentNotFoundException:
         logging.warning(f"Document key not found during fetch: {key}")
@@ -226,27 +346,62 @@ def get_document_content(cb_collection, key: str):
         logging.error(f"Failed to fetch document '{key}': {e}")
         return None
 
+def prepare_astra_document(key: str, original_doc: dict):
+    """Converts a Couchbase document body into its Astra form and adds a $vectorize field
+       for hotel documents. Shared by the bulk migration and the change sync."""
+    doc_type = original_doc.get('type')
+
+    migrated_doc = {'_id': key}
+    text_for_vectorize = []
+
+    for field_key, field_value in original_doc.items():
+        # Skip Couchbase CAS field
+        if field_key == 'cas':
+            continue
+
+        # Handle 'content' field specifically for hotels - skip
+        # Also skip '_id' as we set it manually
+        if field_key == '_id' or (doc_type == 'hotel' and field_key == 'content'):
+            continue
+
+        # Copy field
+        migrated_doc[field_key] = field_value
+
+        # Collect text fields for hotel vectorization
+        if doc_type == 'hotel' and isinstance(field_value, str) and field_key in VECTOR_SOURCE_FIELDS:
+            text_for_vectorize.append(field_value)
+
+    # Add $vectorize field for hotels if text was collected
+    if doc_type == 'hotel':
+        if text_for_vectorize:
+            combined_text = " ".join(filter(None, text_for_vectorize)) # Join non-null strings
+            if combined_text:
+                migrated_doc['$vectorize'] = combined_text
+                logging.debug(f"Added '$vectorize' field for hotel '{key}' with text: \"{combined_text[:50]}...\"")
+            else:
+                logging.warning(f"Combined text for vectorization was empty for hotel '{key}'.")
+        else:
+            logging.warning(f"No text fields found to add '$vectorize' for hotel '{key}'.")
+
+    return migrated_doc
+
 # --- Migration Logic ---
 
-def process_document_batch(cb_collection, keys_batch: list, astra_collection, collection_name_for_log: str):
-    """Fetches a batch of documents from CB and inserts into Astra using astrapy."""
+def fetch_document_batch(cb_collection, keys_batch: list):
+    """Fetches a batch of documents from CB and prepares them for Astra."""
     astra_docs = []
-    successful_fetch_count = 0
     for key in keys_batch:
         content = get_document_content(cb_collection, key)
         if content:
             astra_docs.append(content)
-            successful_fetch_count += 1
-
-    if not astra_docs:
-        logging.warning(f"No documents successfully fetched for batch intended for collection '{collection_name_for_log}'.")
-        return 0, 0 # Fetched, Inserted
-
-    inserted_count = insert_batch_astra(astra_collection, astra_docs, collection_name_for_log)
-    return successful_fetch_count, inserted_count
+    return astra_docs
 
 def migrate_type(cb_cluster, cb_collection, doc_type: str):
-    """Migrates all documents of a specific type using astrapy."""
+    """Migrates all documents of a specific type using astrapy.
+
+    Documents are fetched from Couchbase in rounds of CB_FETCH_BATCH_SIZE keys and handed to
+    insert workers in chunks sized by an AdaptiveInsertController, which also bounds the
+    number of insert_many requests in flight."""
     logging.info(f"--- Starting migration for type: {doc_type} ---")
     start_time = time.time()
 
@@ -268,27 +423,44 @@ def migrate_type(cb_cluster, cb_collection, doc_type: str):
     total_fetched = 0
     total_inserted = 0
 
-    # Process keys in batches using a thread pool
-    CB_FETCH_BATCH_SIZE = 50 # Reduce batch size slightly due to embedding overhead
+    controller = AdaptiveInsertController(doc_type)
+    embedder = create_hotel_embedder() if is_vector and PRECOMPUTE_HOTEL_EMBEDDINGS else None
+    # Embedding works best on large batches, so fetch rounds grow to the embedding batch size
+    fetch_batch_size = max(CB_FETCH_BATCH_SIZE, hotel_embeddings.EMBEDDING_BATCH_SIZE) if embedder else CB_FETCH_BATCH_SIZE
+    pending_docs = collections.deque()
 
-    with ThreadPoolExecutor(max_workers=CONCURRENCY) as executor:
+    def submit_chunk(executor, futures, max_docs):
+        chunk = [pending_docs.popleft() for _ in range(min(max_docs, len(pending_docs)))]
+        controller.acquire() # Backpressure: blocks fetching while the in-flight limit is reached
+        futures.append(executor.submit(insert_batch_astra, astra_collection, chunk, doc_type, controller))
+
+    with ThreadPoolExecutor(max_workers=ADAPTIVE_MAX_IN_FLIGHT) as executor:
         futures = []
-        for i in range(0, total_keys, CB_FETCH_BATCH_SIZE):
-            batch_keys = keys[i:i + CB_FETCH_BATCH_SIZE]
-            futures.append(executor.submit(process_document_batch, cb_collection, batch_keys, astra_collection, doc_type))
+        for i in range(0, total_keys, fetch_batch_size):
+            batch_docs = fetch_document_batch(cb_collection, keys[i:i + fetch_batch_size])
+            if embedder:
+                try:
+                    embedder.embed_documents(batch_docs)
+                except Exception as e:
+                    # Documents keep their $vectorize text, so Astra embeds them instead
+                    logging.error(f"Local embedding failed for a batch of '{doc_type}', falling back to $vectorize: {e}", exc_info=True)
+            total_fetched += len(batch_docs)
+            pending_docs.extend(batch_docs)
+            while len(pending_docs) >= controller.next_chunk_size():
+                submit_chunk(executor, futures, controller.next_chunk_size())
+
+            processed_keys = min(i + fetch_batch_size, total_keys)
+            if (i // fetch_batch_size + 1) % 10 == 0: # Log progress periodically based on CB fetch batches
+                logging.info(f"[{doc_type}] Progress: Processed {processed_keys}/{total_keys} keys. Fetched: {total_fetched}, "
+                             f"Inserted: {controller.inserted}, {controller.docs_per_second():.1f} docs/sec "
+                             f"(chunk size {controller.next_chunk_size()}, in-flight limit {int(controller.in_flight_limit)})")
+
+        while pending_docs:
+            submit_chunk(executor, futures, controller.next_chunk_size())
 
-        processed_batches = 0
-        processed_keys_estimate = 0
         for future in as_completed(futures):
             try:
-                fetched, inserted = future.result()
-                total_fetched += fetched
-                total_inserted += inserted
-                processed_batches += 1
-                processed_keys_estimate = processed_batches * CB_FETCH_BATCH_SIZE # Rough estimate
-                if processed_batches % 10 == 0: # Log progress periodically based on CB fetch batches
-                     logging.info(f"[{doc_type}] Progress: Processed ~{processed_keys_estimate}/{total_keys} keys. Fetched: {total_fetched}, Inserted: {total_inserted}")
-
+                total_inserted += future.result()
             except Exception as e:
                 logging.error(f"Error processing batch future for type '{doc_type}': {e}", exc_info=True)
 
@@ -299,6 +471,11 @@ def migrate_type(cb_cluster, cb_collection, doc_type: str):
     logging.info(f"[{doc_type}] Successfully Fetched: {total_fetched}")
     logging.info(f"[{doc_type}] Successfully Inserted: {total_inserted}")
     logging.info(f"[{doc_type}] Duration: {duration:.2f} seconds")
+    if embedder:
+        logging.info(f"[{doc_type}] Precomputed embeddings: {embedder.summary()}")
+    logging.info(f"[{doc_type}] Throughput: {total_inserted / duration if duration > 0 else 0.0:.1f} docs/sec "
+                 f"(final chunk size {controller.next_chunk_size()}, in-flight limit {int(controller.in_flight_limit)}, "
+                 f"throttled requests {controller.throttled})")
     return total_fetched, total_inserted
 
 # --- Main Execution ---
@@ -311,6 +488,8 @@ def main():
     cb_cluster = None
     cb_collection = None
 
+    connect_astra()
+
     try:
         # Connect to Couchbase
         cb_cluster, _, cb_collection = connect_couchbase()
@@ -0,0 +1,416 @@
+# sync_couchbase_to_astra.py
+#
+# Continuous change-data sync from Couchbase to Astra DB, run after the initial bulk load
+# (migrate_couchbase_to_astra_with_vector.py) so Astra stays current until cutover.
+#
+# The sync consumes a DCP-style change stream: one JSON event per line, e.g.
+#   {"op": "mutation", "key": "airline_10", "vbucket": 12, "seqno": 4711, "ts": 1700000000000, "doc": {...}}
+#   {"op": "deletion", "key": "airline_10", "vbucket": 12, "seqno": 4712, "ts": 1700000000500}
+# "op" is mutation, deletion or expiration; "ts" is the source commit time in epoch milliseconds.
+# The target collection is the document's "type" (or an explicit "collection" field, or the key
+# prefix for deletions). Events are read either from a file that is followed like `tail -f`, or
+# from a TCP socket that streams the same lines - both stand in for a real DCP feed locally.
+import collections
+import json
+import logging
+import os
+import queue
+import socket
+import sys
+import threading
+import time
+import urllib.request
+from concurrent.futures import ThreadPoolExecutor
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+import migrate_couchbase_to_astra_with_vector as migration
+
+# --- Configuration ---
+SYNC_SOURCE = os.getenv("SYNC_SOURCE", "file:couchbase_changes.jsonl") # "file:<path>" or "tcp:<host>:<port>"
+SYNC_CHECKPOINT_FILE = os.getenv("SYNC_CHECKPOINT_FILE", "sync_checkpoint.json")
+SYNC_BATCH_MAX_EVENTS = 500 # Events coalesced into one apply round
+SYNC_BATCH_MAX_WAIT_SECONDS = 0.5 # Max time an event waits for its batch to fill up
+SYNC_APPLY_CONCURRENCY = 8 # Parallel writes within a batch (each key appears at most once per batch)
+SYNC_APPLY_MAX_ATTEMPTS = 5 # Writes of a batch that keep failing stop the sync without advancing the checkpoint
+SYNC_APPLY_RETRY_SECONDS = 1.0 # Wait before retrying failed writes, doubled per attempt
+SYNC_POLL_INTERVAL_SECONDS = 0.2 # File source: wait between reads at end of file
+SYNC_RECONNECT_SECONDS = 2.0 # TCP source: wait before reconnecting
+SYNC_STATUS_PORT = int(os.getenv("SYNC_STATUS_PORT", "8099")) # GET /status for lag and counters, 0 disables
+SYNC_STATUS_LOG_INTERVAL_SECONDS = 30
+APP_INVALIDATION_URL = os.getenv("APP_INVALIDATION_URL", "") # e.g. http://localhost:8080/api/admin/invalidate, empty disables
+APP_INVALIDATION_TOKEN = os.getenv("APP_INVALIDATION_TOKEN", "") # Must match app.invalidation.token of the backend
+APP_INVALIDATION_TIMEOUT_SECONDS = 2
+
+DELETE_OPS = ("deletion", "expiration")
+
+
+# --- Sync State ---
+
+class SyncStatus:
+    """Counters and replication lag shared between the apply loop and the status endpoint."""
+
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.received = 0
+        self.skipped = 0
+        self.coalesced = 0
+        self.applied_upserts = 0
+        self.applied_deletes = 0
+        self.failed = 0
+        self.last_applied_ts = None # Source commit time (ms) of the newest applied event
+        self.oldest_pending_ts = None # Source commit time (ms) of the oldest event in the batch being applied
+        self.queued_ts = collections.deque() # Source commit times (ms or None) of events read but not yet batched, oldest first
+
+    def lag_seconds(self) -> float:
+        """Replication lag: age of the oldest event not yet applied in Astra, whether in the batch
+           being applied or still queued behind it (0 when caught up)."""
+        with self.lock:
+            oldest = self.oldest_pending_ts
+            if oldest is None:
+                oldest = next((ts for ts in self.queued_ts if ts is not None), None)
+            if oldest is None:
+                return 0.0
+            return max(0.0, time.time() - oldest / 1000.0)
+
+    def snapshot(self) -> dict:
+        lag = self.lag_seconds()
+        with self.lock:
+            return {
+                "lag_seconds": round(lag, 3),
+                "last_applied_ts": self.last_applied_ts,
+                "received": self.received,
+                "skipped_duplicates": self.skipped,
+                "coalesced": self.coalesced,
+                "applied_upserts": self.applied_upserts,
+                "applied_deletes": self.applied_deletes,
+                "failed": self.failed,
+            }
+
+
+class Checkpoint:
+    """Highest applied seqno per vbucket plus the source position, persisted after every batch.
+       Events at or below the stored seqno of their vbucket are skipped, which makes replays
+       after a restart (or a re-sent socket stream) idempotent."""
+
+    def __init__(self, path: str):
+        self.path = path
+        self.vbucket_seqnos = {}
+        self.position = 0
+        if os.path.exists(path):
+            with open(path) as f:
+                state = json.load(f)
+            self.vbucket_seqnos = {str(k): v for k, v in state.get("vbucket_seqnos", {}).items()}
+            self.position = state.get("position", 0)
+            logging.info(f"Resuming from checkpoint '{path}' (position {self.position}, {len(self.vbucket_seqnos)} vbuckets).")
+
+    def is_applied(self, event: dict) -> bool:
+        seqno = event.get("seqno")
+        if seqno is None:
+            return False
+        return seqno <= self.vbucket_seqnos.get(str(event.get("vbucket", 0)), -1)
+
+    def advance(self, events: list, position: int):
+        for event in events:
+            seqno = event.get("seqno")
+            if seqno is not None:
+                vbucket = str(event.get("vbucket", 0))
+                self.vbucket_seqnos[vbucket] = max(seqno, self.vbucket_seqnos.get(vbucket, -1))
+        self.position = position
+        tmp_path = self.path + ".tmp"
+        with open(tmp_path, "w") as f:
+            json.dump({"vbucket_seqnos": self.vbucket_seqnos, "position": self.position}, f)
+        os.replace(tmp_path, self.path)
+
+
+# --- Change Stream Sources ---
+
+def read_file_source(path: str, start_position: int, events: queue.Queue, status: SyncStatus, stop: threading.Event):
+    """Follows a JSON-lines file from start_position, putting (event, position_after) on the queue."""
+    while not os.path.exists(path) and not stop.is_set():
+        logging.info(f"Waiting for change file '{path}'...")
+        time.sleep(SYNC_RECONNECT_SECONDS)
+    with open(path, "rb") as f:
+        f.seek(start_position)
+        buffered = b""
+        while not stop.is_set():
+            line = f.readline()
+            if not line:
+                time.sleep(SYNC_POLL_INTERVAL_SECONDS)
+                continue
+            buffered += line
+            if not buffered.endswith(b"\n"):
+                continue # Partial line written by the producer; wait for the rest
+            put_event(buffered, f.tell(), events, status)
+            buffered = b""
+
+
+def read_socket_source(host: str, port: int, events: queue.Queue, status: SyncStatus, stop: threading.Event):
+    """Connects to a producer streaming JSON lines over TCP, reconnecting when it goes away.
+       Socket streams have no resumable position; the per-vbucket seqnos drop replayed events."""
+    while not stop.is_set():
+        try:
+            with socket.create_connection((host, port)) as conn:
+                logging.info(f"Connected to change stream at {host}:{port}.")
+                with conn.makefile("rb") as stream:
+                    for line in stream:
+                        if stop.is_set():
+                            return
+                        put_event(line, 0, events, status)
+            logging.warning(f"Change stream at {host}:{port} closed.")
+        except OSError as e:
+            logging.warning(f"Change stream at {host}:{port} unavailable: {e}")
+        time.sleep(SYNC_RECONNECT_SECONDS)
+
+
+def put_event(line: bytes, position: int, events: queue.Queue, status: SyncStatus):
+    line = line.strip()
+    if not line:
+        return
+    try:
+        event = json.loads(line)
+    except json.JSONDecodeError as e:
+        logging.error(f"Skipping malformed change event {line[:200]!r}: {e}")
+        return
+    with status.lock:
+        # Before put(), which blocks while the queue is full: waiting events count towards the lag too
+        status.queued_ts.append(event.get("ts"))
+    events.put((event, position))
+
+
+def start_source(events: queue.Queue, checkpoint: Checkpoint, status: SyncStatus, stop: threading.Event) -> threading.Thread:
+    kind, _, target = SYNC_SOURCE.partition(":")
+    if kind == "file":
+        args = (read_file_source, (target, checkpoint.position, events, status, stop))
+    elif kind == "tcp":
+        host, _, port = target.rpartition(":")
+        args = (read_socket_source, (host, int(port), events, status, stop))
+    else:
+        raise ValueError(f"Unsupported SYNC_SOURCE '{SYNC_SOURCE}', expected file:<path> or tcp:<host>:<port>")
+    reader = threading.Thread(target=args[0], args=args[1], name="change-source", daemon=True)
+    reader.start()
+    return reader
+
+
+# --- Apply Logic ---
+
+def target_collection_name(event: dict):
+    """Resolves the Astra collection for an event, or None if the type is not synced."""
+    name = event.get("collection") or (event.get("doc") or {}).get("type")
+    if not name and event.get("key"):
+        name = event["key"].split("_", 1)[0] # travel-sample keys are "<type>_<id>"
+    return name if name in migration.DOCUMENT_TYPES_TO_MIGRATE else None
+
+
+def coalesce(batch: list) -> dict:
+    """Keeps only the newest event per (collection, _id). Since batches are applied one after
+       another and every key appears once per batch, writes stay ordered per key."""
+    latest = {}
+    for event in batch:
+        collection_name = target_collection_name(event)
+        if collection_name is None or not event.get("key"):
+            continue
+        latest[(collection_name, event["key"])] = event
+    return latest
+
+
+def apply_batch(latest: dict, collections_by_name: dict, executor: ThreadPoolExecutor, status: SyncStatus, embedder=None) -> dict:
+    """Applies coalesced events: one delete_many per collection for deletions, and concurrent
+       upserting replace_one calls for mutations. With an embedder, hotel vectors of the whole
+       batch are computed locally in one pass before the writes.
+       Returns the events whose write failed, keyed like latest."""
+    deletes = {}
+    upserts = []
+    for (collection_name, key), event in latest.items():
+        if event.get("op") in DELETE_OPS:
+            deletes.setdefault(collection_name, []).append(key)
+        else:
+            upserts.append((collection_name, migration.prepare_astra_document(key, event.get("doc") or {})))
+
+    def get_collection(name):
+        if name not in collections_by_name:
+            collections_by_name[name] = migration.astra_db.get_collection(name)
+        return collections_by_name[name]
+
+    def upsert(collection_name, doc):
+        get_collection(collection_name).replace_one({"_id": doc["_id"]}, doc, upsert=True)
+
+    failed_keys = []
+    for collection_name, keys in deletes.items():
+        try:
+            get_collection(collection_name).delete_many({"_id": {"$in": keys}})
+        except Exception as e:
+            failed_keys.extend((collection_name, key) for key in keys)
+            logging.error(f"Failed to delete {len(keys)} docs from '{collection_name}': {e}", exc_info=True)
+
+    if embedder:
+        try:
+            embedder.embed_documents([doc for name, doc in upserts if name == "hotel"])
+        except Exception as e:
+            # Documents keep their $vectorize text, so Astra embeds them instead
+            logging.error(f"Local embedding failed, falling back to $vectorize: {e}", exc_info=True)
+
+    failed_deletes = len(failed_keys)
+    futures = [((name, doc["_id"]), executor.submit(upsert, name, doc)) for name, doc in upserts]
+    for collection_key, future in futures:
+        try:
+            future.result()
+        except Exception as e:
+            failed_keys.append(collection_key)
+            logging.error(f"Failed to upsert document '{collection_key[1]}': {e}", exc_info=True)
+
+    with status.lock:
+        status.applied_deletes += sum(len(keys) for keys in deletes.values()) - failed_deletes
+        status.applied_upserts += len(upserts) - (len(failed_keys) - failed_deletes)
+        status.failed += len(failed_keys)
+    return {collection_key: latest[collection_key] for collection_key in failed_keys}
+
+
+def apply_with_retries(latest: dict, collections_by_name: dict, executor: ThreadPoolExecutor, status: SyncStatus, embedder=None) -> dict:
+    """Applies a batch, retrying only the failed writes with exponential backoff. Writes are
+       upserts and deletes by _id, so repeating them is safe. Returns the events still failing
+       after SYNC_APPLY_MAX_ATTEMPTS."""
+    pending = latest
+    for attempt in range(1, SYNC_APPLY_MAX_ATTEMPTS + 1):
+        pending = apply_batch(pending, collections_by_name, executor, status, embedder)
+        if not pending:
+            return {}
+        if attempt < SYNC_APPLY_MAX_ATTEMPTS:
+            delay = SYNC_APPLY_RETRY_SECONDS * 2 ** (attempt - 1)
+            logging.warning(f"{len(pending)} writes failed (attempt {attempt}/{SYNC_APPLY_MAX_ATTEMPTS}), retrying in {delay:.1f}s")
+            time.sleep(delay)
+    return pending
+
+
+def notify_app(changed_collections: set):
+    """Tells the backend which collections changed, so it drops materialized/cached results
+       derived from them. Best effort: the backend also refreshes on its own schedule."""
+    if not APP_INVALIDATION_URL or not changed_collections:
+        return
+    request = urllib.request.Request(
+        APP_INVALIDATION_URL,
+        data=json.dumps({"collections": sorted(changed_collections)}).encode("utf-8"),
+        headers={"Content-Type": "application/json", "X-Invalidation-Token": APP_INVALIDATION_TOKEN},
+        method="POST")
+    try:
+        with urllib.request.urlopen(request, timeout=APP_INVALIDATION_TIMEOUT_SECONDS):
+            pass
+    except Exception as e:
+        logging.warning(f"Could not notify backend about changed collections {sorted(changed_collections)}: {e}")
+
+
+def next_batch(events: queue.Queue, checkpoint: Checkpoint, status: SyncStatus):
+    """Collects up to SYNC_BATCH_MAX_EVENTS new events, waiting at most SYNC_BATCH_MAX_WAIT_SECONDS
+       after the first one. Returns (events, source position after the last event)."""
+    batch = []
+    position = checkpoint.position
+    deadline = None
+    while len(batch) < SYNC_BATCH_MAX_EVENTS:
+        timeout = SYNC_POLL_INTERVAL_SECONDS if deadline is None else deadline - time.time()
+        if timeout <= 0:
+            break
+        try:
+            event, event_position = events.get(timeout=timeout)
+        except queue.Empty:
+            if deadline is None:
+                return batch, position # Idle
+            break
+        position = event_position or position
+        with status.lock:
+            status.queued_ts.popleft()
+            status.received += 1
+            if checkpoint.is_applied(event):
+                status.skipped += 1
+                continue
+            if event.get("ts") is not None and status.oldest_pending_ts is None:
+                status.oldest_pending_ts = event["ts"]
+        batch.append(event)
+        if deadline is None:
+            deadline = time.time() + SYNC_BATCH_MAX_WAIT_SECONDS
+    return batch, position
+
+
+# --- Status Endpoint ---
+
+def start_status_server(status: SyncStatus):
+    class StatusHandler(BaseHTTPRequestHandler):
+        def do_GET(self):
+            if self.path.rstrip("/") != "/status":
+                self.send_error(404)
+                return
+            body = json.dumps(status.snapshot()).encode("utf-8")
+            self.send_response(200)
+            self.send_header("Content-Type", "application/json")
+            self.send_header("Content-Length", str(len(body)))
+            self.end_headers()
+            self.wfile.write(body)
+
+        def log_message(self, format, *args):
+            logging.debug("Status endpoint: " + format % args)
+
+    server = ThreadingHTTPServer(("0.0.0.0", SYNC_STATUS_PORT), StatusHandler)
+    threading.Thread(target=server.serve_forever, name="sync-status", daemon=True).start()
+    logging.info(f"Sync status available at http://localhost:{SYNC_STATUS_PORT}/status")
+    return server
+
+
+# --- Main Execution ---
+
+def main() -> int:
+    """Consumes the change stream until interrupted, applying coalesced batches to Astra.
+       Returns 1 if a batch could not be applied: the checkpoint then stays before that batch,
+       so it is applied again on restart."""
+    logging.info(f"=== Starting Couchbase to Astra DB change sync from '{SYNC_SOURCE}' ===")
+    migration.connect_astra()
+
+    status = SyncStatus()
+    checkpoint = Checkpoint(SYNC_CHECKPOINT_FILE)
+    events = queue.Queue(maxsize=SYNC_BATCH_MAX_EVENTS * 4) # Bounded so a slow Astra applies backpressure
+    stop = threading.Event()
+    collections_by_name = {}
+    embedder = migration.create_hotel_embedder() if migration.PRECOMPUTE_HOTEL_EMBEDDINGS else None
+
+    start_source(events, checkpoint, status, stop)
+    status_server = start_status_server(status) if SYNC_STATUS_PORT else None
+    last_status_log = time.time()
+    exit_code = 0
+
+    try:
+        with ThreadPoolExecutor(max_workers=SYNC_APPLY_CONCURRENCY) as executor:
+            while True:
+                batch, position = next_batch(events, checkpoint, status)
+                if batch:
+                    latest = coalesce(batch)
+                    with status.lock:
+                        status.coalesced += len(batch) - len(latest)
+                    failed = apply_with_retries(latest, collections_by_name, executor, status, embedder)
+                    notify_app({collection_name for collection_name, _ in latest})
+                    if failed:
+                        logging.error(f"{len(failed)} changes could not be applied after {SYNC_APPLY_MAX_ATTEMPTS} attempts "
+                                      f"(e.g. {sorted(failed)[:5]}); stopping at checkpoint position {checkpoint.position} "
+                                      f"so the batch is applied again on restart")
+                        exit_code = 1
+                        break
+                    checkpoint.advance(batch, position)
+                    with status.lock:
+                        newest_ts = max((e["ts"] for e in batch if e.get("ts") is not None), default=None)
+                        status.last_applied_ts = newest_ts or status.last_applied_ts
+                        status.oldest_pending_ts = None
+                elif position != checkpoint.position:
+                    checkpoint.advance([], position) # Only skipped duplicates were read
+
+                if time.time() - last_status_log >= SYNC_STATUS_LOG_INTERVAL_SECONDS:
+                    logging.info(f"Sync status: {status.snapshot()}")
+                    last_status_log = time.time()
+    except KeyboardInterrupt:
+        logging.info("Stopping change sync...")
+    finally:
+        stop.set()
+        if status_server:
+            status_server.shutdown()
+        logging.info(f"Final sync status: {status.snapshot()}")
+        logging.info("=== Change Sync Finished ===")
+    return exit_code
+
+
+if __name__ == "__main__":
+    sys.exit(main())
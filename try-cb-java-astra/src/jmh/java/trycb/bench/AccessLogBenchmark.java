@@ -0,0 +1,147 @@
+package trycb.bench;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.CommonsRequestLoggingFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import trycb.util.AccessLogFilter;
+import trycb.util.RemoteCalls;
+
+/**
+ * Time per request spent in request logging, around a chain that stands in for a request making
+ * two Astra calls: {@link AccessLogFilter} disabled (the filter only passes the request on) and
+ * enabled (request id, remote call counting and an entry in the ring buffer), and the
+ * CommonsRequestLoggingFilter it replaced, configured as it was (query string and payload up to
+ * 10000 characters, logged at DEBUG before and after the request).
+ *
+ * Both loggers are enabled but have no appender, so messages are built as in production while
+ * no I/O is measured. With {@code chainMicros=0} requests arrive far faster than any real load and
+ * the access log writer falls behind, so the ring buffer fills and entries are dropped (by
+ * design: request threads never wait for the log). {@code chainMicros=100} parks each request
+ * as if waiting for Astra, which is the realistic case for the drop count printed once per
+ * trial. Run with {@code mvn -Pjmh verify -Djmh.args="AccessLogBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AccessLogBenchmark {
+
+    @Param({"off", "on", "commons"})
+    public String accessLog;
+
+    @Param({"0", "100"})
+    public long chainMicros;
+
+    private Filter filter;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private FilterChain chain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        silence("trycb.access", ch.qos.logback.classic.Level.INFO);
+        silence(CommonsRequestLoggingFilter.class.getName(), ch.qos.logback.classic.Level.DEBUG);
+        if ("commons".equals(accessLog)) {
+            CommonsRequestLoggingFilter commons = new CommonsRequestLoggingFilter();
+            commons.setIncludeQueryString(true);
+            commons.setIncludePayload(true);
+            commons.setMaxPayloadLength(10000);
+            commons.setIncludeHeaders(false);
+            commons.setAfterMessagePrefix("REQUEST: ");
+            filter = commons;
+        } else {
+            filter = new AccessLogFilter("on".equals(accessLog), 0.0, 10000, 8192);
+        }
+        request = stub(HttpServletRequest.class);
+        response = stub(HttpServletResponse.class);
+        long chainNanos = TimeUnit.MICROSECONDS.toNanos(chainMicros);
+        chain = (req, res) -> {
+            RemoteCalls.increment();
+            RemoteCalls.increment();
+            if (chainNanos > 0) {
+                LockSupport.parkNanos(chainNanos);
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (filter instanceof AccessLogFilter) {
+            AccessLogFilter accessLogFilter = (AccessLogFilter) filter;
+            System.out.printf("%nAccess log %s: %d requests logged, %d entries dropped, filter overhead %.3f us%n",
+                    accessLog, accessLogFilter.getRequests(), accessLogFilter.getDropped(), accessLogFilter.getAverageOverheadMicros());
+        }
+        filter.destroy();
+    }
+
+    @Benchmark
+    public void doFilter() throws IOException, ServletException {
+        filter.doFilter(request, response, chain);
+    }
+
+    // Enabled at the given level, without appenders: messages are built but not written
+    private static void silence(String name, ch.qos.logback.classic.Level level) {
+        ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name);
+        logger.setLevel(level);
+        logger.setAdditive(false);
+        logger.detachAndStopAllAppenders();
+    }
+
+    // A GET of /api/airports answered with 200, without a request id header
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMethod":
+                    return "GET";
+                case "getRequestURI":
+                    return "/api/airports";
+                case "getAttribute":
+                    return HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE.equals(args[0]) ? "/api/airports" : null;
+                case "getStatus":
+                    return 200;
+                default:
+                    break;
+            }
+            Class<?> returns = method.getReturnType();
+            if (returns == boolean.class) {
+                return false;
+            }
+            if (returns == int.class) {
+                return 0;
+            }
+            if (returns == long.class) {
+                return 0L;
+            }
+            return null;
+        }));
+    }
+}
@@ -0,0 +1,126 @@
+package trycb.bench;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trycb.util.CacheStorage;
+import trycb.util.HeapCacheStorage;
+import trycb.util.OffHeapCacheStorage;
+
+/**
+ * Hotel search results cached on the heap as maps versus serialized in off-heap slabs: time to
+ * read a result (including its deserialization off-heap) and to replace one with a newly
+ * generated result (the same work for both), and, printed once per trial, the heap used once the
+ * cache is filled and the GC pauses while the benchmark ran.
+ *
+ * Each entry is a 10-hotel search result with long descriptions, as {@code HotelCache} stores
+ * them. Replacing entries keeps creating old-generation garbage on the heap, the case in which
+ * a large on-heap cache lengthens mixed collections. Run with
+ * {@code mvn -Pjmh verify -Djmh.args="CacheStorageBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:+UseG1GC", "-XX:MaxDirectMemorySize=1g"})
+public class CacheStorageBenchmark {
+
+    private static final TypeReference<List<Map<String, Object>>> RESULT = new TypeReference<List<Map<String, Object>>>() {};
+
+    @Param({"heap", "offheap"})
+    public String storage;
+
+    @Param({"50000"})
+    public int entries;
+
+    private CacheStorage<List<Map<String, Object>>> cache;
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong pauseMillis = new AtomicLong();
+    private final AtomicLong maxPauseMillis = new AtomicLong();
+    private final NotificationListener gcListener = (notification, handback) -> {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // Concurrent cycles do not stop the application
+            if (!info.getGcName().contains("Concurrent")) {
+                long millis = info.getGcInfo().getDuration();
+                pauses.incrementAndGet();
+                pauseMillis.addAndGet(millis);
+                maxPauseMillis.accumulateAndGet(millis, Math::max);
+            }
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cache = "offheap".equals(storage)
+                ? new OffHeapCacheStorage<>(768L << 20, 8 << 20, null, RESULT, 0, 0)
+                : new HeapCacheStorage<>(entries, 0, 0);
+        Random random = new Random(42);
+        for (int i = 0; i < entries; i++) {
+            cache.put("search " + i, Samples.hotels(random, 10));
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        System.out.printf("%n%d entries %s: heap used %d MB, off-heap %d MB%n", cache.size(), storage,
+                memory.getHeapMemoryUsage().getUsed() >> 20, cache.getOffHeapBytes() >> 20);
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws ListenerNotFoundException {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).removeNotificationListener(gcListener);
+        }
+        System.out.printf("%nGC pauses %s: %d, %d ms in total, longest %d ms%n", storage, pauses.get(),
+                pauseMillis.get(), maxPauseMillis.get());
+        cache.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> get() {
+        return cache.get("search " + ThreadLocalRandom.current().nextInt(entries));
+    }
+
+    @Benchmark
+    public boolean replace() {
+        // A new result, as if just read from Astra
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return cache.put("search " + random.nextInt(entries), Samples.hotels(random, 10));
+    }
+}
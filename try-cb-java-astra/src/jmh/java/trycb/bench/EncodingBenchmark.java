@@ -0,0 +1,93 @@
+package trycb.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Time to write and read representative API responses as JSON, Smile and CBOR, and their size
+ * (printed once per trial, plain and gzipped as the server would compress JSON).
+ *
+ * Responses have the controllers' {@code {data, context}} envelope: a hotel search (10 hotels
+ * with long descriptions, the vector search limit) and a user's bookings list (25 and 500
+ * bookings). Run with {@code mvn -Pjmh verify}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"hotels-10", "bookings-25", "bookings-500"})
+    public String response;
+
+    @Param({"json", "smile", "cbor"})
+    public String encoding;
+
+    private ObjectMapper mapper;
+    private Map<String, Object> envelope;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        switch (encoding) {
+            case "smile":
+                mapper = Jackson2ObjectMapperBuilder.smile().build();
+                break;
+            case "cbor":
+                mapper = Jackson2ObjectMapperBuilder.cbor().build();
+                break;
+            default:
+                mapper = Jackson2ObjectMapperBuilder.json().build();
+        }
+        String[] kindAndCount = response.split("-");
+        int count = Integer.parseInt(kindAndCount[1]);
+        Random random = new Random(42);
+        List<Map<String, Object>> data = "hotels".equals(kindAndCount[0])
+                ? Samples.hotels(random, count) : Samples.bookings(random, count);
+        envelope = Map.of("data", data, "context", Collections.emptyList());
+        encoded = mapper.writeValueAsBytes(envelope);
+        System.out.printf("%n%s as %s: %d bytes, %d bytes gzipped%n", response, encoding, encoded.length, gzipped(encoded));
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(envelope);
+    }
+
+    @Benchmark
+    public Map<?, ?> deserialize() throws IOException {
+        return mapper.readValue(encoded, Map.class);
+    }
+
+    private static int gzipped(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
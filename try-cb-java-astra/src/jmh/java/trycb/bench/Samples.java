@@ -0,0 +1,64 @@
+package trycb.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generated API response data of realistic shape and size for the benchmarks.
+ */
+final class Samples {
+
+    private static final String[] WORDS = ("the hotel is located in a quiet street close to the old town and offers "
+            + "free wifi breakfast rooms with sea view spacious clean friendly staff parking available on request "
+            + "a short walk from the station restaurant bar terrace pool garden family suites recently renovated").split(" ");
+
+    private Samples() {
+    }
+
+    // Same fields as Hotel.findHotels
+    static List<Map<String, Object>> hotels(Random random, int count) {
+        List<Map<String, Object>> hotels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> hotel = new LinkedHashMap<>();
+            hotel.put("name", "Hotel " + words(random, 2));
+            hotel.put("description", words(random, 80 + random.nextInt(160)));
+            hotel.put("address", (random.nextInt(200) + 1) + " " + words(random, 2) + " Street, San Francisco, California, United States");
+            hotels.add(hotel);
+        }
+        return hotels;
+    }
+
+    // Same fields as a booking written by TenantUser.registerFlights
+    static List<Map<String, Object>> bookings(Random random, int count) {
+        String[] airports = {"SFO", "LAX", "JFK", "ORD", "SEA", "BOS", "DEN", "ATL", "LHR", "CDG"};
+        List<Map<String, Object>> bookings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> booking = new LinkedHashMap<>();
+            booking.put("_id", new UUID(random.nextLong(), random.nextLong()).toString());
+            booking.put("name", "United Airlines");
+            booking.put("flight", "UA" + (100 + random.nextInt(900)));
+            booking.put("equipment", "738 320");
+            booking.put("utc", String.format("%02d:%02d:00", random.nextInt(24), random.nextInt(60)));
+            booking.put("sourceairport", airports[random.nextInt(airports.length)]);
+            booking.put("destinationairport", airports[random.nextInt(airports.length)]);
+            booking.put("date", String.format("%d/%d/26", 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            booking.put("flighttime", 60 + random.nextInt(600));
+            booking.put("price", Math.ceil(random.nextDouble() * 90000) / 100.0);
+            booking.put("bookedon", "try-cb-java");
+            bookings.add(booking);
+        }
+        return bookings;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package trycb.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trycb.util.TokenBuckets;
+
+/**
+ * Token acquisitions per second of {@link TokenBuckets} from 8 threads, with the hotel search
+ * rule's rate and burst (5/s, burst 20) and the default bound of 100000 keys.
+ *
+ * With 1600 keys every bucket stays in the map and most acquisitions are refused (the keys are
+ * drawn far above their rate), the case of clients hammering a route; with 400000 keys the
+ * stripes keep running full, so new keys sweep them or fall back to the overflow bucket. Run
+ * with {@code mvn -Pjmh verify -Djmh.args="TokenBucketsBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class TokenBucketsBenchmark {
+
+    @Param({"1600", "400000"})
+    public int keys;
+
+    private TokenBuckets buckets;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buckets = new TokenBuckets(5, 20, 100000);
+        names = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            names[i] = "ip:10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public long tryAcquire() {
+        return buckets.tryAcquire(names[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+}
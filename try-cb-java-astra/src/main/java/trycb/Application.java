@@ -25,6 +25,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.data.couchbase.CouchbaseDataAutoConfiguration;
 import org.springframework.boot.autoconfigure.couchbase.CouchbaseAutoConfiguration;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 // Exclude Couchbase auto-configuration classes
 @SpringBootApplication(
@@ -33,10 +35,14 @@ import org.springframework.boot.autoconfigure.couchbase.CouchbaseAutoConfigurati
         CouchbaseDataAutoConfiguration.class 
     }
 )
+@EnableScheduling // Background refreshes, e.g. PopularRoutes
 public class Application {
 
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        SpringApplication application = new SpringApplication(Application.class);
+        // Records startup steps for trycb.util.StartupReport
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        application.run(args);
     }
 
 }
@@ -0,0 +1,59 @@
+package trycb.config;
+
+import com.datastax.astra.client.collections.Collection;
+import com.datastax.astra.client.collections.CollectionOptions;
+import com.datastax.astra.client.collections.definition.documents.Document;
+import com.datastax.astra.client.core.options.TimeoutOptions;
+import com.datastax.astra.client.databases.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out collection handles with per-collection request timeouts applied
+ * ({@code astra.http.collection-timeout-ms.<collection>}), falling back to the client-wide
+ * timeouts from {@link AstraConfig}. E.g. the hotel vector search can get a longer budget
+ * than the cheap airport lookups. Services take {@link LazyCollection}s, which are only
+ * resolved on first use and retried after a failure.
+ */
+@Component
+public class AstraCollections {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AstraCollections.class);
+
+    private final Database astraDatabase;
+    private final Environment environment;
+    private final long retryNanos;
+
+    @Autowired
+    public AstraCollections(Database astraDatabase, Environment environment,
+                            @Value("${astra.collections.retry-ms:1000}") long retryMs) {
+        this.astraDatabase = astraDatabase;
+        this.environment = environment;
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMs);
+    }
+
+    public LazyCollection lazy(String collectionName) {
+        return new LazyCollection(collectionName, () -> get(collectionName), retryNanos);
+    }
+
+    public Collection<Document> get(String collectionName) {
+        return get(astraDatabase, collectionName);
+    }
+
+    public Collection<Document> get(Database database, String collectionName) {
+        Long timeoutMs = environment.getProperty("astra.http.collection-timeout-ms." + collectionName, Long.class);
+        if (timeoutMs == null) {
+            return database.getCollection(collectionName, Document.class);
+        }
+        LOGGER.info("Using request timeout of {} ms for collection '{}'", timeoutMs, collectionName);
+        CollectionOptions options = new CollectionOptions()
+                .timeoutOptions(new TimeoutOptions().requestTimeoutMillis(timeoutMs));
+        return database.getCollection(collectionName, Document.class, options);
+    }
+}
@@ -1,6 +1,9 @@
 package trycb.config;
 
 import com.datastax.astra.client.DataAPIClient;
+import com.datastax.astra.client.core.http.HttpClientOptions;
+import com.datastax.astra.client.core.options.DataAPIClientOptions;
+import com.datastax.astra.client.core.options.TimeoutOptions;
 import com.datastax.astra.client.databases.Database;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +12,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.StringUtils;
 
+import java.net.http.HttpClient;
+
 @Configuration
 public class AstraConfig {
 
@@ -24,13 +29,41 @@ public class AstraConfig {
     // @Value("${astra.api.keyspace}")
     // private String astraKeyspace;
 
+    // HTTP transport of the shared client (the SDK runs on java.net.http.HttpClient)
+    @Value("${astra.http.version:HTTP_2}")
+    private HttpClient.Version httpVersion;
+
+    @Value("${astra.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${astra.http.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+
+    @Value("${astra.http.general-method-timeout-ms:30000}")
+    private long generalMethodTimeoutMs;
+
+    @Value("${astra.http.retry-count:3}")
+    private int retryCount;
+
+    // 0 keeps the JDK default (unbounded pool)
+    @Value("${astra.http.pool-size:0}")
+    private int poolSize;
+
+    @Value("${astra.http.keep-alive-seconds:30}")
+    private int keepAliveSeconds;
+
+    // Concurrent HTTP/2 streams multiplexed over one connection
+    @Value("${astra.http.max-streams:100}")
+    private int maxStreams;
+
     @Bean
     public DataAPIClient dataAPIClient() {
         if (!StringUtils.hasText(astraEndpoint) || !StringUtils.hasText(astraToken)) {
             LOGGER.error("Astra DB endpoint or token is missing in application properties. Cannot initialize DataAPIClient.");
             throw new IllegalStateException("Astra DB endpoint and token properties (astra.api.endpoint, astra.api.token) are required.");
         }
-        LOGGER.info("Initializing DataAPIClient for endpoint: {}", astraEndpoint);
+        LOGGER.info("Initializing DataAPIClient for endpoint: {} ({}, connect timeout {} ms, request timeout {} ms, pool size {}, keep-alive {} s)",
+                astraEndpoint, httpVersion, connectTimeoutMs, requestTimeoutMs, poolSize > 0 ? poolSize : "unbounded", keepAliveSeconds);
 
         // Clean the token: remove surrounding whitespace and potential quotes
         String cleanedToken = astraToken.trim();
@@ -38,7 +71,29 @@ public class AstraConfig {
             cleanedToken = cleanedToken.substring(1, cleanedToken.length() - 1);
         }
         
-        return new DataAPIClient(cleanedToken);
+        configureConnectionPool();
+        DataAPIClientOptions options = new DataAPIClientOptions()
+                .httpClientOptions(new HttpClientOptions()
+                        .httpVersion(httpVersion)
+                        .retryCount(retryCount))
+                .timeoutOptions(new TimeoutOptions()
+                        .connectTimeoutMillis(connectTimeoutMs)
+                        .requestTimeoutMillis(requestTimeoutMs)
+                        .generalMethodTimeoutMillis(generalMethodTimeoutMs));
+        return new DataAPIClient(cleanedToken, options);
+    }
+
+    /**
+     * Pool size, keep-alive and HTTP/2 stream limits of java.net.http.HttpClient are only
+     * configurable through system properties, read once when the HTTP client classes load.
+     * They are set here, before the first client is built, unless given on the command line.
+     */
+    private void configureConnectionPool() {
+        if (poolSize > 0) {
+            System.getProperties().putIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(poolSize));
+        }
+        System.getProperties().putIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+        System.getProperties().putIfAbsent("jdk.httpclient.maxstreams", String.valueOf(maxStreams));
     }
 
     @Bean
@@ -0,0 +1,36 @@
+package trycb.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Binary encodings of the API responses: clients sending {@code Accept: application/x-jackson-smile}
+ * or {@code Accept: application/cbor} get the same {@code {data, context}} envelope as Smile or
+ * CBOR instead of JSON, which is smaller and cheaper to write and parse for large result lists.
+ * JSON stays the default for any other Accept header.
+ *
+ * The mappers come from Spring Boot's {@link Jackson2ObjectMapperBuilder}, so {@code spring.jackson.*}
+ * settings apply to all three encodings alike.
+ */
+@Configuration
+public class BinaryEncodings {
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType SMILE = MediaType.valueOf(SMILE_VALUE);
+    public static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+
+    public @Bean MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    public @Bean MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
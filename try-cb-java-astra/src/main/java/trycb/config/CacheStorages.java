@@ -0,0 +1,74 @@
+package trycb.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import trycb.util.CacheStorage;
+import trycb.util.HeapCacheStorage;
+import trycb.util.OffHeapCacheStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Creates the storage of an application cache from its {@code <cache>.storage} settings:
+ * {@code heap} (the default) holds values as they are, bounded by entry count; {@code offheap}
+ * holds them serialized in {@code <cache>.offheap.capacity-mb} of slabs of
+ * {@code <cache>.offheap.slab-mb}, direct buffers unless {@code <cache>.offheap.file} names a
+ * file to map them from. Direct buffers count against {@code -XX:MaxDirectMemorySize}.
+ */
+@Component
+public class CacheStorages {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStorages.class);
+
+    private final Environment environment;
+
+    @Autowired
+    public CacheStorages(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * @param maxEntries             bound of heap storage; off-heap storage is bounded by its capacity.
+     * @param expireAfterAccessNanos drop entries not read or written for this long, 0 for never.
+     * @param expireAfterWriteNanos  drop entries this long after they were written, 0 for never.
+     */
+    public <V> CacheStorage<V> create(String cache, TypeReference<V> type, int maxEntries,
+                                      long expireAfterAccessNanos, long expireAfterWriteNanos) {
+        String storage = environment.getProperty(cache + ".storage", "heap");
+        switch (storage) {
+            case "heap":
+                return new HeapCacheStorage<>(maxEntries, expireAfterAccessNanos, expireAfterWriteNanos);
+            case "offheap":
+                long capacityMb = environment.getProperty(cache + ".offheap.capacity-mb", Long.class, 64L);
+                int slabMb = environment.getProperty(cache + ".offheap.slab-mb", Integer.class, 4);
+                String file = environment.getProperty(cache + ".offheap.file", "");
+                try {
+                    Path mappedFile = null;
+                    if (!file.isEmpty()) {
+                        mappedFile = Paths.get(file);
+                        if (mappedFile.toAbsolutePath().getParent() != null) {
+                            Files.createDirectories(mappedFile.toAbsolutePath().getParent());
+                        }
+                    }
+                    LOGGER.info("Cache '{}' stores values off-heap: {} MB in {} MB slabs{}", cache, capacityMb, slabMb,
+                            mappedFile == null ? "" : " mapped from " + mappedFile);
+                    return new OffHeapCacheStorage<>(capacityMb << 20, slabMb << 20, mappedFile, type,
+                            expireAfterAccessNanos, expireAfterWriteNanos);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot create off-heap storage of cache " + cache, e);
+                }
+            default:
+                throw new IllegalArgumentException(cache + ".storage must be heap or offheap, not " + storage);
+        }
+    }
+}
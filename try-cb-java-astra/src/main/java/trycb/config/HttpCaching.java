@@ -0,0 +1,72 @@
+package trycb.config;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+
+import trycb.util.ReferenceResponseFilter;
+
+/**
+ * Caching headers and compression for reference data.
+ *
+ * Airport and flight path responses go through {@link ReferenceResponseFilter}. The static
+ * swagger.json is served with a content-hash ETag and, when the client accepts gzip, from the
+ * swagger.json.gz file precompressed at build time (the resolver would also pick up a
+ * swagger.json.br, but the build produces none). Dynamic responses are gzipped by the server
+ * (server.compression.*).
+ */
+@Configuration
+public class HttpCaching implements WebMvcConfigurer {
+
+    @Value("${http-cache.static-max-age-seconds:3600}")
+    private long staticMaxAgeSeconds;
+
+    public @Bean ReferenceResponseFilter referenceResponseFilter(
+            @Value("${http-cache.airports.cache-control:public, max-age=3600}") String airportsCacheControl,
+            @Value("${http-cache.flight-paths.cache-control:public, max-age=300}") String flightPathsCacheControl,
+            @Value("${http-cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${http-cache.max-entries:1024}") int maxEntries) {
+        Map<String, String> policies = new LinkedHashMap<>();
+        policies.put("/api/airports", airportsCacheControl);
+        policies.put("/api/flightPaths", flightPathsCacheControl);
+        return new ReferenceResponseFilter(policies, List.of(MediaType.APPLICATION_JSON, BinaryEncodings.SMILE, BinaryEncodings.CBOR),
+                ttlSeconds, maxEntries);
+    }
+
+    // Right after CORS, so cached answers still carry CORS headers but skip admission control and the services
+    public @Bean FilterRegistrationBean<ReferenceResponseFilter> referenceResponseFilterRegistration(ReferenceResponseFilter filter) {
+        FilterRegistrationBean<ReferenceResponseFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+
+    public @Bean FilterRegistrationBean<ShallowEtagHeaderFilter> staticEtagFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/swagger.json");
+        return registration;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/swagger.json")
+                .addResourceLocations("classpath:/static/")
+                .setCacheControl(CacheControl.maxAge(staticMaxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new PathResourceResolver());
+    }
+}
@@ -0,0 +1,66 @@
+package trycb.config;
+
+import com.datastax.astra.client.collections.Collection;
+import com.datastax.astra.client.collections.definition.documents.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Collection handle that is resolved on first use rather than when the service is created, so
+ * startup does not wait on Astra. A failed resolution is remembered for {@code retryNanos} (calls
+ * fail fast with it meanwhile) and then retried, so a transient problem does not disable the
+ * service until the next restart.
+ */
+public final class LazyCollection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyCollection.class);
+
+    private final String name;
+    private final Supplier<Collection<Document>> resolver;
+    private final long retryNanos;
+
+    private volatile Collection<Document> handle;
+    private volatile IllegalStateException lastFailure;
+    private volatile long failedAt;
+
+    LazyCollection(String name, Supplier<Collection<Document>> resolver, long retryNanos) {
+        this.name = name;
+        this.resolver = resolver;
+        this.retryNanos = retryNanos;
+    }
+
+    /**
+     * @throws IllegalStateException if the handle could not be resolved (recently).
+     */
+    public Collection<Document> get() {
+        Collection<Document> resolved = handle;
+        if (resolved != null) {
+            return resolved;
+        }
+        synchronized (this) {
+            if (handle != null) {
+                return handle;
+            }
+            if (lastFailure != null && System.nanoTime() - failedAt < retryNanos) {
+                throw lastFailure;
+            }
+            try {
+                handle = resolver.get();
+                lastFailure = null;
+                LOGGER.info("Resolved Astra collection '{}'", name);
+                return handle;
+            } catch (RuntimeException e) {
+                failedAt = System.nanoTime();
+                lastFailure = new IllegalStateException("Astra collection '" + name + "' is not available: " + e.getMessage(), e);
+                LOGGER.error("Failed to get Astra collection '{}', retrying on a later call", name, e);
+                throw lastFailure;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -1,23 +1,32 @@
 package trycb.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.filter.CommonsRequestLoggingFilter;
+import org.springframework.core.Ordered;
+
+import trycb.util.AccessLogFilter;
 
 /**
- * Trace incoming HTTP requests using Spring Boot CommonsRequestLoggingFilter.
- * This allows us to see incoming request logs when running the application.
+ * Trace incoming HTTP requests with the asynchronous {@link AccessLogFilter}.
+ * Entries go to the "trycb.access" logger; request bodies are only captured for a sampled
+ * fraction of requests (access-log.payload-sample-rate).
  */
 @Configuration
 public class Request {
 
-    public @Bean CommonsRequestLoggingFilter logFilter() {
-        CommonsRequestLoggingFilter filter = new CommonsRequestLoggingFilter();
-        filter.setIncludeQueryString(true);
-        filter.setIncludePayload(true);
-        filter.setMaxPayloadLength(10000);
-        filter.setIncludeHeaders(false);
-        filter.setAfterMessagePrefix("REQUEST: ");
-        return filter;
+    public @Bean AccessLogFilter accessLogFilter(@Value("${access-log.enabled:true}") boolean enabled,
+                                                 @Value("${access-log.payload-sample-rate:0.0}") double payloadSampleRate,
+                                                 @Value("${access-log.max-payload-length:10000}") int maxPayloadLength,
+                                                 @Value("${access-log.buffer-size:8192}") int bufferSize) {
+        return new AccessLogFilter(enabled, payloadSampleRate, maxPayloadLength, bufferSize);
+    }
+
+    // Runs first, so requests shed by admission control are logged too
+    public @Bean FilterRegistrationBean<AccessLogFilter> accessLogFilterRegistration(AccessLogFilter accessLogFilter) {
+        FilterRegistrationBean<AccessLogFilter> registration = new FilterRegistrationBean<>(accessLogFilter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
     }
 }
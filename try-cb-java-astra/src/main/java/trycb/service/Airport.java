@@ -1,7 +1,6 @@
 package trycb.service;
 
 // Astra DB Data API Imports - Corrected for 2.0.0-PREVIEW3
-import com.datastax.astra.client.databases.Database;
 import com.datastax.astra.client.collections.Collection;
 // Corrected path for Document
 import com.datastax.astra.client.collections.definition.documents.Document;
@@ -21,9 +20,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import trycb.config.AstraCollections;
+import trycb.config.LazyCollection;
+import trycb.util.SnapshotFile;
+
 // Standard Java Imports
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -35,27 +40,27 @@ public class Airport {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Airport.class);
 
-    private final Database astraDatabase;
+    private final AstraCollections astraCollections;
+    private final HedgedReads hedgedReads;
+    private final AstraGuard astraGuard;
+    private final RequestCoalescer requestCoalescer;
+    private final ReferenceSnapshot referenceSnapshot;
     private final String keyspace; // Keep keyspace if needed for other operations, though getCollection might not need it if DB bean has context
-    private Collection<Document> airportCollection;
+    private final LazyCollection airportCollection; // Resolved on first use
 
     @Autowired
-    public Airport(Database astraDatabase, @Value("${astra.api.keyspace}") String keyspace) {
-        this.astraDatabase = astraDatabase;
+    public Airport(AstraCollections astraCollections, HedgedReads hedgedReads, AstraGuard astraGuard,
+                  RequestCoalescer requestCoalescer, ReferenceSnapshot referenceSnapshot,
+                  @Value("${astra.api.keyspace}") String keyspace) {
+        this.astraCollections = astraCollections;
+        this.hedgedReads = hedgedReads;
+        this.astraGuard = astraGuard;
+        this.requestCoalescer = requestCoalescer;
+        this.referenceSnapshot = referenceSnapshot;
         this.keyspace = keyspace; // Store keyspace name
 
-        // Initialize collection - assuming collection name is 'airport'
-        // The Database bean from AstraConfig should provide necessary context (endpoint/token)
-        try {
-            this.airportCollection = astraDatabase.getCollection("airport", Document.class);
-            // Optionally verify collection exists or is accessible here if needed
-             LOGGER.info("Airport Service connected to Astra collection 'airport' in keyspace '{}'", keyspace); // Use configured keyspace for logging
-        } catch (Exception e) {
-             LOGGER.error("Failed to get Astra collection 'airport' in keyspace '{}'. Ensure it exists and credentials are valid.", keyspace, e);
-             // Decide how to handle this - throw exception? set collection to null?
-             // For now, log error. Calls to findAll will fail if collection is null.
-             this.airportCollection = null;
-        }
+        // Collection name is 'airport'; a failure to get it surfaces (and is retried) on the first searches
+        this.airportCollection = astraCollections.lazy("airport");
     }
 
     /**
@@ -66,27 +71,30 @@ public class Airport {
      * @return List of maps, each containing only the "airportname".
      */
     public List<Map<String, Object>> findAll(String params) {
-        if (airportCollection == null) {
-             LOGGER.error("Airport collection is not initialized. Cannot perform search.");
-             // Or throw a specific exception like IllegalStateException
-             return new LinkedList<>();
-        }
+        // Identical concurrent searches share one Astra query
+        return requestCoalescer.execute("airport:" + params, () -> search(params));
+    }
+
+    private List<Map<String, Object>> search(String params) {
         if (params == null || params.trim().isEmpty()) {
             LOGGER.warn("findAll called with null or empty params.");
             return new LinkedList<>();
         }
 
         Filter filter = null; // Initialize filter to null
+        String filterKind = null; // Filter shape reported to JFR
         boolean isFaaOrIcao = false;
         boolean sameCase = (params.equals(params.toUpperCase()) || params.equals(params.toLowerCase()));
         String searchParam = params.trim(); // Use trimmed param
 
         if (searchParam.length() == 3 && sameCase) {
             filter = Filters.eq("faa", searchParam.toUpperCase());
+            filterKind = "eq:faa";
             isFaaOrIcao = true;
             LOGGER.info("Searching airports with FAA filter: {}", filter);
         } else if (searchParam.length() == 4 && sameCase) {
             filter = Filters.eq("icao", searchParam.toUpperCase());
+            filterKind = "eq:icao";
             isFaaOrIcao = true;
             LOGGER.info("Searching airports with ICAO filter: {}", filter);
         } else {
@@ -101,9 +109,26 @@ public class Airport {
         }
 
         List<Map<String, Object>> data = new LinkedList<>();
+        Optional<SnapshotFile> snapshot = referenceSnapshot.current();
+        if (snapshot.isPresent()) {
+            String code = searchParam.toUpperCase();
+            List<SnapshotFile.Airport> airports = "eq:faa".equals(filterKind)
+                    ? snapshot.get().airportsByFaa(code)
+                    : snapshot.get().airportsByIcao(code);
+            airports.stream().filter(airport -> airport.name != null)
+                    .forEach(airport -> data.add(Map.of("id", airport.id, "airportname", airport.name)));
+            LOGGER.debug("Found {} airports matching filter [{}] in the reference snapshot.", data.size(), filter);
+            return data;
+        }
         try {
-            // Execute find operation only for FAA/ICAO filters
-            airportCollection.find(filter).forEach(doc -> {
+            // Execute find operation only for FAA/ICAO filters (idempotent, so it may be hedged)
+            final Filter airportFilter = filter;
+            List<Document> airportDocs = astraGuard.call("airport", "find", filterKind, () -> hedgedReads.read("airport.find", () -> {
+                List<Document> docs = new ArrayList<>();
+                airportCollection.get().find(airportFilter).forEach(docs::add);
+                return docs;
+            }));
+            airportDocs.forEach(doc -> {
                 // Extract only the projected field
                 String airportName = doc.getString("airportname");
                 // Use getId(String.class)
@@ -115,12 +140,12 @@ public class Airport {
                 }
             });
 
-        } catch (Exception e) {
-            // Catch specific Astra exceptions if available
-            LOGGER.error("Astra find operation failed for airports with filter [{}]: {}", filter, e.getMessage(), e);
-            // Depending on requirements, re-throw a custom service exception or return empty/partial list
-            // For now, just return the (potentially empty) list accumulated so far
-            // Consider throwing custom exception: throw new DataRetrievalFailureException("Failed to retrieve airports", e);
+        } catch (AstraUnavailableException e) {
+            throw e; // Fail fast, the controller answers 503
+        } catch (RuntimeException e) {
+            // Not an empty list, which would be cached as "no such airport"
+            LOGGER.error("Astra find operation failed for airports with filter [{}]: {}", filter, e.getMessage());
+            throw e;
         }
 
         LOGGER.info("Found {} airports matching filter [{}].", data.size(), filter);
@@ -0,0 +1,303 @@
+package trycb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import com.datastax.astra.client.collections.definition.documents.Document;
+
+import trycb.util.AstraCallEvent;
+import trycb.util.CircuitBreaker;
+import trycb.util.Deadline;
+import trycb.util.RemoteCalls;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Resilience layer around remote Astra calls.
+ *
+ * Each collection gets its own bulkhead (a bounded number of concurrent calls) and circuit
+ * breaker, so a slow or failing collection cannot tie up every request thread. Calls are also
+ * bounded by the request {@link Deadline}: once the budget is spent, the remaining calls of a
+ * request fail fast with {@link AstraUnavailableException} instead of queueing, and a call made
+ * under a deadline runs on the call pool while the request thread waits only for the remaining
+ * budget (the HTTP request timeout may be longer). A call given up on that way keeps its
+ * bulkhead permit until it actually returns. Every call that goes out is recorded as an
+ * {@link AstraCallEvent} while a flight recording is running.
+ *
+ * Only failures that say something about Astra's health count against the breaker (see
+ * {@link #isRemoteFailure}); a duplicate _id or a bad filter sent by one client must not open
+ * the breaker that every tenant shares.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=AstraGuard", description = "Astra bulkheads and circuit breakers")
+public class AstraGuard implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AstraGuard.class);
+    // "HTTP 503", "status code: 502", ... in the SDK's error messages
+    private static final Pattern SERVER_ERROR = Pattern.compile("(?i)(?:http|status)\\D{0,20}5\\d\\d(?!\\d)");
+
+    private final int maxConcurrentCalls;
+    private final long acquireTimeoutMs;
+    private final int failureThreshold;
+    private final long openMs;
+    private final int halfOpenProbes;
+
+    private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+    // Unbounded: the bulkheads already bound the calls in flight
+    private final ThreadPoolExecutor callPool;
+
+    @Autowired
+    public AstraGuard(@Value("${astra.guard.max-concurrent-calls:32}") int maxConcurrentCalls,
+                      @Value("${astra.guard.acquire-timeout-ms:100}") long acquireTimeoutMs,
+                      @Value("${astra.guard.failure-threshold:5}") int failureThreshold,
+                      @Value("${astra.guard.open-ms:5000}") long openMs,
+                      @Value("${astra.guard.half-open-probes:1}") int halfOpenProbes) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.halfOpenProbes = halfOpenProbes;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.callPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "astra-call-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a remote call against the given collection inside its bulkhead and circuit breaker.
+     *
+     * @param operation  Data API command, e.g. "findOne".
+     * @param filterKind shape of the filter for profiling, e.g. "eq:_id".
+     * @throws AstraUnavailableException if the deadline has passed (before or during the call),
+     * the bulkhead stayed full until the acquire timeout, or the circuit is open.
+     */
+    public <T> T call(String collection, String operation, String filterKind, Supplier<T> call) {
+        Compartment compartment = compartments.computeIfAbsent(collection, Compartment::new);
+
+        long remainingMs = Deadline.remainingMillis();
+        if (remainingMs <= 0) {
+            compartment.deadlineExceeded.incrementAndGet();
+            throw new AstraUnavailableException("Request deadline exceeded before calling Astra collection " + collection);
+        }
+
+        boolean acquired;
+        try {
+            acquired = compartment.permits.tryAcquire(Math.min(acquireTimeoutMs, remainingMs), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            compartment.bulkheadRejected.incrementAndGet();
+            throw new AstraUnavailableException("Too many concurrent calls to Astra collection " + collection);
+        }
+
+        boolean handedOff = false; // The pool thread releases the permit
+        try {
+            if (!compartment.breaker.tryAcquire()) {
+                compartment.circuitRejected.incrementAndGet();
+                throw new AstraUnavailableException("Circuit open for Astra collection " + collection);
+            }
+            T value = null;
+            boolean success = false;
+            RemoteCalls.increment();
+            AstraCallEvent event = new AstraCallEvent();
+            event.begin();
+            try {
+                if (Deadline.current() == null) {
+                    // Background work: only the HTTP request timeout bounds the call
+                    value = invoke(compartment, collection, call);
+                } else {
+                    Supplier<T> pooledCall = RemoteCalls.propagate(Deadline.propagate(call));
+                    Future<T> result;
+                    try {
+                        result = callPool.submit(() -> {
+                            try {
+                                return invoke(compartment, collection, pooledCall);
+                            } finally {
+                                compartment.permits.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        compartment.breaker.onIgnored(); // Shutting down, the call never went out
+                        throw new AstraUnavailableException("Shutting down, not calling Astra collection " + collection);
+                    }
+                    handedOff = true;
+                    value = await(compartment, collection, result);
+                }
+                success = true;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.collection = collection;
+                    event.operation = operation;
+                    event.filterKind = filterKind;
+                    event.success = success;
+                    event.requestId = RemoteCalls.requestId();
+                    measure(event, value);
+                    event.commit();
+                }
+            }
+            return value;
+        } finally {
+            if (!handedOff) {
+                compartment.permits.release();
+            }
+        }
+    }
+
+    // Runs the call and reports its outcome to the breaker, whatever it throws
+    private <T> T invoke(Compartment compartment, String collection, Supplier<T> call) {
+        boolean reported = false;
+        try {
+            T value = call.get();
+            reported = true;
+            compartment.breaker.onSuccess();
+            compartment.calls.incrementAndGet();
+            return value;
+        } catch (RuntimeException e) {
+            reported = true;
+            if (isRemoteFailure(e)) {
+                compartment.failures.incrementAndGet();
+                if (compartment.breaker.onFailure()) {
+                    LOGGER.warn("Circuit opened for Astra collection '{}' after: {}", collection, e.getMessage());
+                }
+            } else {
+                compartment.rejected.incrementAndGet();
+                compartment.breaker.onIgnored();
+            }
+            throw e;
+        } finally {
+            if (!reported) {
+                // An Error says nothing about Astra, but a half-open probe slot must be given back
+                compartment.breaker.onIgnored();
+            }
+        }
+    }
+
+    // Waits for a pooled call at most until the request deadline; the call itself runs on until it returns
+    private static <T> T await(Compartment compartment, String collection, Future<T> result) {
+        try {
+            return result.get(Deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            compartment.deadlineExceeded.incrementAndGet();
+            throw new AstraUnavailableException("Request deadline exceeded waiting for Astra collection " + collection);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AstraUnavailableException("Interrupted while waiting for Astra collection " + collection);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Astra call failed", cause);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        callPool.shutdownNow();
+    }
+
+    /**
+     * Whether a failed call tells that Astra is unhealthy: transport errors, timeouts and 5xx
+     * responses do. Data and validation errors do not (e.g. a duplicate _id or an invalid filter,
+     * which Astra answers in the response body), nor does a nested call giving up because this
+     * request's deadline is used up. The SDK's exceptions are matched by name and message, as the
+     * types differ between SDK versions and transport errors arrive wrapped.
+     */
+    static boolean isRemoteFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof AstraUnavailableException) {
+                return false;
+            }
+            if (t instanceof IOException || t instanceof TimeoutException || t.getClass().getSimpleName().contains("Timeout")) {
+                return true;
+            }
+            if (t.getMessage() != null && SERVER_ERROR.matcher(t.getMessage()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Rows and approximate bytes of a find (List) or findOne (Optional) result; 0 for write results
+    private static void measure(AstraCallEvent event, Object value) {
+        if (value instanceof Optional) {
+            value = ((Optional<?>) value).map(List::of).orElse(List.of());
+        }
+        if (value instanceof List) {
+            List<?> rows = (List<?>) value;
+            event.rows = rows.size();
+            for (Object row : rows) {
+                if (row instanceof Document) {
+                    String json = ((Document) row).toJson();
+                    event.bytes += json == null ? 0 : json.length();
+                }
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Per-collection breaker state, calls, failures and rejections")
+    public String[] getCollectionStats() {
+        return compartments.values().stream().map(Compartment::toString).sorted().toArray(String[]::new);
+    }
+
+    @ManagedAttribute(description = "Maximum concurrent Astra calls per collection")
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Bulkhead, breaker and counters of a single collection.
+     */
+    private final class Compartment {
+
+        private final Semaphore permits = new Semaphore(maxConcurrentCalls);
+        private final CircuitBreaker breaker;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong(); // Data/validation errors, not counted as failures
+        private final AtomicLong bulkheadRejected = new AtomicLong();
+        private final AtomicLong circuitRejected = new AtomicLong();
+        private final AtomicLong deadlineExceeded = new AtomicLong();
+
+        Compartment(String collection) {
+            this.breaker = new CircuitBreaker(collection, failureThreshold, openMs, halfOpenProbes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s calls=%d failures=%d rejected=%d inFlight=%d bulkheadRejected=%d circuitRejected=%d deadlineExceeded=%d",
+                    breaker, calls.get(), failures.get(), rejected.get(), maxConcurrentCalls - permits.availablePermits(),
+                    bulkheadRejected.get(), circuitRejected.get(), deadlineExceeded.get());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package trycb.service;
+
+/**
+ * Thrown instead of calling Astra when the call cannot succeed in time: the collection's
+ * circuit breaker is open, its bulkhead is full, or the request deadline has passed.
+ * Controllers map it to HTTP 503.
+ */
+public class AstraUnavailableException extends RuntimeException {
+
+    public AstraUnavailableException(String message) {
+        super(message);
+    }
+}
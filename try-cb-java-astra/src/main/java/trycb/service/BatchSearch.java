@@ -0,0 +1,260 @@
+package trycb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import trycb.util.Deadline;
+import trycb.util.RateLimitFilter;
+import trycb.util.RemoteCalls;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs several airport, flight path and hotel searches of one page load concurrently and
+ * returns their results together, so the UI needs a single round trip.
+ *
+ * Sub-queries share airport FAA resolutions: outbound and return flights of a trip resolve
+ * each airport once. Every sub-query succeeds or fails on its own; a failure is reported in
+ * its slot of the response instead of failing the whole batch. Each sub-query is rate limited
+ * like a request of its single endpoint, so batching does not bypass those limits.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=BatchSearch", description = "Batched multi-search")
+public class BatchSearch implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchSearch.class);
+
+    private final Airport airportService;
+    private final FlightPath flightPathService;
+    private final Hotel hotelService;
+    private final int maxQueries;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong sharedFaaLookups = new AtomicLong();
+
+    @Autowired
+    public BatchSearch(Airport airportService, FlightPath flightPathService, Hotel hotelService,
+                       @Value("${batch.max-queries:10}") int maxQueries,
+                       @Value("${batch.threads:16}") int threads) {
+        this.airportService = airportService;
+        this.flightPathService = flightPathService;
+        this.hotelService = hotelService;
+        this.maxQueries = maxQueries;
+        AtomicInteger threadIds = new AtomicInteger();
+        // Callers run sub-queries themselves when the pool and its queue are full
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 4), r -> {
+            Thread thread = new Thread(r, "batch-search-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes a batch of sub-queries. Each query is a map with a "type" ("airports",
+     * "flightPaths" or "hotels"), an optional "id" (defaults to its index) and the parameters
+     * of the matching single endpoint: "search"; "from", "to", "leave"; "location", "description".
+     *
+     * @param rateLimit charges a call of the endpoint URI given, see {@link RateLimitFilter#chargerFor}.
+     * @return results by query id; each either {"data": [...]} or {"error": ..., "status": ...}.
+     * @throws IllegalArgumentException if the batch is empty, larger than batch.max-queries or has duplicate ids.
+     */
+    public Map<String, Object> execute(List<Map<String, Object>> batch, ToLongFunction<String> rateLimit) {
+        if (batch == null || batch.isEmpty()) {
+            throw new IllegalArgumentException("No queries provided");
+        }
+        if (batch.size() > maxQueries) {
+            throw new IllegalArgumentException("At most " + maxQueries + " queries per batch");
+        }
+        List<String> keys = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> query = batch.get(i);
+            Object id = query == null ? null : query.get("id");
+            String key = id != null ? id.toString() : String.valueOf(i);
+            if (keys.contains(key)) {
+                throw new IllegalArgumentException("Duplicate query id: " + key);
+            }
+            keys.add(key);
+        }
+        batches.incrementAndGet();
+        queries.addAndGet(batch.size());
+
+        Function<String, String> faaLookup = sharedFaaLookup();
+        Map<String, CompletableFuture<Map<String, Object>>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> query = batch.get(i);
+            String key = keys.get(i);
+            String endpoint = endpointOf(query);
+            long waitNanos = endpoint == null ? 0 : rateLimit.applyAsLong(endpoint);
+            if (waitNanos > 0) {
+                pending.put(key, CompletableFuture.completedFuture(error(HttpStatus.TOO_MANY_REQUESTS,
+                        "Too many requests, retry in " + RateLimitFilter.retryAfterSeconds(waitNanos) + " s")));
+                continue;
+            }
+            // Pool threads work under the request's deadline and count towards its remote calls
+            Supplier<Map<String, Object>> task = RemoteCalls.propagate(Deadline.propagate(() -> run(query, faaLookup)));
+            pending.put(key, CompletableFuture.supplyAsync(task, executor));
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        pending.forEach((key, future) -> results.put(key, await(future)));
+        return results;
+    }
+
+    private Map<String, Object> run(Map<String, Object> query, Function<String, String> faaLookup) {
+        try {
+            if (query == null) {
+                throw new IllegalArgumentException("Query must be an object");
+            }
+            String type = string(query, "type");
+            List<Map<String, Object>> data;
+            if ("airports".equals(type)) {
+                data = airportService.findAll(string(query, "search"));
+            } else if ("flightPaths".equals(type)) {
+                data = flightPathService.findAll(string(query, "from"), string(query, "to"),
+                        parseDate(string(query, "leave")), faaLookup);
+            } else if ("hotels".equals(type)) {
+                data = hotelService.findHotels(orAll(query.get("location")), orAll(query.get("description")));
+            } else {
+                throw new IllegalArgumentException("Unknown query type: " + type);
+            }
+            return Map.of("data", data);
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (AstraUnavailableException e) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("Batch sub-query {} failed", query, e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Search failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the URI of the single endpoint answering the same query, null if it has no valid type.
+     */
+    static String endpointOf(Map<String, Object> query) {
+        Object type = query == null ? null : query.get("type");
+        if ("airports".equals(type)) {
+            return "/api/airports";
+        } else if ("flightPaths".equals(type)) {
+            return "/api/flightPaths/" + query.get("from") + "/" + query.get("to");
+        } else if ("hotels".equals(type)) {
+            return "/api/hotels/" + orAll(query.get("description")) + "/" + orAll(query.get("location"));
+        }
+        return null;
+    }
+
+    // Resolves each airport name at most once per batch, even when sub-queries ask concurrently
+    private Function<String, String> sharedFaaLookup() {
+        Map<String, CompletableFuture<String>> resolved = new ConcurrentHashMap<>();
+        return airportName -> {
+            CompletableFuture<String> mine = new CompletableFuture<>();
+            CompletableFuture<String> existing = resolved.putIfAbsent(airportName, mine);
+            if (existing != null) {
+                sharedFaaLookups.incrementAndGet();
+                try {
+                    return existing.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+            try {
+                String faa = flightPathService.findAirportFaa(airportName);
+                mine.complete(faa);
+                return faa;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        };
+    }
+
+    private static Map<String, Object> await(CompletableFuture<Map<String, Object>> future) {
+        try {
+            return future.get(TimeUnit.MILLISECONDS.toNanos(Deadline.remainingMillis()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Request deadline exceeded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted");
+        } catch (ExecutionException e) {
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Search failed: " + e.getCause().getMessage());
+        }
+    }
+
+    private static Map<String, Object> error(HttpStatus status, String message) {
+        return Map.of("error", message == null ? status.getReasonPhrase() : message, "status", status.value());
+    }
+
+    private static String string(Map<String, Object> query, String name) {
+        Object value = query.get(name);
+        if (value == null || value.toString().trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing \"" + name + "\"");
+        }
+        return value.toString();
+    }
+
+    private static String orAll(Object value) {
+        return value == null || value.toString().trim().isEmpty() ? "*" : value.toString();
+    }
+
+    // Same format as the leave parameter of /api/flightPaths
+    private static Calendar parseDate(String leave) {
+        Calendar calendar = Calendar.getInstance(Locale.US);
+        try {
+            calendar.setTime(DateFormat.getDateInstance(DateFormat.SHORT, Locale.US).parse(leave));
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Use format like MM/dd/yy.");
+        }
+        return calendar;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @ManagedAttribute(description = "Batches executed")
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @ManagedAttribute(description = "Sub-queries executed")
+    public long getQueries() {
+        return queries.get();
+    }
+
+    @ManagedAttribute(description = "FAA resolutions answered by another sub-query of the same batch")
+    public long getSharedFaaLookups() {
+        return sharedFaaLookups.get();
+    }
+}
@@ -0,0 +1,217 @@
+package trycb.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import trycb.config.CacheStorages;
+import trycb.util.CacheEvent;
+import trycb.util.CacheStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user cache of booked flights, bounded by {@code booking-cache.max-users} (least recently
+ * used first) and dropping users idle for {@code booking-cache.idle-seconds}.
+ *
+ * Entries are filled on read and updated in place when this instance books flights, so users
+ * see their new bookings without any Astra read. Other instances are told to drop their copy
+ * through the {@link BookingInvalidationBus}. A read that raced with a booking of the same user
+ * is not cached, so a stale list never replaces a fresher one.
+ *
+ * With {@code booking-cache.storage=offheap} the lists are kept serialized off-heap (see
+ * {@link CacheStorages}) and bounded by that capacity instead of {@code max-users}.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=BookingCache", description = "Per-user booking cache")
+public class BookingCache implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingCache.class);
+    private static final int WRITE_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final BookingInvalidationBus invalidationBus;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // Lists stored are never modified, updates store a new one
+    private final CacheStorage<List<Map<String, Object>>> entries;
+    // Write counters per key stripe; a load is only cached if its stripe saw no write meanwhile
+    private final AtomicLongArray writeStamps = new AtomicLongArray(WRITE_STRIPES);
+    private final Object writeLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong remoteInvalidations = new AtomicLong();
+
+    @Autowired
+    public BookingCache(BookingInvalidationBus invalidationBus, CacheStorages cacheStorages,
+                        @Value("${booking-cache.enabled:true}") boolean enabled,
+                        @Value("${booking-cache.max-users:10000}") int maxUsers,
+                        @Value("${booking-cache.idle-seconds:600}") long idleSeconds) {
+        this.invalidationBus = invalidationBus;
+        this.enabled = enabled;
+        this.entries = cacheStorages.create("booking-cache", new TypeReference<List<Map<String, Object>>>() {},
+                maxUsers, TimeUnit.SECONDS.toNanos(idleSeconds), 0);
+        invalidationBus.subscribe(this::onInvalidation);
+    }
+
+    /**
+     * @return a copy of the user's cached bookings, if present and not idle for too long.
+     */
+    public Optional<List<Map<String, Object>>> get(String tenant, String username) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = key(tenant, username);
+        List<Map<String, Object>> cached = entries.get(key);
+        List<Map<String, Object>> bookings = cached == null ? null : new ArrayList<>(cached);
+        CacheEvent.record("bookings", key, bookings != null);
+        (bookings != null ? hits : misses).incrementAndGet();
+        return Optional.ofNullable(bookings);
+    }
+
+    /**
+     * Stamp to take before loading a user's bookings from Astra and to hand to {@link #put}.
+     */
+    public long stamp(String tenant, String username) {
+        return writeStamps.get(stripe(key(tenant, username)));
+    }
+
+    /**
+     * Caches bookings loaded from Astra, unless a booking of the user was written since {@code stamp}.
+     */
+    public void put(String tenant, String username, long stamp, List<Map<String, Object>> bookings) {
+        if (!enabled) {
+            return;
+        }
+        String key = key(tenant, username);
+        synchronized (writeLock) {
+            if (writeStamps.get(stripe(key)) == stamp) {
+                entries.put(key, new ArrayList<>(bookings));
+            }
+        }
+    }
+
+    /**
+     * Adds bookings this instance just wrote to the user's cached list (if cached) and tells
+     * the other instances to drop theirs.
+     */
+    public void bookingsAdded(String tenant, String username, List<Map<String, Object>> added) {
+        String key = key(tenant, username);
+        synchronized (writeLock) {
+            writeStamps.incrementAndGet(stripe(key));
+            List<Map<String, Object>> cached = entries.get(key);
+            if (cached != null) {
+                List<Map<String, Object>> bookings = new ArrayList<>(cached);
+                bookings.addAll(added);
+                entries.put(key, bookings);
+            }
+        }
+        invalidationBus.publish(new BookingInvalidationBus.Invalidation(instanceId, tenant, username));
+    }
+
+    /**
+     * Drops the user's cached bookings here and on the other instances, e.g. after a write
+     * whose outcome is unknown.
+     */
+    public void invalidate(String tenant, String username) {
+        evict(key(tenant, username));
+        invalidationBus.publish(new BookingInvalidationBus.Invalidation(instanceId, tenant, username));
+    }
+
+    private void onInvalidation(BookingInvalidationBus.Invalidation invalidation) {
+        if (!instanceId.equals(invalidation.getOrigin())) {
+            remoteInvalidations.incrementAndGet();
+            evict(key(invalidation.getTenant(), invalidation.getUsername()));
+        }
+    }
+
+    private void evict(String key) {
+        synchronized (writeLock) {
+            writeStamps.incrementAndGet(stripe(key));
+            entries.remove(key);
+        }
+    }
+
+    private static String key(String tenant, String username) {
+        return tenant + "/" + username;
+    }
+
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), WRITE_STRIPES);
+    }
+
+    // Idle users are also dropped on access; the sweep frees memory of users that never come back
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        entries.removeExpired();
+    }
+
+    @ManagedOperation(description = "Drop all cached bookings")
+    public void clear() {
+        synchronized (writeLock) {
+            for (int i = 0; i < WRITE_STRIPES; i++) {
+                writeStamps.incrementAndGet(i);
+            }
+            entries.clear();
+        }
+        LOGGER.info("Booking cache cleared");
+    }
+
+    @ManagedAttribute(description = "Reads answered from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Reads that had to go to Astra")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of reads answered from the cache")
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    @ManagedAttribute(description = "Users evicted for size or idle time")
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    @ManagedAttribute(description = "Invalidations received from other instances")
+    public long getRemoteInvalidations() {
+        return remoteInvalidations.get();
+    }
+
+    @ManagedAttribute(description = "Users cached")
+    public int getSize() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Off-heap memory allocated for cached bookings, 0 for heap storage")
+    public long getOffHeapBytes() {
+        return entries.getOffHeapBytes();
+    }
+
+    @Override
+    public void destroy() {
+        entries.close();
+    }
+}
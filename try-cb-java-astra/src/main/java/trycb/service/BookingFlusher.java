@@ -0,0 +1,211 @@
+package trycb.service;
+
+import com.datastax.astra.client.collections.commands.Updates;
+import com.datastax.astra.client.collections.definition.documents.Document;
+import com.datastax.astra.client.core.query.Filters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the bookings pending in the {@link BookingJournal} to Astra: per tenant one
+ * {@code insertMany} for the bookings, then one update per user linking them.
+ *
+ * Both steps are idempotent (bookings already present are skipped, the user's list is merged),
+ * so a batch that failed halfway is simply retried on the next run. When Astra is unavailable
+ * the whole tenant waits; when it rejects single bookings, the others are still written and
+ * linked, and a booking rejected {@code booking.write-behind.max-attempts} times is quarantined
+ * (see {@link BookingJournal#quarantine}). Bookings of users that no longer exist are abandoned.
+ */
+@Service
+public class BookingFlusher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingFlusher.class);
+
+    private final BookingJournal journal;
+    private final TenantCollections tenantCollections;
+    private final AstraGuard astraGuard;
+    private final BookingCache bookingCache;
+    private final int maxBatch;
+    private final int maxAttempts;
+
+    @Autowired
+    public BookingFlusher(BookingJournal journal, TenantCollections tenantCollections, AstraGuard astraGuard,
+                          BookingCache bookingCache, @Value("${booking.write-behind.max-batch:100}") int maxBatch,
+                          @Value("${booking.write-behind.max-attempts:10}") int maxAttempts) {
+        this.journal = journal;
+        this.tenantCollections = tenantCollections;
+        this.astraGuard = astraGuard;
+        this.bookingCache = bookingCache;
+        this.maxBatch = maxBatch;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Scheduled(fixedDelayString = "${booking.write-behind.flush-interval-ms:200}")
+    public void flush() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        // Each booking is tried at most once per run, so rejected ones are retried at the flush interval
+        Set<Long> tried = new HashSet<>();
+        List<BookingJournal.PendingBooking> batch;
+        while (!(batch = untried(tried)).isEmpty()) {
+            batch.forEach(entry -> tried.add(entry.seq));
+            Map<String, List<BookingJournal.PendingBooking>> byTenant = batch.stream()
+                    .collect(Collectors.groupingBy(entry -> entry.tenant, LinkedHashMap::new, Collectors.toList()));
+            boolean progress = false;
+            for (Map.Entry<String, List<BookingJournal.PendingBooking>> tenant : byTenant.entrySet()) {
+                try {
+                    progress |= flushTenant(tenant.getKey(), tenant.getValue());
+                } catch (Exception e) {
+                    // Left pending, retried on the next run
+                    journal.flushFailed();
+                    LOGGER.warn("Failed to flush {} bookings of tenant '{}': {}", tenant.getValue().size(), tenant.getKey(), e.getMessage());
+                }
+            }
+            if (!progress) {
+                return;
+            }
+        }
+    }
+
+    private List<BookingJournal.PendingBooking> untried(Set<Long> tried) {
+        return journal.oldest(maxBatch + tried.size()).stream()
+                .filter(entry -> !tried.contains(entry.seq))
+                .limit(maxBatch)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return whether any booking was written, abandoned or quarantined.
+     * @throws RuntimeException if Astra is unavailable; what was written so far is linked first.
+     */
+    private boolean flushTenant(String tenant, List<BookingJournal.PendingBooking> entries) {
+        List<BookingJournal.PendingBooking> inserted = new ArrayList<>();
+        RuntimeException unavailable = null;
+        boolean quarantined = false;
+        List<Document> bookingDocs = entries.stream().map(BookingFlusher::toDocument).collect(Collectors.toList());
+        try {
+            tenantCollections.execute(tenant, t -> astraGuard.call(TenantUser.BOOKINGS_COLLECTION_NAME, "insertMany", "none",
+                    () -> t.bookings().insertMany(bookingDocs)));
+            inserted.addAll(entries);
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            // Typically some bookings already exist (replayed after a crash), or Astra rejects one of them:
+            // insert the others one by one
+            LOGGER.info("Batched booking insert for tenant '{}' failed ({}), inserting missing bookings individually", tenant, e.getMessage());
+            for (BookingJournal.PendingBooking entry : entries) {
+                try {
+                    insertIfMissing(tenant, toDocument(entry));
+                    inserted.add(entry);
+                } catch (RuntimeException insertFailure) {
+                    if (isTransient(insertFailure)) {
+                        unavailable = insertFailure;
+                        break;
+                    }
+                    quarantined |= rejected(List.of(entry), insertFailure);
+                }
+            }
+        }
+
+        Map<String, List<BookingJournal.PendingBooking>> byUser = inserted.stream()
+                .collect(Collectors.groupingBy(entry -> entry.username, LinkedHashMap::new, Collectors.toList()));
+        boolean linked = false;
+        for (Map.Entry<String, List<BookingJournal.PendingBooking>> user : byUser.entrySet()) {
+            try {
+                linkBookings(tenant, user.getKey(), user.getValue());
+                linked = true;
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                quarantined |= rejected(user.getValue(), e);
+            }
+        }
+        if (unavailable != null) {
+            throw unavailable;
+        }
+        return linked || quarantined;
+    }
+
+    // Astra unavailable or overloaded, as opposed to rejecting the booking itself
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TenantOverloadedException || e instanceof AstraUnavailableException || AstraGuard.isRemoteFailure(e);
+    }
+
+    /**
+     * Counts a rejection of the bookings; those rejected too often are quarantined.
+     *
+     * @return whether any was quarantined.
+     */
+    private boolean rejected(List<BookingJournal.PendingBooking> entries, RuntimeException e) {
+        boolean quarantined = false;
+        for (BookingJournal.PendingBooking entry : entries) {
+            if (++entry.attempts >= maxAttempts) {
+                journal.quarantine(entry, e.getMessage());
+                bookingCache.invalidate(entry.tenant, entry.username);
+                quarantined = true;
+            } else {
+                LOGGER.warn("Astra rejected booking {} of user '{}' (tenant '{}', attempt {}/{}): {}",
+                        entry.booking.get("_id"), entry.username, entry.tenant, entry.attempts, maxAttempts, e.getMessage());
+            }
+        }
+        return quarantined;
+    }
+    private void insertIfMissing(String tenant, Document bookingDoc) {
+        Object id = bookingDoc.get("_id");
+        tenantCollections.execute(tenant, t -> {
+            Optional<Document> existing = astraGuard.call(TenantUser.BOOKINGS_COLLECTION_NAME, "findOne", "eq:_id",
+                    () -> t.bookings().findOne(Filters.eq("_id", id)));
+            if (existing.isEmpty()) {
+                astraGuard.call(TenantUser.BOOKINGS_COLLECTION_NAME, "insertOne", "none", () -> t.bookings().insertOne(bookingDoc));
+            }
+            return null;
+        });
+    }
+
+    private void linkBookings(String tenant, String username, List<BookingJournal.PendingBooking> entries) {
+        Optional<Document> userDocOpt = tenantCollections.execute(tenant, t -> astraGuard.call(TenantUser.USERS_COLLECTION_NAME,
+                "findOne", "eq:_id", () -> t.users().findOne(Filters.eq("_id", username))));
+        if (userDocOpt.isEmpty()) {
+            LOGGER.error("Abandoning {} bookings of user '{}' (tenant '{}'): user not found", entries.size(), username, tenant);
+            journal.done(entries);
+            bookingCache.invalidate(tenant, username);
+            return;
+        }
+        List<String> currentFlightIds = userDocOpt.get().getList("flights", String.class);
+        Set<String> allBookingIds = currentFlightIds == null ? new LinkedHashSet<>() : new LinkedHashSet<>(currentFlightIds);
+        entries.forEach(entry -> allBookingIds.add((String) entry.booking.get("_id")));
+
+        tenantCollections.execute(tenant, t -> astraGuard.call(TenantUser.USERS_COLLECTION_NAME, "updateOne", "eq:_id",
+                () -> t.users().updateOne(Filters.eq("_id", username), Updates.set("flights", new ArrayList<>(allBookingIds)))));
+        journal.done(entries);
+        LOGGER.debug("Flushed {} bookings of user '{}' (tenant '{}')", entries.size(), username, tenant);
+    }
+
+    private static Document toDocument(BookingJournal.PendingBooking entry) {
+        Document doc = new Document().id(entry.booking.get("_id"));
+        entry.booking.forEach((key, value) -> {
+            if (!"_id".equals(key)) {
+                doc.put(key, value);
+            }
+        });
+        return doc;
+    }
+}
@@ -0,0 +1,43 @@
+package trycb.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries booking cache invalidations between application instances. Each instance
+ * publishes the users whose bookings it changed; every other instance drops its cached copy.
+ * Implementations for a shared broker (Redis pub/sub, Pulsar, ...) plug in as a bean of this type.
+ */
+public interface BookingInvalidationBus {
+
+    void publish(Invalidation invalidation);
+
+    void subscribe(Consumer<Invalidation> listener);
+
+    /**
+     * Bookings of one tenant user changed on the instance {@code origin}.
+     */
+    final class Invalidation {
+
+        private final String origin;
+        private final String tenant;
+        private final String username;
+
+        public Invalidation(String origin, String tenant, String username) {
+            this.origin = origin;
+            this.tenant = tenant;
+            this.username = username;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
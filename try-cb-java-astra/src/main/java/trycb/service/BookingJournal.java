@@ -0,0 +1,399 @@
+package trycb.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Local append-only log of bookings not yet written to Astra (write-behind mode, opt-in with
+ * {@code booking.write-behind.enabled}).
+ *
+ * Bookings are appended as JSON lines and acknowledged once the log has been fsynced. Appenders
+ * arriving while an fsync is running are covered together by the next one, so under load one
+ * fsync serves many bookings. {@link BookingFlusher} writes pending bookings to Astra and marks
+ * them flushed here; the log is truncated whenever nothing is pending. On startup the log is
+ * replayed and the bookings without a flushed marker are pending again; writing them to Astra is
+ * idempotent, so a crash between the Astra write and the marker is harmless. A write that fails
+ * partway (e.g. a full disk) is cut off again, and replay skips any line it cannot read, so a
+ * torn line never hides the bookings logged after it.
+ *
+ * The log is local to this instance: other instances only see the bookings once they are flushed.
+ * Bookings Astra keeps rejecting are moved to a dead-letter file
+ * ({@code booking.write-behind.dead-letter-file}) for manual repair.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=BookingJournal", description = "Write-behind booking log")
+public class BookingJournal implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingJournal.class);
+    private static final String OP_BOOK = "book";
+    private static final String OP_DONE = "done"; // Flushed to Astra, or abandoned
+
+    private final boolean enabled;
+    private final Path file;
+    private final Path deadLetterFile;
+    private final ObjectMapper objectMapper;
+    private FileChannel channel;
+
+    // Appends and truncation; pending entries are added under this lock so truncation never loses one
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private long nextSeq = 1;
+    private boolean torn; // A failed write left part of a line that could not be cut off
+    private volatile long writtenSeq;
+    private volatile long syncedSeq;
+    private final ConcurrentSkipListMap<Long, PendingBooking> pending = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong quarantined = new AtomicLong();
+    private volatile long lastFlushLagMs;
+
+    @Autowired
+    public BookingJournal(ObjectMapper objectMapper,
+                          @Value("${booking.write-behind.enabled:false}") boolean enabled,
+                          @Value("${booking.write-behind.log-file:data/booking-journal.log}") String logFile,
+                          @Value("${booking.write-behind.dead-letter-file:data/booking-dead-letter.log}") String deadLetterFile) throws IOException {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.file = Paths.get(logFile);
+        this.deadLetterFile = Paths.get(deadLetterFile);
+        if (enabled) {
+            open();
+        }
+        LOGGER.info("Write-behind bookings {}", enabled ? "enabled, log " + file.toAbsolutePath() : "disabled");
+    }
+
+    private void open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        if (Files.exists(file)) {
+            replay();
+        }
+        // Rewrite the log with only the pending bookings, which also drops a torn last line
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (PendingBooking booking : pending.values()) {
+                write(out, bookRecord(booking));
+            }
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writtenSeq = syncedSeq = nextSeq - 1;
+    }
+
+    private void replay() throws IOException {
+        int lineNumber = 0;
+        int unreadable = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Map<String, Object> record;
+                try {
+                    record = objectMapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+                } catch (IOException e) {
+                    // Torn by a crash or a failed write; the records after it are intact
+                    LOGGER.warn("Ignoring unreadable booking log line {}", lineNumber);
+                    unreadable++;
+                    continue;
+                }
+                long seq = ((Number) record.get("seq")).longValue();
+                nextSeq = Math.max(nextSeq, seq + 1);
+                if (OP_BOOK.equals(record.get("op"))) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> booking = (Map<String, Object>) record.get("booking");
+                    PendingBooking entry = new PendingBooking(seq, (String) record.get("tenant"), (String) record.get("user"), booking);
+                    entry.durable = true;
+                    pending.put(seq, entry);
+                } else {
+                    pending.remove(seq);
+                }
+            }
+        }
+        LOGGER.info("Replayed booking log: {} bookings still to be written to Astra, {} unreadable lines skipped",
+                pending.size(), unreadable);
+    }
+
+    @ManagedAttribute(description = "Whether bookings are written behind")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Durably records bookings of a user; returns once they are on disk.
+     *
+     * @param bookings booking documents, each with its "_id".
+     * @throws UncheckedIOException if the log could not be written; the bookings are then dropped.
+     */
+    public void append(String tenant, String username, List<Map<String, Object>> bookings) {
+        List<PendingBooking> entries = new ArrayList<>(bookings.size());
+        long lastSeq;
+        synchronized (appendLock) {
+            StringBuilder lines = new StringBuilder();
+            for (Map<String, Object> booking : bookings) {
+                PendingBooking entry = new PendingBooking(nextSeq++, tenant, username, booking);
+                entries.add(entry);
+                lines.append(bookRecord(entry));
+            }
+            try {
+                appendLines(lines.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write booking log", e);
+            }
+            lastSeq = entries.get(entries.size() - 1).seq;
+            writtenSeq = lastSeq;
+            entries.forEach(entry -> pending.put(entry.seq, entry));
+        }
+        try {
+            awaitSynced(lastSeq);
+        } catch (IOException e) {
+            // The caller reports a failure, so the bookings must not be flushed (nor replayed)
+            done(entries);
+            throw new UncheckedIOException("Failed to sync booking log", e);
+        }
+        entries.forEach(entry -> entry.durable = true);
+        appended.addAndGet(entries.size());
+    }
+
+    // Group commit: whoever gets the lock syncs everything written so far, later waiters find their seq covered
+    private void awaitSynced(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            long covered = writtenSeq;
+            channel.force(false);
+            fsyncs.incrementAndGet();
+            syncedSeq = covered;
+        }
+    }
+
+    /**
+     * @return the user's bookings still waiting to be written to Astra.
+     */
+    public List<Map<String, Object>> pendingFor(String tenant, String username) {
+        if (!enabled) {
+            return List.of();
+        }
+        return pending.values().stream()
+                .filter(entry -> entry.tenant.equals(tenant) && entry.username.equals(username))
+                .map(entry -> entry.booking)
+                .collect(Collectors.toList());
+    }
+
+    // Oldest durable bookings first; they stay pending (and visible to reads) until done()
+    List<PendingBooking> oldest(int max) {
+        return pending.values().stream().filter(entry -> entry.durable).limit(max).collect(Collectors.toList());
+    }
+
+    /**
+     * Marks bookings as written to Astra (or abandoned). The marker is not synced: if it is lost,
+     * the bookings are written again after a restart, which is idempotent.
+     */
+    void done(Collection<PendingBooking> entries) {
+        long now = System.nanoTime();
+        synchronized (appendLock) {
+            StringBuilder lines = new StringBuilder();
+            for (PendingBooking entry : entries) {
+                if (pending.remove(entry.seq) != null) {
+                    lines.append(record(OP_DONE, entry.seq, Map.of())).append('\n');
+                    lastFlushLagMs = TimeUnit.NANOSECONDS.toMillis(now - entry.appendedAt);
+                }
+            }
+            try {
+                if (pending.isEmpty()) {
+                    channel.truncate(0);
+                    torn = false;
+                } else {
+                    appendLines(lines.toString());
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to update booking log: {}", e.getMessage());
+            }
+        }
+        flushed.addAndGet(entries.size());
+    }
+
+    void flushFailed() {
+        flushFailures.incrementAndGet();
+    }
+
+    /**
+     * Gives up on a booking Astra keeps rejecting: it is appended to the dead-letter file, with
+     * the reason, and is no longer pending. If even that fails, the booking is logged in full.
+     */
+    void quarantine(PendingBooking entry, String reason) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("tenant", entry.tenant);
+        fields.put("user", entry.username);
+        fields.put("booking", entry.booking);
+        fields.put("attempts", entry.attempts);
+        fields.put("reason", reason);
+        String line = record("quarantined", entry.seq, fields);
+        LOGGER.error("Quarantining booking {} of user '{}' (tenant '{}') after {} rejected attempts: {}",
+                entry.booking.get("_id"), entry.username, entry.tenant, entry.attempts, reason);
+        try {
+            if (deadLetterFile.getParent() != null) {
+                Files.createDirectories(deadLetterFile.getParent());
+            }
+            try (FileChannel out = FileChannel.open(deadLetterFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                write(out, line + '\n');
+                out.force(false);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write dead-letter file {} ({}), quarantined booking: {}", deadLetterFile, e.getMessage(), line);
+        }
+        quarantined.incrementAndGet();
+        done(List.of(entry));
+    }
+
+    private String bookRecord(PendingBooking entry) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("tenant", entry.tenant);
+        fields.put("user", entry.username);
+        fields.put("booking", entry.booking);
+        return record(OP_BOOK, entry.seq, fields) + '\n';
+    }
+
+    private String record(String op, long seq, Map<String, Object> fields) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("op", op);
+        record.put("seq", seq);
+        record.putAll(fields);
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Booking cannot be serialized", e);
+        }
+    }
+
+    // Under appendLock. A failed write is cut off, so the next records do not follow part of a line
+    private void appendLines(String lines) throws IOException {
+        long size = channel.size();
+        try {
+            write(channel, torn ? '\n' + lines : lines);
+            torn = false;
+        } catch (IOException e) {
+            try {
+                channel.truncate(size);
+            } catch (IOException truncateFailure) {
+                torn = true; // The next append starts a new line, so only the torn one is lost
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    private static void write(FileChannel channel, String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    @ManagedAttribute(description = "Bookings logged but not yet written to Astra")
+    public int getPendingBookings() {
+        return pending.size();
+    }
+
+    @ManagedAttribute(description = "Age in milliseconds of the oldest booking not yet written to Astra")
+    public long getFlushLagMillis() {
+        Map.Entry<Long, PendingBooking> oldest = pending.firstEntry();
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.getValue().appendedAt);
+    }
+
+    @ManagedAttribute(description = "Time in milliseconds between logging and flushing of the last flushed booking")
+    public long getLastFlushLagMillis() {
+        return lastFlushLagMs;
+    }
+
+    @ManagedAttribute(description = "Bookings logged")
+    public long getAppended() {
+        return appended.get();
+    }
+
+    @ManagedAttribute(description = "Log fsyncs; fewer than bookings logged when appends are batched")
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    @ManagedAttribute(description = "Bookings written to Astra (or abandoned)")
+    public long getFlushed() {
+        return flushed.get();
+    }
+
+    @ManagedAttribute(description = "Flush attempts that failed and will be retried")
+    public long getFlushFailures() {
+        return flushFailures.get();
+    }
+
+    @ManagedAttribute(description = "Bookings Astra kept rejecting, moved to the dead-letter file")
+    public long getQuarantined() {
+        return quarantined.get();
+    }
+
+    /**
+     * A logged booking of a user.
+     */
+    static final class PendingBooking {
+
+        final long seq;
+        final String tenant;
+        final String username;
+        final Map<String, Object> booking;
+        final long appendedAt = System.nanoTime(); // For replayed bookings: the time of the replay
+        volatile boolean durable;
+        int attempts; // Writes Astra rejected; only used by the flusher thread
+
+        PendingBooking(long seq, String tenant, String username, Map<String, Object> booking) {
+            this.seq = seq;
+            this.tenant = tenant;
+            this.username = username;
+            this.booking = booking;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package trycb.service;
+
+import com.datastax.astra.client.collections.definition.documents.Document;
+import com.datastax.astra.client.core.query.Filters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import trycb.config.AstraCollections;
+import trycb.config.LazyCollection;
+import trycb.util.SnapshotFile;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flight times and prices as pure functions of the route, flight and departure date.
+ *
+ * Times follow the great-circle distance between the airports' {@code geo} coordinates (taken
+ * from the reference snapshot when one is served, else read once per airport from Astra). Prices
+ * come from a per-route fare table: a base fare and a per-km rate derived from
+ * {@code fares.seed} and the route, computed once per route and kept. The same search therefore
+ * always returns the same flights, which makes them cacheable and coalescable. A quote for a
+ * route through an airport whose coordinates could not be read fails, and nothing is kept.
+ */
+@Service
+public class FareEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FareEngine.class);
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double CRUISE_KMH = 800.0;
+    private static final int TAXI_MINUTES = 30;
+
+    private final ReferenceSnapshot referenceSnapshot;
+    private final AstraGuard astraGuard;
+    private final LazyCollection airportCollection;
+    private final long seed;
+
+    // FAA code -> {latitude, longitude}; empty if the airport has no coordinates
+    private final Map<String, Optional<double[]>> coordinates = new ConcurrentHashMap<>();
+    // "source-destination" -> fare table entry
+    private final Map<String, RouteFare> fareTable = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FareEngine(ReferenceSnapshot referenceSnapshot, AstraGuard astraGuard, AstraCollections astraCollections,
+                      @Value("${fares.seed:20250101}") long seed) {
+        this.referenceSnapshot = referenceSnapshot;
+        this.astraGuard = astraGuard;
+        this.airportCollection = astraCollections.lazy("airport");
+        this.seed = seed;
+    }
+
+    /**
+     * @return the flight time (minutes) and price of a flight on the given date.
+     * @throws RuntimeException if the coordinates of an airport could not be read.
+     */
+    public Fare quote(String sourceFaa, String destinationFaa, String flight, Calendar date) {
+        String routeKey = sourceFaa + "-" + destinationFaa;
+        RouteFare route = fareTable.get(routeKey);
+        if (route == null) {
+            // Read outside the map, whose bins stay locked while computing
+            Optional<double[]> from = coordinates(sourceFaa);
+            Optional<double[]> to = coordinates(destinationFaa);
+            RouteFare computed = routeFare(sourceFaa, destinationFaa, from, to);
+            RouteFare raced = fareTable.putIfAbsent(routeKey, computed);
+            route = raced != null ? raced : computed;
+        }
+        int flightTime = TAXI_MINUTES + (int) Math.round(route.distanceKm / CRUISE_KMH * 60);
+
+        // Weekend peaks and a fixed per-flight spread of +-10%
+        int weekday = date.get(Calendar.DAY_OF_WEEK);
+        double demand = weekday == Calendar.FRIDAY || weekday == Calendar.SUNDAY ? 1.15 : 1.0;
+        double spread = 0.9 + 0.2 * unit(mix(seed ^ route.key ^ (flight == null ? 0 : flight.hashCode())));
+        double price = (route.baseFare + route.distanceKm * route.ratePerKm) * demand * spread;
+        return new Fare(flightTime, Math.ceil(price * 100.0) / 100.0);
+    }
+
+    private RouteFare routeFare(String sourceFaa, String destinationFaa, Optional<double[]> from, Optional<double[]> to) {
+        long key = mix(seed ^ ((long) sourceFaa.hashCode() << 32 | (destinationFaa.hashCode() & 0xffffffffL)));
+        double distanceKm;
+        if (from.isPresent() && to.isPresent()) {
+            distanceKm = haversineKm(from.get(), to.get());
+        } else {
+            // Unknown position: a stable made-up distance rather than no fare at all
+            distanceKm = 300 + 3700 * unit(mix(key));
+            LOGGER.debug("No coordinates for route {} -> {}, assuming {} km", sourceFaa, destinationFaa, Math.round(distanceKm));
+        }
+        double baseFare = 40 + 40 * unit(mix(key + 1));
+        double ratePerKm = 0.08 + 0.08 * unit(mix(key + 2));
+        return new RouteFare(key, distanceKm, baseFare, ratePerKm);
+    }
+
+    /**
+     * @return the airport's coordinates, empty if it has none.
+     */
+    private Optional<double[]> coordinates(String faa) {
+        Optional<SnapshotFile> snapshot = referenceSnapshot.current();
+        if (snapshot.isPresent()) {
+            return snapshot.get().airportsByFaa(faa).stream()
+                    .filter(airport -> !Double.isNaN(airport.latitude) && !Double.isNaN(airport.longitude))
+                    .map(airport -> new double[] {airport.latitude, airport.longitude})
+                    .findFirst();
+        }
+        Optional<double[]> known = coordinates.get(faa);
+        if (known != null) {
+            return known;
+        }
+        try {
+            Optional<Document> airportDoc = astraGuard.call("airport", "findOne", "eq:faa",
+                    () -> airportCollection.get().findOne(Filters.eq("faa", faa)));
+            Optional<double[]> found = airportDoc.map(FareEngine::coordinates);
+            coordinates.put(faa, found);
+            return found;
+        } catch (RuntimeException e) {
+            // Not cached, the next route through this airport tries again
+            LOGGER.warn("Failed to read coordinates of airport {}: {}", faa, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * @return {latitude, longitude} of an airport document, or null if it has no coordinates.
+     */
+    static double[] coordinates(Document airportDoc) {
+        Object geo = airportDoc.get("geo");
+        if (!(geo instanceof Map)) {
+            return null;
+        }
+        Object lat = ((Map<?, ?>) geo).get("lat");
+        Object lon = ((Map<?, ?>) geo).get("lon");
+        return lat instanceof Number && lon instanceof Number
+                ? new double[] {((Number) lat).doubleValue(), ((Number) lon).doubleValue()}
+                : null;
+    }
+
+    static double haversineKm(double[] from, double[] to) {
+        double dLat = Math.toRadians(to[0] - from[0]);
+        double dLon = Math.toRadians(to[1] - from[1]);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(from[0])) * Math.cos(Math.toRadians(to[0])) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Uniform in [0, 1)
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Flight time in minutes and price of one flight.
+     */
+    public static final class Fare {
+
+        private final int flightTime;
+        private final double price;
+
+        Fare(int flightTime, double price) {
+            this.flightTime = flightTime;
+            this.price = price;
+        }
+
+        public int getFlightTime() {
+            return flightTime;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+    }
+
+    private static final class RouteFare {
+
+        final long key;
+        final double distanceKm;
+        final double baseFare;
+        final double ratePerKm;
+
+        RouteFare(long key, double distanceKm, double baseFare, double ratePerKm) {
+            this.key = key;
+            this.distanceKm = distanceKm;
+            this.baseFare = baseFare;
+            this.ratePerKm = ratePerKm;
+        }
+    }
+}
@@ -9,7 +9,6 @@ package trycb.service;
 // import com.couchbase.client.java.query.QueryResult;
 
 // Astra DB Data API Imports - Corrected for 2.0.0-PREVIEW3
-import com.datastax.astra.client.databases.Database;
 import com.datastax.astra.client.collections.Collection;
 // Corrected path for Document
 import com.datastax.astra.client.collections.definition.documents.Document;
@@ -32,9 +31,15 @@ import org.springframework.util.CollectionUtils;
 
 // Standard Java Imports
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.text.DateFormat;
 
+import trycb.config.AstraCollections;
+import trycb.config.LazyCollection;
+import trycb.util.RequestPhaseEvent;
+import trycb.util.SnapshotFile;
+
 // Removed Result import
 // import trycb.model.Result;
 
@@ -42,36 +47,44 @@ import java.text.DateFormat;
 public class FlightPath {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FlightPath.class);
+    private static final String PHASE_REQUEST = "flightPath.findAll"; // Request name of the JFR phase events
 
-    private final Database astraDatabase;
+    private final AstraCollections astraCollections;
+    private final HedgedReads hedgedReads;
+    private final AstraGuard astraGuard;
+    private final RequestCoalescer requestCoalescer;
+    private final PopularRoutes popularRoutes;
+    private final ReferenceSnapshot referenceSnapshot;
     private final String keyspace;
-    private Collection<Document> airportCollection;
-    private Collection<Document> routeCollection;
-    private Collection<Document> airlineCollection;
-    private final Random random = new Random(); // For flight time/price simulation
+    // Resolved on first use
+    private final LazyCollection airportCollection;
+    private final LazyCollection routeCollection;
+    private final LazyCollection airlineCollection;
+    private final FareEngine fareEngine;
 
     @Autowired
-    public FlightPath(Database astraDatabase, @Value("${astra.api.keyspace}") String keyspace) {
-        this.astraDatabase = astraDatabase;
+    public FlightPath(AstraCollections astraCollections, HedgedReads hedgedReads, AstraGuard astraGuard,
+                      RequestCoalescer requestCoalescer, PopularRoutes popularRoutes, ReferenceSnapshot referenceSnapshot,
+                      FareEngine fareEngine, @Value("${astra.api.keyspace}") String keyspace) {
+        this.astraCollections = astraCollections;
+        this.hedgedReads = hedgedReads;
+        this.astraGuard = astraGuard;
+        this.requestCoalescer = requestCoalescer;
+        this.popularRoutes = popularRoutes;
+        this.referenceSnapshot = referenceSnapshot;
+        this.fareEngine = fareEngine;
         this.keyspace = keyspace;
-        try {
-            // Assuming collection names match types
-            this.airportCollection = astraDatabase.getCollection("airport", Document.class);
-            this.routeCollection = astraDatabase.getCollection("route", Document.class);
-            this.airlineCollection = astraDatabase.getCollection("airline", Document.class);
-            LOGGER.info("FlightPath Service connected to Astra collections (airport, route, airline) in keyspace '{}'", keyspace);
-        } catch (Exception e) {
-            LOGGER.error("Failed to get one or more Astra collections (airport, route, airline) in keyspace '{}'", keyspace, e);
-            // Mark collections as null to prevent usage
-            this.airportCollection = null;
-            this.routeCollection = null;
-            this.airlineCollection = null;
-        }
+        // Assuming collection names match types
+        this.airportCollection = astraCollections.lazy("airport");
+        this.routeCollection = astraCollections.lazy("route");
+        this.airlineCollection = astraCollections.lazy("airline");
     }
 
     /**
      * Finds flight paths between two airports on a specific day using Astra DB Data API.
      * Replicates N1QL JOIN/UNNEST logic with multiple API calls and Java processing.
+     * Every call runs through {@link AstraGuard}, so once the request deadline is spent the
+     * rest of the chain fails fast with {@link AstraUnavailableException}.
      *
      * @param from     Origin airport name.
      * @param to       Destination airport name.
@@ -79,18 +92,45 @@ public class FlightPath {
      * @return List of flight path details.
      */
     public List<Map<String, Object>> findAll(String from, String to, Calendar leave) {
-        if (airportCollection == null || routeCollection == null || airlineCollection == null) {
-            LOGGER.error("One or more required collections (airport, route, airline) are not initialized.");
-            return new LinkedList<>();
+        return findAll(from, to, leave, this::findAirportFaa);
+    }
+
+    /**
+     * Same as {@link #findAll(String, String, Calendar)}, resolving airport names to FAA codes
+     * through the given lookup, so that callers running several searches (e.g. outbound and
+     * return of a batch) can share the resolutions.
+     */
+    public List<Map<String, Object>> findAll(String from, String to, Calendar leave, Function<String, String> faaLookup) {
+        if (leave == null) {
+            return search(from, to, null, faaLookup);
+        }
+        String date = DateFormat.getDateInstance(DateFormat.SHORT, Locale.US).format(leave.getTime());
+        // Popular routes are served from their materialized flight lists
+        Optional<List<Map<String, Object>>> materialized =
+                popularRoutes.lookup(from, to, leave.get(Calendar.DAY_OF_WEEK) - 1, date);
+        if (materialized.isPresent()) {
+            return materialized.get();
         }
+        // Identical concurrent searches (same airports and date) share one chain of Astra calls
+        return requestCoalescer.execute("flightPath:" + from + "|" + to + "|" + date, () -> search(from, to, leave, faaLookup));
+    }
+
+    // Uncached search, used by PopularRoutes to (re)build its flight lists
+    List<Map<String, Object>> compute(String from, String to, Calendar leave) {
+        return search(from, to, leave, this::findAirportFaa);
+    }
+
+    private List<Map<String, Object>> search(String from, String to, Calendar leave, Function<String, String> faaLookup) {
         if (from == null || to == null || leave == null) {
             LOGGER.warn("findAll called with null parameters.");
             return new LinkedList<>();
         }
 
         // 1. Find FAA codes for origin and destination airports
-        String fromAirportFaa = findAirportFaa(from);
-        String toAirportFaa = findAirportFaa(to);
+        RequestPhaseEvent airportLookup = RequestPhaseEvent.start(PHASE_REQUEST, "airportLookup");
+        String fromAirportFaa = faaLookup.apply(from);
+        String toAirportFaa = faaLookup.apply(to);
+        airportLookup.commit();
 
         if (fromAirportFaa == null || toAirportFaa == null) {
             LOGGER.warn("Could not find FAA codes for origin '{}' or destination '{}'", from, to);
@@ -115,7 +155,19 @@ public class FlightPath {
 
         try {
             // Removed FindOptions from find call
-            routeCollection.find(routeFilter).forEach(doc -> {
+            RequestPhaseEvent routeFetch = RequestPhaseEvent.start(PHASE_REQUEST, "routeFetch");
+            Optional<SnapshotFile> snapshot = referenceSnapshot.current();
+            List<Document> routeDocs = snapshot.isPresent()
+                    ? snapshot.get().routes(fromAirportFaa, toAirportFaa).stream().map(FlightPath::toDocument).collect(Collectors.toList())
+                    : astraGuard.call("route", "find", "and(eq,eq)", () -> {
+                        List<Document> docs = new ArrayList<>();
+                        routeCollection.get().find(routeFilter).forEach(docs::add);
+                        return docs;
+                    });
+            routeFetch.commit();
+
+            RequestPhaseEvent airlineJoin = RequestPhaseEvent.start(PHASE_REQUEST, "airlineJoin");
+            routeDocs.forEach(doc -> {
                 List<?> scheduleList = doc.get("schedule", List.class); // Assume schedule is a list
                 String airlineId = doc.getString("airlineid");
                 String equipment = doc.getString("equipment");
@@ -156,55 +208,89 @@ public class FlightPath {
                         DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT, Locale.US);
                         flightPathData.put("date", df.format(leave.getTime()));
 
-                        // Simulate flighttime and price
-                        int flightTime = random.nextInt(8000) + 1000; // Simulate time > 0
-                        flightPathData.put("flighttime", flightTime);
-                        flightPathData.put("price", Math.ceil((double) flightTime / 8.0 * 100.0) / 100.0);
+                        // Same route, flight and date always give the same time and price
+                        FareEngine.Fare fare = fareEngine.quote(sourceAirport, destinationAirport, flight, leave);
+                        flightPathData.put("flighttime", fare.getFlightTime());
+                        flightPathData.put("price", fare.getPrice());
 
                         finalFlightPaths.add(flightPathData);
                     }
                 }
             });
+            airlineJoin.commit();
 
-        } catch (Exception e) {
-            LOGGER.error("Failed during flight path processing for {} -> {}: {}", fromAirportFaa, toAirportFaa, e.getMessage(), e);
-            // Return potentially partial results or empty list
+        } catch (AstraUnavailableException e) {
+            throw e; // Fail fast, the controller answers 503
+        } catch (RuntimeException e) {
+            // Partial results would be cached and materialized as if complete
+            LOGGER.error("Failed during flight path processing for {} -> {}: {}", fromAirportFaa, toAirportFaa, e.getMessage());
+            throw e;
         }
 
         LOGGER.info("Found {} valid flight paths for {} -> {} on day {}", finalFlightPaths.size(), from, to, requestedDayOfWeek);
         // Sort by airline name as in original query
+        RequestPhaseEvent sort = RequestPhaseEvent.start(PHASE_REQUEST, "sort");
         finalFlightPaths.sort(Comparator.comparing(m -> (String) m.getOrDefault("name", "")));
+        sort.commit();
         return finalFlightPaths;
     }
 
-    // Helper to find FAA code for an airport name
-    private String findAirportFaa(String airportName) {
-        if (airportCollection == null) return null;
+    /**
+     * Resolves an airport name to its FAA code.
+     *
+     * @return the FAA code, or null if the airport is unknown.
+     * @throws RuntimeException if Astra could not be read.
+     */
+    public String findAirportFaa(String airportName) {
+        Optional<SnapshotFile> snapshot = referenceSnapshot.current();
+        if (snapshot.isPresent()) {
+            return snapshot.get().airportByName(airportName).map(airport -> airport.faa).orElse(null);
+        }
         try {
-            Optional<Document> airportDoc = airportCollection.findOne(
-                    Filters.eq("airportname", airportName)
-            );
+            Optional<Document> airportDoc = astraGuard.call("airport", "findOne", "eq:airportname", () -> hedgedReads.read("airport.findOne",
+                    () -> airportCollection.get().findOne(Filters.eq("airportname", airportName))));
             return airportDoc.map(doc -> doc.getString("faa")).orElse(null);
-        } catch (Exception e) {
-            LOGGER.error("Failed to find FAA for airport '{}': {}", airportName, e.getMessage(), e);
-            return null;
+        } catch (AstraUnavailableException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Not null, which would report the airport as unknown
+            LOGGER.error("Failed to find FAA for airport '{}': {}", airportName, e.getMessage());
+            throw e;
         }
     }
 
     // Helper to find airline name by ID
     private Optional<String> findAirlineName(String airlineId) {
-        if (airlineCollection == null) {
-            LOGGER.error("Airline collection not available");
-            return Optional.empty();
+        Optional<SnapshotFile> snapshot = referenceSnapshot.current();
+        if (snapshot.isPresent()) {
+            return snapshot.get().airlineName(airlineId);
         }
         // Assuming airlineId from route corresponds to _id in airline collection
-        Optional<Document> airlineDoc = airlineCollection.findOne(
+        Optional<Document> airlineDoc = astraGuard.call("airline", "findOne", "eq:_id", () -> airlineCollection.get().findOne(
                 Filters.eq("_id", airlineId)
                 // FindOneOptions options = FindOneOptions.builder().projection(Projection.include("name")).build();
-        );
+        ));
         // Map the Optional<Document> to Optional<String>
         return airlineDoc.map(doc -> doc.getString("name"));
     }
 
+    // Snapshot route in the shape of a route document, so both sources share the processing above
+    private static Document toDocument(SnapshotFile.Route route) {
+        List<Map<String, Object>> schedule = new ArrayList<>();
+        for (SnapshotFile.Schedule entry : route.schedule) {
+            Map<String, Object> scheduleMap = new HashMap<>();
+            scheduleMap.put("day", entry.day);
+            scheduleMap.put("utc", entry.utc);
+            scheduleMap.put("flight", entry.flight);
+            schedule.add(scheduleMap);
+        }
+        return new Document()
+                .append("sourceairport", route.source)
+                .append("destinationairport", route.destination)
+                .append("airlineid", route.airlineId)
+                .append("equipment", route.equipment)
+                .append("schedule", schedule);
+    }
+
     // Removed static logQuery helper
 }
@@ -0,0 +1,272 @@
+package trycb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import trycb.util.Deadline;
+
+/**
+ * Opt-in hedging for idempotent Astra reads.
+ *
+ * A read runs on the hedging pool; if it has not returned after the configured latency
+ * percentile of its operation (observed over the last {@value #SAMPLES} calls), a duplicate
+ * request is issued and whichever response arrives first wins. Hedges are paid for from a
+ * budget that grows by {@code astra.hedge.max-rate} per read, so at most that fraction of reads
+ * is duplicated even when Astra is slow across the board. Waiting is bounded by the request
+ * {@link Deadline}, which is carried over to the pool threads.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=HedgedReads", description = "Hedged Astra reads")
+public class HedgedReads implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedReads.class);
+    private static final int SAMPLES = 1024;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long BUDGET_SCALE = 1000; // Budget is kept in thousandths of a hedge
+    private static final long MAX_BUDGET = 10 * BUDGET_SCALE; // Allows short bursts of hedges
+
+    private volatile boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long budgetPerRead;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesSuppressed = new AtomicLong();
+
+    @Autowired
+    public HedgedReads(@Value("${astra.hedge.enabled:false}") boolean enabled,
+                       @Value("${astra.hedge.percentile:95}") double percentile,
+                       @Value("${astra.hedge.min-delay-ms:10}") long minDelayMs,
+                       @Value("${astra.hedge.max-rate:0.05}") double maxRate,
+                       @Value("${astra.hedge.threads:64}") int threads) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        this.budgetPerRead = Math.round(maxRate * BUDGET_SCALE);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "astra-hedge-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Hedged reads {} (p{} delay, min {} ms, max rate {})", enabled ? "enabled" : "disabled", percentile, minDelayMs, maxRate);
+    }
+
+    /**
+     * Runs an idempotent read, hedging it if enabled. The call must fully materialize its
+     * result (e.g. copy a find() cursor into a list) so that the winning attempt is complete.
+     *
+     * @param operation name the latency percentile is tracked under, e.g. "airport.find".
+     */
+    public <T> T read(String operation, Supplier<T> call) {
+        LatencyWindow window = latencies.computeIfAbsent(operation, k -> new LatencyWindow());
+        if (!enabled) {
+            return timed(window, call);
+        }
+        reads.incrementAndGet();
+        budget.getAndUpdate(b -> Math.min(MAX_BUDGET, b + budgetPerRead));
+
+        Supplier<T> pooledCall = Deadline.propagate(call);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        try {
+            executor.execute(() -> attempt(window, pooledCall, result, outstanding, false));
+        } catch (RejectedExecutionException e) {
+            // Pool saturated: no capacity to hedge anyway, run the read on the caller thread
+            return timed(window, call);
+        }
+
+        long hedgeDelayNanos = window.hedgeDelayNanos();
+        try {
+            return result.get(Math.min(hedgeDelayNanos, remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (remainingNanos() <= 0) {
+                throw new AstraUnavailableException("Request deadline exceeded waiting for Astra " + operation);
+            }
+            if (tryTakeBudget()) {
+                outstanding.incrementAndGet();
+                try {
+                    executor.execute(() -> attempt(window, pooledCall, result, outstanding, true));
+                    hedgesFired.incrementAndGet();
+                } catch (RejectedExecutionException rejected) {
+                    outstanding.decrementAndGet();
+                    hedgesSuppressed.incrementAndGet();
+                }
+            } else {
+                hedgesSuppressed.incrementAndGet();
+            }
+            return await(result, operation);
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    private <T> void attempt(LatencyWindow window, Supplier<T> call, CompletableFuture<T> result,
+                             AtomicInteger outstanding, boolean hedge) {
+        try {
+            T value = timed(window, call);
+            if (result.complete(value) && hedge) {
+                hedgesWon.incrementAndGet();
+            }
+        } catch (Throwable e) {
+            // Only fail the read once every attempt has failed. Errors too: a caller without a
+            // deadline (e.g. the popular routes refresh) would otherwise wait forever
+            if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private static <T> T timed(LatencyWindow window, Supplier<T> call) {
+        long start = System.nanoTime();
+        T value = call.get();
+        window.record(System.nanoTime() - start);
+        return value;
+    }
+
+    private boolean tryTakeBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < BUDGET_SCALE) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> result, String operation) {
+        try {
+            return result.get(remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new AstraUnavailableException("Request deadline exceeded waiting for Astra " + operation);
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    private static long remainingNanos() {
+        // Saturates at Long.MAX_VALUE when the thread has no deadline
+        return TimeUnit.MILLISECONDS.toNanos(Deadline.remainingMillis());
+    }
+
+    private static <T> T rethrow(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Astra read", e);
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException("Astra read failed", cause);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @ManagedAttribute(description = "Whether reads are hedged")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "Enable or disable hedging at runtime")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        LOGGER.info("Hedged reads {}", enabled ? "enabled" : "disabled");
+    }
+
+    @ManagedAttribute(description = "Reads issued while hedging was enabled")
+    public long getReads() {
+        return reads.get();
+    }
+
+    @ManagedAttribute(description = "Duplicate requests issued")
+    public long getHedgesFired() {
+        return hedgesFired.get();
+    }
+
+    @ManagedAttribute(description = "Reads answered by the duplicate request")
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    @ManagedAttribute(description = "Hedges skipped because of the rate cap or a saturated pool")
+    public long getHedgesSuppressed() {
+        return hedgesSuppressed.get();
+    }
+
+    @ManagedAttribute(description = "Current hedge delay per operation in milliseconds")
+    public String[] getHedgeDelays() {
+        return latencies.entrySet().stream()
+                .map(e -> String.format("%s=%.1f", e.getKey(), e.getValue().hedgeDelayNanos() / 1_000_000.0))
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Ring buffer of recent latencies of one operation. The percentile is recomputed at most
+     * every {@link #DELAY_REFRESH_NANOS} so the hot path only reads a volatile.
+     */
+    private final class LatencyWindow {
+
+        private final long[] samples = new long[SAMPLES];
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile long delayNanos = minDelayNanos;
+        private volatile long computedAt;
+
+        void record(long nanos) {
+            samples[Math.floorMod(next.getAndIncrement(), SAMPLES)] = nanos;
+        }
+
+        long hedgeDelayNanos() {
+            long now = System.nanoTime();
+            if (now - computedAt > DELAY_REFRESH_NANOS) {
+                computedAt = now;
+                int recorded = next.get();
+                int count = recorded < 0 || recorded > SAMPLES ? SAMPLES : recorded; // Counter may wrap around
+                if (count > 0) {
+                    long[] sorted = Arrays.copyOf(samples, count);
+                    Arrays.sort(sorted);
+                    int index = (int) Math.min(count - 1, Math.ceil(percentile / 100.0 * count) - 1);
+                    delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+                }
+            }
+            return delayNanos;
+        }
+    }
+}
@@ -14,7 +14,6 @@ package trycb.service;
 // import com.couchbase.client.java.search.result.SearchRow;
 
 // Astra DB Data API Imports - Minimal necessary for find
-import com.datastax.astra.client.databases.Database;
 import com.datastax.astra.client.collections.Collection;
 // Corrected path for Document
 import com.datastax.astra.client.collections.definition.documents.Document;
@@ -39,6 +38,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
+import trycb.config.AstraCollections;
+import trycb.config.LazyCollection;
 import org.springframework.util.StringUtils;
 
 // Standard Java Imports
@@ -48,6 +50,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 // Removed Result import
@@ -59,21 +62,24 @@ public class Hotel {
     private static final Logger LOGGER = LoggerFactory.getLogger(Hotel.class);
     private static final int VECTOR_SEARCH_LIMIT = 10; // Max results for vector search
 
-    private final Database astraDatabase;
+    private final AstraCollections astraCollections;
+    private final HedgedReads hedgedReads;
+    private final AstraGuard astraGuard;
+    private final RequestCoalescer requestCoalescer;
+    private final HotelCache hotelCache;
     private final String keyspace;
-    private Collection<Document> hotelCollection;
+    private final LazyCollection hotelCollection; // Resolved on first use
 
     @Autowired
-    public Hotel(Database astraDatabase, @Value("${astra.api.keyspace}") String keyspace) {
-        this.astraDatabase = astraDatabase;
+    public Hotel(AstraCollections astraCollections, HedgedReads hedgedReads, AstraGuard astraGuard,
+                 RequestCoalescer requestCoalescer, HotelCache hotelCache, @Value("${astra.api.keyspace}") String keyspace) {
+        this.astraCollections = astraCollections;
+        this.hedgedReads = hedgedReads;
+        this.astraGuard = astraGuard;
+        this.requestCoalescer = requestCoalescer;
+        this.hotelCache = hotelCache;
         this.keyspace = keyspace;
-        try {
-            this.hotelCollection = astraDatabase.getCollection("hotel", Document.class);
-            LOGGER.info("Hotel Service connected to Astra collection 'hotel' in keyspace '{}'", keyspace);
-        } catch (Exception e) {
-            LOGGER.error("Failed to get Astra collection 'hotel' in keyspace '{}'. Ensure it exists and credentials are valid.", keyspace, e);
-            this.hotelCollection = null;
-        }
+        this.hotelCollection = astraCollections.lazy("hotel");
     }
 
     /**
@@ -85,22 +91,25 @@ public class Hotel {
      * @return List of maps, each containing "name", "description", and constructed "address".
      */
     public List<Map<String, Object>> findHotels(final String location, final String description) {
-        if (hotelCollection == null) {
-            LOGGER.error("Hotel collection is not initialized. Cannot perform search.");
-            return new ArrayList<>();
-        }
-
         // Combine location and description for vectorization
         String searchText = (StringUtils.hasText(location) && !"*".equals(location) ? location : "")
                            + " "
                            + (StringUtils.hasText(description) && !"*".equals(description) ? description : "");
-        searchText = searchText.trim();
+        final String text = searchText.trim();
 
-        if (!StringUtils.hasText(searchText)) {
+        if (!StringUtils.hasText(text)) {
             LOGGER.info("Location and description search terms are empty. Returning no hotels.");
             return new ArrayList<>();
         }
+        Optional<List<Map<String, Object>>> cached = hotelCache.get(text);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        // Identical concurrent searches share one vector search
+        return requestCoalescer.execute("hotel:" + location + "|" + description, () -> search(text));
+    }
 
+    private List<Map<String, Object>> search(final String searchText) {
         LOGGER.info("Performing vector search for hotels with text: '{}'", searchText);
 
         // Define vector search options using CollectionFindOptions constructor + setters
@@ -113,8 +122,13 @@ public class Hotel {
 
         List<Map<String, Object>> data = new ArrayList<>();
         try {
-            // Execute find with no filter, passing CollectionFindOptions
-            hotelCollection.find(null, options).forEach(doc -> {
+            // Execute find with no filter, passing CollectionFindOptions (idempotent, so it may be hedged)
+            List<Document> hotelDocs = astraGuard.call("hotel", "find", "vectorize", () -> hedgedReads.read("hotel.find", () -> {
+                List<Document> docs = new ArrayList<>();
+                hotelCollection.get().find(null, options).forEach(docs::add);
+                return docs;
+            }));
+            hotelDocs.forEach(doc -> {
                 Map<String, Object> hotelData = new HashMap<>();
                 hotelData.put("name", doc.getString("name"));
                 hotelData.put("description", doc.getString("description"));
@@ -138,6 +152,9 @@ public class Hotel {
 
                 data.add(hotelData);
             });
+            hotelCache.put(searchText, data); // Failed searches are not cached
+        } catch (AstraUnavailableException e) {
+            throw e; // Fail fast, the controller answers 503
         } catch (Exception e) {
             LOGGER.error("Astra vector find operation failed for hotels with text [{}]: {}", searchText, e.getMessage(), e);
             // Return empty list on error for now
@@ -0,0 +1,118 @@
+package trycb.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import trycb.config.CacheStorages;
+import trycb.util.CacheEvent;
+import trycb.util.CacheStorage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hotel search results by search text, kept for {@code hotel-cache.ttl-seconds}.
+ *
+ * Results carry the hotels' long descriptions, so by default they are stored serialized off-heap
+ * ({@code hotel-cache.storage}, see {@link CacheStorages}) and only deserialized for a hit.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=HotelCache", description = "Hotel search result cache")
+public class HotelCache implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotelCache.class);
+
+    private final boolean enabled;
+    private final CacheStorage<List<Map<String, Object>>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public HotelCache(CacheStorages cacheStorages,
+                      @Value("${hotel-cache.enabled:true}") boolean enabled,
+                      @Value("${hotel-cache.max-entries:10000}") int maxEntries,
+                      @Value("${hotel-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.entries = cacheStorages.create("hotel-cache", new TypeReference<List<Map<String, Object>>>() {},
+                maxEntries, 0, TimeUnit.SECONDS.toNanos(ttlSeconds));
+    }
+
+    /**
+     * @return the hotels found for the search text, if cached; to be treated as read-only.
+     */
+    public Optional<List<Map<String, Object>>> get(String searchText) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Map<String, Object>> hotels = entries.get(searchText);
+        CacheEvent.record("hotels", searchText, hotels != null);
+        (hotels != null ? hits : misses).incrementAndGet();
+        return Optional.ofNullable(hotels);
+    }
+
+    public void put(String searchText, List<Map<String, Object>> hotels) {
+        if (enabled) {
+            entries.put(searchText, hotels);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        entries.removeExpired();
+    }
+
+    @ManagedOperation(description = "Drop all cached hotel search results")
+    public void clear() {
+        entries.clear();
+        LOGGER.info("Hotel cache cleared");
+    }
+
+    @ManagedAttribute(description = "Searches answered from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Searches that had to go to Astra")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of searches answered from the cache")
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    @ManagedAttribute(description = "Results evicted for size or expired")
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    @ManagedAttribute(description = "Search results cached")
+    public int getSize() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Off-heap memory allocated for cached results, 0 for heap storage")
+    public long getOffHeapBytes() {
+        return entries.getOffHeapBytes();
+    }
+
+    @Override
+    public void destroy() {
+        entries.close();
+    }
+}
@@ -0,0 +1,27 @@
+package trycb.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Single-node {@link BookingInvalidationBus}: delivers invalidations to listeners in this JVM
+ * only. A cross-instance implementation replaces it by being declared {@code @Primary}.
+ */
+@Component
+public class InProcessBookingInvalidationBus implements BookingInvalidationBus {
+
+    private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(Invalidation invalidation) {
+        listeners.forEach(listener -> listener.accept(invalidation));
+    }
+
+    @Override
+    public void subscribe(Consumer<Invalidation> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,32 @@
+package trycb.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Single-node {@link UserSignupBus}: delivers signups to listeners in this JVM only. A
+ * cross-instance implementation replaces it by being declared {@code @Primary}.
+ */
+@Component
+public class InProcessUserSignupBus implements UserSignupBus {
+
+    private final List<Consumer<Signup>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(Signup signup) {
+        listeners.forEach(listener -> listener.accept(signup));
+    }
+
+    @Override
+    public void subscribe(Consumer<Signup> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+}
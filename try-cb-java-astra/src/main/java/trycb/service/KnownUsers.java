@@ -0,0 +1,259 @@
+package trycb.service;
+
+import com.datastax.astra.client.collections.commands.options.CollectionFindOptions;
+import com.datastax.astra.client.collections.commands.options.CollectionFindOneOptions;
+import com.datastax.astra.client.collections.definition.documents.Document;
+import com.datastax.astra.client.core.query.Filters;
+import com.datastax.astra.client.core.query.Projection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import trycb.util.ScalableBloomFilter;
+import trycb.util.TokenBuckets;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bloom filters of the user ids of the tenants listed in {@code user-filter.tenants} (opt-in with
+ * {@code user-filter.enabled}), so logins for users that certainly do not exist are rejected
+ * without reading Astra.
+ *
+ * A tenant's filter is built by streaming the {@code _id}s of its user collection on a
+ * background thread, at startup and then every {@code user-filter.rebuild-interval-ms} (or when
+ * the user collection is reported changed), and is updated by signups in between. Until the
+ * first build has finished every user may exist. Other tenants are not filtered.
+ *
+ * Signups are published on the {@link UserSignupBus}, so the filters of the other instances learn
+ * them too. With a shared bus (or {@code user-filter.trust-misses}, for a single instance) a miss
+ * is rejected right away. Otherwise a signup on another instance only reaches the filter with its
+ * next rebuild, so a miss is confirmed with an {@code _id}-only read before the login is
+ * rejected. Those reads are limited to {@code user-filter.confirmations-per-second} per tenant:
+ * misses beyond that are rejected unconfirmed, so random-username credential stuffing costs at
+ * most that many reads per second, at the price of turning away, while it lasts, users who
+ * signed up on another instance since the last rebuild.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=KnownUsers", description = "Bloom filters of existing user ids")
+public class KnownUsers implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KnownUsers.class);
+
+    private final TenantCollections tenantCollections;
+    private final AstraGuard astraGuard;
+    private final UserSignupBus signupBus;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final boolean enabled;
+    private final boolean trustMisses;
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+    private final TokenBuckets confirmations; // Per tenant
+    private final Map<String, TenantFilter> filters;
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "known-users-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong staleMisses = new AtomicLong();
+    private final AtomicLong unconfirmed = new AtomicLong();
+    private final AtomicLong remoteSignups = new AtomicLong();
+
+    @Autowired
+    public KnownUsers(TenantCollections tenantCollections, AstraGuard astraGuard, UserSignupBus signupBus,
+                      @Value("${user-filter.enabled:false}") boolean enabled,
+                      @Value("${user-filter.trust-misses:false}") boolean trustMisses,
+                      @Value("${user-filter.confirmations-per-second:20}") double confirmationsPerSecond,
+                      @Value("${user-filter.tenants:}") String[] tenants,
+                      @Value("${user-filter.expected-users:100000}") long expectedUsers,
+                      @Value("${user-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.tenantCollections = tenantCollections;
+        this.astraGuard = astraGuard;
+        this.signupBus = signupBus;
+        this.enabled = enabled;
+        this.trustMisses = trustMisses || signupBus.isShared();
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filters = Arrays.stream(tenants).map(String::trim).filter(t -> !t.isEmpty()).distinct()
+                .collect(Collectors.toMap(Function.identity(), t -> new TenantFilter()));
+        this.confirmations = new TokenBuckets(confirmationsPerSecond, (int) Math.ceil(confirmationsPerSecond), filters.size() + 1);
+        signupBus.subscribe(this::onSignup);
+        LOGGER.info("Known-user filters {}", !enabled ? "disabled" : "enabled for tenants " + filters.keySet()
+                + (this.trustMisses ? ", misses trusted" : ", misses confirmed"));
+    }
+
+    /**
+     * @return false if the user certainly does not exist in the tenant, or if the filter misses it
+     *         and no confirming read is left this second.
+     */
+    public boolean mightExist(String tenant, String username) {
+        TenantFilter filter = enabled ? filters.get(tenant) : null;
+        ScalableBloomFilter active = filter == null ? null : filter.active;
+        if (active == null || username == null) {
+            return true;
+        }
+        lookups.incrementAndGet();
+        if (active.mightContain(username)) {
+            return true;
+        }
+        if (!trustMisses) {
+            if (confirmations.tryAcquire(tenant) != 0) {
+                unconfirmed.incrementAndGet();
+            } else if (exists(tenant, username)) {
+                // Signed up on another instance since the filter was built
+                staleMisses.incrementAndGet();
+                remember(tenant, username);
+                return true;
+            }
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Reads whether the user exists (only its {@code _id}), whatever the filter says.
+     */
+    boolean exists(String tenant, String username) {
+        CollectionFindOneOptions options = new CollectionFindOneOptions();
+        options.projection(Projection.include("_id"));
+        return tenantCollections.execute(tenant, t -> astraGuard.call(TenantUser.USERS_COLLECTION_NAME, "findOne", "eq:_id", () ->
+                t.users().findOne(Filters.eq("_id", username), options))).isPresent();
+    }
+
+    /**
+     * Records a user that was just created, here and on the other instances.
+     */
+    public void added(String tenant, String username) {
+        if (enabled) {
+            remember(tenant, username);
+            signupBus.publish(new UserSignupBus.Signup(instanceId, tenant, username));
+        }
+    }
+
+    private void onSignup(UserSignupBus.Signup signup) {
+        if (enabled && !instanceId.equals(signup.getOrigin())) {
+            remoteSignups.incrementAndGet();
+            remember(signup.getTenant(), signup.getUsername());
+        }
+    }
+
+    private void remember(String tenant, String username) {
+        TenantFilter filter = enabled ? filters.get(tenant) : null;
+        if (filter == null) {
+            return;
+        }
+        // The filter being built first: if it is already swapped in, active is that filter
+        ScalableBloomFilter building = filter.building;
+        if (building != null) {
+            building.put(username);
+        }
+        ScalableBloomFilter active = filter.active;
+        if (active != null) {
+            active.put(username);
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${user-filter.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    @ManagedOperation(description = "Rebuild the filters from the user collections")
+    public void rebuild() {
+        filters.keySet().forEach(tenant -> builder.execute(() -> build(tenant)));
+    }
+
+    private void build(String tenant) {
+        TenantFilter filter = filters.get(tenant);
+        ScalableBloomFilter fresh = new ScalableBloomFilter(expectedUsers, falsePositiveRate);
+        filter.building = fresh; // Signups from here on are added to both filters
+        long start = System.nanoTime();
+        try {
+            CollectionFindOptions options = new CollectionFindOptions();
+            options.projection(Projection.include("_id"));
+            long count = tenantCollections.execute(tenant, t -> astraGuard.call(TenantUser.USERS_COLLECTION_NAME, "find", "projection:_id", () -> {
+                long ids = 0;
+                for (Document doc : t.users().find(null, options)) {
+                    fresh.put(doc.getId(String.class));
+                    ids++;
+                }
+                return ids;
+            }));
+            filter.active = fresh;
+            LOGGER.info("Known-user filter of tenant '{}' built from {} users in {} ms ({} bytes, false-positive rate {})",
+                    tenant, count, (System.nanoTime() - start) / 1_000_000, fresh.getMemoryBytes(),
+                    String.format("%.5f", fresh.getFalsePositiveRate()));
+        } catch (Exception e) {
+            // Keep the previous filter (if any), the next rebuild retries
+            LOGGER.warn("Failed to build known-user filter of tenant '{}': {}", tenant, e.getMessage());
+        } finally {
+            filter.building = null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        builder.shutdownNow();
+    }
+
+    @ManagedAttribute(description = "Logins checked against a filter")
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    @ManagedAttribute(description = "Logins rejected as unknown users, without reading the user document")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Filter misses for users that did exist (signed up on another instance)")
+    public long getStaleMisses() {
+        return staleMisses.get();
+    }
+
+    @ManagedAttribute(description = "Misses rejected without a confirming read, over the confirmation rate")
+    public long getUnconfirmedRejections() {
+        return unconfirmed.get();
+    }
+
+    @ManagedAttribute(description = "Users added to the filters after signing up on another instance")
+    public long getRemoteSignups() {
+        return remoteSignups.get();
+    }
+
+    @ManagedAttribute(description = "Per-tenant filter size, expected false-positive rate and memory footprint")
+    public String[] getFilterStats() {
+        return filters.entrySet().stream().map(e -> {
+            ScalableBloomFilter active = e.getValue().active;
+            return active == null
+                    ? String.format("tenant=%s ready=false", e.getKey())
+                    : String.format("tenant=%s ready=true users=%d stages=%d falsePositiveRate=%.5f memoryBytes=%d",
+                            e.getKey(), active.getCount(), active.getStages(), active.getFalsePositiveRate(), active.getMemoryBytes());
+        }).sorted().toArray(String[]::new);
+    }
+
+    private static final class TenantFilter {
+        volatile ScalableBloomFilter active; // Null until the first build has finished
+        volatile ScalableBloomFilter building;
+    }
+}
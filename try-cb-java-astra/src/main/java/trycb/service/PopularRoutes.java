@@ -0,0 +1,241 @@
+package trycb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import trycb.util.CacheEvent;
+import trycb.util.CountMinSketch;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized flight lists for the most requested (from, to, weekday) combinations.
+ *
+ * Every flight path search is counted in a {@link CountMinSketch}; a background refresh takes
+ * the top {@code flightpath.materialize.top-n} combinations, recomputes their flight lists and
+ * keeps them in memory, where {@link FlightPath} serves them without calling Astra. Counts decay
+ * on every refresh, so the set follows current traffic. A route whose recomputation fails keeps
+ * its previous list (or stays unmaterialized), so Astra errors never become materialized
+ * results. {@link #invalidate()} drops everything when the route or airline collections change
+ * (see the invalidation endpoint).
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=PopularRoutes", description = "Materialized popular flight paths")
+public class PopularRoutes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PopularRoutes.class);
+    private static final String DATE_FIELD = "date"; // Only part of a result that depends on the exact day
+
+    private final ObjectProvider<FlightPath> flightPathService; // Provider: FlightPath also depends on this service
+    private final boolean enabled;
+    private final int topN;
+    private final int maxCandidates;
+
+    private final CountMinSketch sketch = new CountMinSketch(4, 4096);
+    private final Map<String, RouteKey> candidates = new ConcurrentHashMap<>();
+    private final Map<String, List<Map<String, Object>>> materialized = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public PopularRoutes(ObjectProvider<FlightPath> flightPathService,
+                         @Value("${flightpath.materialize.enabled:true}") boolean enabled,
+                         @Value("${flightpath.materialize.top-n:50}") int topN) {
+        this.flightPathService = flightPathService;
+        this.enabled = enabled;
+        this.topN = topN;
+        this.maxCandidates = topN * 20;
+    }
+
+    /**
+     * Counts a search and returns its materialized result, if the combination is currently one
+     * of the popular ones.
+     *
+     * @param date formatted departure date to put into the returned flights.
+     */
+    public Optional<List<Map<String, Object>>> lookup(String from, String to, int weekday, String date) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = key(from, to, weekday);
+        sketch.add(key);
+        if (candidates.size() < maxCandidates) {
+            candidates.putIfAbsent(key, new RouteKey(from, to, weekday));
+        }
+
+        lookups.incrementAndGet();
+        List<Map<String, Object>> flights = materialized.get(key);
+        CacheEvent.record("popularRoutes", key, flights != null);
+        if (flights == null) {
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        List<Map<String, Object>> result = new ArrayList<>(flights.size());
+        for (Map<String, Object> flight : flights) {
+            Map<String, Object> copy = new HashMap<>(flight);
+            copy.put(DATE_FIELD, date);
+            result.add(copy);
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Recomputes the flight lists of the current top combinations and drops the ones that are
+     * no longer popular.
+     */
+    @Scheduled(fixedDelayString = "${flightpath.materialize.refresh-ms:60000}",
+               initialDelayString = "${flightpath.materialize.refresh-ms:60000}")
+    public void refresh() {
+        if (!enabled || candidates.isEmpty()) {
+            return;
+        }
+        long startGeneration = generation.get();
+        List<RouteKey> ranked = candidates.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, RouteKey> e) -> sketch.estimate(e.getKey())).reversed())
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        List<RouteKey> top = ranked.subList(0, Math.min(topN, ranked.size()));
+
+        Map<String, List<Map<String, Object>>> fresh = new HashMap<>();
+        Set<String> failed = new HashSet<>();
+        for (RouteKey route : top) {
+            try {
+                List<Map<String, Object>> flights = flightPathService.getObject().compute(route.from, route.to, route.dayWithWeekday());
+                fresh.put(route.key(), strip(flights));
+            } catch (RuntimeException e) {
+                // compute() fails rather than returning partial flights; the previous list (if any) stays
+                failed.add(route.key());
+                refreshFailures.incrementAndGet();
+                LOGGER.warn("Could not materialize flights {} -> {} on weekday {}: {}", route.from, route.to, route.weekday, e.getMessage());
+            }
+        }
+        if (generation.get() != startGeneration) {
+            LOGGER.info("Data changed during refresh, discarding the recomputed flight lists");
+            return;
+        }
+        materialized.keySet().removeIf(key -> !fresh.containsKey(key) && !failed.contains(key));
+        materialized.putAll(fresh);
+
+        // Forget the long tail (it can come back), and age the counts so the top follows current traffic
+        ranked.subList(Math.min(maxCandidates / 2, ranked.size()), ranked.size()).forEach(route -> candidates.remove(route.key()));
+        sketch.decay();
+        refreshes.incrementAndGet();
+        LOGGER.info("Materialized flight lists for {} popular routes", materialized.size());
+    }
+
+    /**
+     * Drops all materialized flight lists, e.g. after the route or airline collections changed.
+     * Popularity counts are kept, so the next refresh rebuilds the same set.
+     */
+    @ManagedOperation(description = "Drop all materialized flight lists")
+    public void invalidate() {
+        generation.incrementAndGet();
+        materialized.clear();
+        invalidations.incrementAndGet();
+        LOGGER.info("Materialized flight lists invalidated");
+    }
+
+    private static List<Map<String, Object>> strip(List<Map<String, Object>> flights) {
+        List<Map<String, Object>> stripped = new ArrayList<>(flights.size());
+        for (Map<String, Object> flight : flights) {
+            Map<String, Object> copy = new HashMap<>(flight);
+            copy.remove(DATE_FIELD);
+            stripped.add(Collections.unmodifiableMap(copy));
+        }
+        return Collections.unmodifiableList(stripped);
+    }
+
+    private static String key(String from, String to, int weekday) {
+        return from + "|" + to + "|" + weekday;
+    }
+
+    @ManagedAttribute(description = "Searches looked up")
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    @ManagedAttribute(description = "Searches answered from materialized flight lists")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of searches answered from materialized flight lists")
+    public double getHitRatio() {
+        long total = lookups.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    @ManagedAttribute(description = "Background refreshes completed")
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    @ManagedAttribute(description = "Flight lists that could not be recomputed, their previous list kept")
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    @ManagedAttribute(description = "Invalidations received")
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @ManagedAttribute(description = "Materialized routes with their estimated recent search counts")
+    public String[] getMaterializedRoutes() {
+        return materialized.keySet().stream()
+                .sorted(Comparator.comparingLong(sketch::estimate).reversed())
+                .map(key -> key + " ~" + sketch.estimate(key))
+                .toArray(String[]::new);
+    }
+
+    private static final class RouteKey {
+        final String from;
+        final String to;
+        final int weekday; // 0 = Sunday, as in the route schedules
+
+        RouteKey(String from, String to, int weekday) {
+            this.from = from;
+            this.to = to;
+            this.weekday = weekday;
+        }
+
+        String key() {
+            return PopularRoutes.key(from, to, weekday);
+        }
+
+        // Any day with the right weekday works, the date is filled in per request
+        Calendar dayWithWeekday() {
+            Calendar day = Calendar.getInstance(Locale.US);
+            while (day.get(Calendar.DAY_OF_WEEK) - 1 != weekday) {
+                day.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            return day;
+        }
+    }
+}
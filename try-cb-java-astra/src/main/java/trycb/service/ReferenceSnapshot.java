@@ -0,0 +1,302 @@
+package trycb.service;
+
+import com.datastax.astra.client.collections.definition.documents.Document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import trycb.config.AstraCollections;
+import trycb.config.LazyCollection;
+import trycb.util.SnapshotFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Airport, airline and route data served from a memory-mapped {@link SnapshotFile}, so new
+ * instances answer airport and flight path searches without Astra from the first request.
+ *
+ * The snapshot at {@code reference-snapshot.file} is mapped at startup if present, valid and
+ * not older than {@code reference-snapshot.max-age-hours}; otherwise (and after
+ * {@link #discard()}, when the invalidation endpoint reports the reference collections changed)
+ * lookups return empty and the services fall back to Astra. The instance that discarded its
+ * snapshot exports a fresh one {@code reference-snapshot.reexport-delay-ms} after the last
+ * change it was told about (at most {@code reference-snapshot.reexport-max-delay-ms} after the
+ * first, so a steady stream of changes cannot postpone it forever) and maps it again. Every
+ * instance also maps the file again when it changes on disk, so a snapshot exported by one
+ * instance on a shared volume reaches the others; until then they keep their current mapping,
+ * which stays valid because exports replace the file instead of rewriting it. The
+ * {@link #export()} JMX operation writes a snapshot right away.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=ReferenceSnapshot", description = "Memory-mapped reference data snapshot")
+public class ReferenceSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceSnapshot.class);
+
+    private final boolean enabled;
+    private final Path file;
+    private final long maxAgeMillis;
+    private final long reexportDelayMillis;
+    private final long reexportMaxDelayMillis;
+    private final LazyCollection airportCollection;
+    private final LazyCollection airlineCollection;
+    private final LazyCollection routeCollection;
+    private final AstraGuard astraGuard;
+    private volatile SnapshotFile snapshot;
+    private volatile FileTime seenModified; // Of the file last mapped (or rejected)
+
+    // Discards, and the pending re-export: 0 if none
+    private final Object exportLock = new Object();
+    private long generation;
+    private long firstDiscardAt;
+    private long exportDueAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong exportFailures = new AtomicLong();
+
+    @Autowired
+    public ReferenceSnapshot(AstraCollections astraCollections, AstraGuard astraGuard,
+                             @Value("${reference-snapshot.enabled:true}") boolean enabled,
+                             @Value("${reference-snapshot.file:data/reference.snapshot}") String file,
+                             @Value("${reference-snapshot.max-age-hours:24}") long maxAgeHours,
+                             @Value("${reference-snapshot.reexport-delay-ms:60000}") long reexportDelayMillis,
+                             @Value("${reference-snapshot.reexport-max-delay-ms:600000}") long reexportMaxDelayMillis) {
+        this.enabled = enabled;
+        this.file = Paths.get(file);
+        this.maxAgeMillis = TimeUnit.HOURS.toMillis(maxAgeHours);
+        this.reexportDelayMillis = reexportDelayMillis;
+        this.reexportMaxDelayMillis = reexportMaxDelayMillis;
+        this.airportCollection = astraCollections.lazy("airport");
+        this.airlineCollection = astraCollections.lazy("airline");
+        this.routeCollection = astraCollections.lazy("route");
+        this.astraGuard = astraGuard;
+        if (enabled) {
+            load();
+        }
+    }
+
+    @ManagedOperation(description = "Map the snapshot file (again)")
+    public String load() {
+        if (!Files.exists(file)) {
+            LOGGER.info("No reference snapshot at {}, reference data is read from Astra", file.toAbsolutePath());
+            return "No snapshot at " + file.toAbsolutePath();
+        }
+        try {
+            long start = System.nanoTime();
+            seenModified = Files.getLastModifiedTime(file);
+            SnapshotFile mapped = SnapshotFile.open(file);
+            long ageMillis = System.currentTimeMillis() - mapped.getCreatedAt();
+            if (maxAgeMillis > 0 && ageMillis > maxAgeMillis) {
+                LOGGER.warn("Ignoring reference snapshot {} from {}: older than {} hours, export a fresh one",
+                        file.toAbsolutePath(), Instant.ofEpochMilli(mapped.getCreatedAt()), TimeUnit.MILLISECONDS.toHours(maxAgeMillis));
+                return "Snapshot too old: created " + Instant.ofEpochMilli(mapped.getCreatedAt());
+            }
+            snapshot = mapped;
+            LOGGER.info("Mapped reference snapshot {} from {} ({} airports, {} airlines, {} routes, {} bytes) in {} ms",
+                    file.toAbsolutePath(), Instant.ofEpochMilli(mapped.getCreatedAt()), mapped.getAirportCount(),
+                    mapped.getAirlineCount(), mapped.getRouteCount(), mapped.getSizeBytes(), (System.nanoTime() - start) / 1_000_000);
+            return "Mapped " + file.toAbsolutePath();
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring reference snapshot: {}", e.getMessage());
+            return "Invalid snapshot: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Stops serving the snapshot, e.g. because the reference collections changed, and schedules
+     * the export of a fresh one. The file is left in place for the other instances.
+     */
+    @ManagedOperation(description = "Stop serving the snapshot until a fresh one is exported")
+    public void discard() {
+        synchronized (exportLock) {
+            generation++;
+            long now = System.currentTimeMillis();
+            if (firstDiscardAt == 0) {
+                firstDiscardAt = now;
+            }
+            exportDueAt = Math.min(now + reexportDelayMillis, firstDiscardAt + reexportMaxDelayMillis);
+            if (snapshot != null) {
+                snapshot = null;
+                LOGGER.info("Reference snapshot discarded, reference data is read from Astra until it is exported again");
+            }
+        }
+    }
+
+    /**
+     * Exports the snapshot once due after a discard; otherwise maps the file again if another
+     * instance replaced it.
+     */
+    @Scheduled(fixedDelayString = "${reference-snapshot.check-interval-ms:10000}",
+               initialDelayString = "${reference-snapshot.check-interval-ms:10000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long due;
+        long startGeneration;
+        synchronized (exportLock) {
+            due = exportDueAt;
+            startGeneration = generation;
+        }
+        if (due != 0) {
+            // The file on disk holds the discarded data until then
+            if (System.currentTimeMillis() >= due) {
+                reexport(startGeneration);
+            }
+            return;
+        }
+        try {
+            if (Files.exists(file) && !Files.getLastModifiedTime(file).equals(seenModified)) {
+                LOGGER.info("Reference snapshot {} was replaced, mapping it again", file.toAbsolutePath());
+                load();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not check reference snapshot {}: {}", file.toAbsolutePath(), e.getMessage());
+        }
+    }
+
+    private void reexport(long startGeneration) {
+        try {
+            LOGGER.info(export());
+            exports.incrementAndGet();
+            synchronized (exportLock) {
+                if (generation == startGeneration) {
+                    firstDiscardAt = 0;
+                    exportDueAt = 0;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            exportFailures.incrementAndGet();
+            LOGGER.warn("Could not export reference snapshot, retrying in {} ms: {}", reexportDelayMillis, e.getMessage());
+            synchronized (exportLock) {
+                if (generation == startGeneration) {
+                    exportDueAt = System.currentTimeMillis() + reexportDelayMillis;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the reference collections from Astra, writes them to the snapshot file and maps it,
+     * unless they were reported changed again meanwhile.
+     */
+    @ManagedOperation(description = "Export the reference collections from Astra to the snapshot file and map it")
+    public String export() throws IOException {
+        long startGeneration;
+        synchronized (exportLock) {
+            startGeneration = generation;
+        }
+        List<SnapshotFile.Airport> airports = new ArrayList<>();
+        scan(airportCollection, doc -> {
+            double[] geo = FareEngine.coordinates(doc);
+            airports.add(new SnapshotFile.Airport(doc.getId(String.class), doc.getString("faa"), doc.getString("icao"),
+                    doc.getString("airportname"), geo == null ? Double.NaN : geo[0], geo == null ? Double.NaN : geo[1]));
+        });
+        List<SnapshotFile.Airline> airlines = new ArrayList<>();
+        scan(airlineCollection, doc -> airlines.add(new SnapshotFile.Airline(doc.getId(String.class), doc.getString("name"))));
+        List<SnapshotFile.Route> routes = new ArrayList<>();
+        scan(routeCollection, doc -> routes.add(toRoute(doc)));
+
+        synchronized (exportLock) {
+            // Discards wait, so a snapshot of data reported changed meanwhile is neither written nor mapped
+            if (generation != startGeneration) {
+                return "Reference data changed during the export, not written";
+            }
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            SnapshotFile.write(file, airports, airlines, routes);
+            LOGGER.info("Exported reference snapshot with {} airports, {} airlines and {} routes to {}",
+                    airports.size(), airlines.size(), routes.size(), file.toAbsolutePath());
+            return load();
+        }
+    }
+
+    private void scan(LazyCollection collection, Consumer<Document> consumer) {
+        astraGuard.call(collection.getName(), "find", "all", () -> {
+            collection.get().find(null).forEach(consumer);
+            return null;
+        });
+    }
+
+    private static SnapshotFile.Route toRoute(Document doc) {
+        List<SnapshotFile.Schedule> schedule = new ArrayList<>();
+        List<?> scheduleList = doc.get("schedule", List.class);
+        if (scheduleList != null) {
+            for (Object entry : scheduleList) {
+                if (entry instanceof Map) {
+                    Map<?, ?> scheduleMap = (Map<?, ?>) entry;
+                    Object day = scheduleMap.get("day");
+                    schedule.add(new SnapshotFile.Schedule(day instanceof Number ? ((Number) day).intValue() : -1,
+                            (String) scheduleMap.get("utc"), (String) scheduleMap.get("flight")));
+                }
+            }
+        }
+        return new SnapshotFile.Route(doc.getString("sourceairport"), doc.getString("destinationairport"),
+                doc.getString("airlineid"), doc.getString("equipment"), schedule);
+    }
+
+    /**
+     * @return the mapped snapshot, if one is being served.
+     */
+    public Optional<SnapshotFile> current() {
+        SnapshotFile mapped = snapshot;
+        if (mapped != null) {
+            hits.incrementAndGet();
+        }
+        return Optional.ofNullable(mapped);
+    }
+
+    @ManagedAttribute(description = "Whether a snapshot is being served")
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    @ManagedAttribute(description = "Lookups answered from the snapshot")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Snapshots exported again after a discard")
+    public long getExports() {
+        return exports.get();
+    }
+
+    @ManagedAttribute(description = "Exports after a discard that failed and will be retried")
+    public long getExportFailures() {
+        return exportFailures.get();
+    }
+
+    @ManagedAttribute(description = "Time the pending re-export is due, if any")
+    public String getExportDueAt() {
+        synchronized (exportLock) {
+            return exportDueAt == 0 ? null : Instant.ofEpochMilli(exportDueAt).toString();
+        }
+    }
+
+    @ManagedAttribute(description = "Creation time of the served snapshot")
+    public String getCreatedAt() {
+        SnapshotFile mapped = snapshot;
+        return mapped == null ? null : Instant.ofEpochMilli(mapped.getCreatedAt()).toString();
+    }
+}
@@ -0,0 +1,163 @@
+package trycb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import trycb.util.CacheEvent;
+import trycb.util.Deadline;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of identical concurrent reads.
+ *
+ * The first caller for a key runs the call; callers arriving with the same key while it is in
+ * flight wait for that result instead of issuing their own chain of Astra calls. Nothing is kept
+ * once the call completes, so this is independent of any caching. Results are shared between
+ * callers and must be treated as read-only.
+ *
+ * Failures are shared as well, except when the first caller failed because its own request
+ * deadline ran out: callers with time left then run the call again (coalesced among themselves).
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=RequestCoalescer", description = "Coalescing of identical concurrent reads")
+public class RequestCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private volatile boolean enabled;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong deadlineRetries = new AtomicLong();
+
+    @Autowired
+    public RequestCoalescer(@Value("${astra.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Runs the call, or joins an identical one already in flight.
+     *
+     * @param key identifies the call, e.g. "hotel:" + location + "|" + description.
+     * @throws AstraUnavailableException if the request deadline passes while waiting for another caller's result.
+     */
+    public <T> T execute(String key, Supplier<T> call) {
+        calls.incrementAndGet();
+        if (!enabled) {
+            executions.incrementAndGet();
+            return call.get();
+        }
+        return coalesce(key, call);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(String key, Supplier<T> call) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        CacheEvent.record("coalescer", key, existing != null);
+        if (existing != null) {
+            try {
+                return (T) await(existing, key);
+            } catch (LeaderDeadlineExceeded e) {
+                // Not this caller's deadline (await throws once that passes): run or join the call again,
+                // without waiting for the failed call to be removed
+                inFlight.remove(key, existing);
+                deadlineRetries.incrementAndGet();
+                return coalesce(key, call);
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            T value = call.get();
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, or the waiting callers would hang until their deadlines
+            Deadline deadline = Deadline.current();
+            boolean ownDeadline = e instanceof AstraUnavailableException && deadline != null && deadline.isExpired();
+            mine.completeExceptionally(ownDeadline ? new LeaderDeadlineExceeded(e) : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future, String key) {
+        try {
+            // Saturates at Long.MAX_VALUE when the thread has no deadline
+            return future.get(TimeUnit.MILLISECONDS.toNanos(Deadline.remainingMillis()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new AstraUnavailableException("Request deadline exceeded waiting for in-flight " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("In-flight " + key + " failed", e.getCause());
+        }
+    }
+
+    // The call failed because the deadline of the caller running it passed
+    private static final class LeaderDeadlineExceeded extends RuntimeException {
+
+        LeaderDeadlineExceeded(Throwable cause) {
+            super(cause.getMessage(), cause, false, false);
+        }
+    }
+
+    @ManagedAttribute(description = "Whether identical concurrent reads are coalesced")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "Enable or disable coalescing at runtime")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        LOGGER.info("Request coalescing {}", enabled ? "enabled" : "disabled");
+    }
+
+    @ManagedAttribute(description = "Calls made")
+    public long getCalls() {
+        return calls.get();
+    }
+
+    @ManagedAttribute(description = "Calls that actually ran (the rest joined an in-flight call)")
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of calls answered by joining an in-flight call")
+    public double getCoalescingRatio() {
+        long total = calls.get();
+        return total == 0 ? 0.0 : (double) (total - executions.get()) / total;
+    }
+
+    @ManagedAttribute(description = "Calls run again because the caller running them ran out of time")
+    public long getDeadlineRetries() {
+        return deadlineRetries.get();
+    }
+
+    @ManagedAttribute(description = "Keys currently in flight")
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,204 @@
+package trycb.service;
+
+import com.datastax.astra.client.DataAPIClient;
+import com.datastax.astra.client.collections.Collection;
+import com.datastax.astra.client.collections.definition.documents.Document;
+import com.datastax.astra.client.databases.Database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import trycb.config.AstraCollections;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of per-tenant user/booking collection handles.
+ *
+ * Each tenant maps to a keyspace ({@code astra.tenant.keyspace.<tenant>}, defaulting to
+ * {@code astra.api.keyspace}) holding its own {@code user} and {@code booking} collections.
+ * Handles are created lazily on a tenant's first request and cached. Every remote call made
+ * through {@link #execute(String, Function)} takes one of the tenant's permits, so a noisy
+ * tenant queues (and is rejected) on its own limit instead of starving the others.
+ *
+ * Only configured tenants (listed in {@code astra.tenant.names} or given a keyspace) get their
+ * own entry and permits; any other tenant name shares a single entry on the default keyspace,
+ * so made-up tenant names can neither grow the registry nor bring their own permits.
+ */
+@Service
+@ManagedResource(objectName = "trycb:type=TenantCollections", description = "Per-tenant Astra collection handles and limits")
+public class TenantCollections {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TenantCollections.class);
+    private static final Pattern TENANT_NAME = Pattern.compile("[A-Za-z0-9_]{1,48}");
+    private static final String SHARED_TENANT = "(shared)";
+
+    private final DataAPIClient dataAPIClient;
+    private final Database defaultDatabase;
+    private final AstraCollections astraCollections;
+    private final String endpoint;
+    private final String defaultKeyspace;
+    private final Environment environment;
+    private final int maxConcurrentCalls;
+    private final long acquireTimeoutMs;
+    private final Set<String> tenantNames;
+
+    private final Map<String, Database> databasesByKeyspace = new ConcurrentHashMap<>();
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantCollections(DataAPIClient dataAPIClient, Database astraDatabase, AstraCollections astraCollections,
+                             @Value("${astra.api.endpoint}") String endpoint,
+                             @Value("${astra.api.keyspace}") String keyspace,
+                             @Value("${astra.tenant.max-concurrent-calls:16}") int maxConcurrentCalls,
+                             @Value("${astra.tenant.acquire-timeout-ms:250}") long acquireTimeoutMs,
+                             @Value("${astra.tenant.names:}") String[] tenantNames,
+                             Environment environment) {
+        this.dataAPIClient = dataAPIClient;
+        this.defaultDatabase = astraDatabase;
+        this.astraCollections = astraCollections;
+        this.endpoint = endpoint;
+        this.defaultKeyspace = keyspace;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.tenantNames = Arrays.stream(tenantNames).map(String::trim).filter(t -> !t.isEmpty()).collect(Collectors.toSet());
+        this.environment = environment;
+    }
+
+    /**
+     * Runs an Astra operation against the given tenant's collections within the tenant's
+     * concurrency limit.
+     *
+     * @throws IllegalArgumentException if the tenant name is not a valid identifier.
+     * @throws TenantOverloadedException if no permit became available within the acquire timeout.
+     */
+    public <T> T execute(String tenantName, Function<Tenant, T> operation) {
+        Tenant tenant = resolve(tenantName);
+        boolean acquired;
+        try {
+            acquired = tenant.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            tenant.rejected.incrementAndGet();
+            LOGGER.warn("Tenant '{}' exceeded its limit of {} concurrent Astra calls", tenantName, maxConcurrentCalls);
+            throw new TenantOverloadedException("Too many concurrent requests for tenant " + tenantName);
+        }
+        long start = System.nanoTime();
+        try {
+            return operation.apply(tenant);
+        } catch (RuntimeException e) {
+            tenant.failures.incrementAndGet();
+            throw e;
+        } finally {
+            tenant.calls.incrementAndGet();
+            tenant.totalNanos.addAndGet(System.nanoTime() - start);
+            tenant.permits.release();
+        }
+    }
+
+    private Tenant resolve(String tenantName) {
+        if (tenantName == null || !TENANT_NAME.matcher(tenantName).matches()) {
+            throw new IllegalArgumentException("Invalid tenant name");
+        }
+        Tenant known = tenants.get(tenantName);
+        if (known != null) {
+            return known;
+        }
+        boolean configured = tenantNames.contains(tenantName) || environment.containsProperty("astra.tenant.keyspace." + tenantName);
+        return configured ? create(tenantName) : create(SHARED_TENANT);
+    }
+
+    private Tenant create(String tenantName) {
+        // computeIfAbsent caches nothing when handle creation throws, so a failed tenant is retried on its next request
+        return tenants.computeIfAbsent(tenantName, name -> {
+            String keyspace = SHARED_TENANT.equals(name)
+                    ? defaultKeyspace
+                    : environment.getProperty("astra.tenant.keyspace." + name, defaultKeyspace);
+            Database database = keyspace.equals(defaultKeyspace)
+                    ? defaultDatabase
+                    : databasesByKeyspace.computeIfAbsent(keyspace, ks -> dataAPIClient.getDatabase(endpoint, ks));
+            Tenant tenant = new Tenant(name, keyspace,
+                    astraCollections.get(database, TenantUser.USERS_COLLECTION_NAME),
+                    astraCollections.get(database, TenantUser.BOOKINGS_COLLECTION_NAME),
+                    maxConcurrentCalls);
+            LOGGER.info("Tenant '{}' mapped to Astra collections ('{}', '{}') in keyspace '{}'",
+                    name, TenantUser.USERS_COLLECTION_NAME, TenantUser.BOOKINGS_COLLECTION_NAME, keyspace);
+            return tenant;
+        });
+    }
+
+    @ManagedAttribute(description = "Per-tenant keyspace, call counts, rejections, in-flight calls and average latency")
+    public String[] getTenantStats() {
+        return tenants.values().stream().map(Tenant::toString).sorted().toArray(String[]::new);
+    }
+
+    @ManagedAttribute(description = "Maximum concurrent Astra calls per tenant")
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Collection handles and counters of a single tenant.
+     */
+    public static class Tenant {
+
+        private final String name;
+        private final String keyspace;
+        private final Collection<Document> users;
+        private final Collection<Document> bookings;
+        private final int maxConcurrentCalls;
+        private final Semaphore permits;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        Tenant(String name, String keyspace, Collection<Document> users, Collection<Document> bookings, int maxConcurrentCalls) {
+            this.name = name;
+            this.keyspace = keyspace;
+            this.users = users;
+            this.bookings = bookings;
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.permits = new Semaphore(maxConcurrentCalls);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Collection<Document> users() {
+            return users;
+        }
+
+        public Collection<Document> bookings() {
+            return bookings;
+        }
+
+        @Override
+        public String toString() {
+            long count = calls.get();
+            return String.format("tenant=%s keyspace=%s calls=%d failures=%d rejected=%d inFlight=%d avgLatencyMs=%.2f",
+                    name, keyspace, count, failures.get(), rejected.get(),
+                    maxConcurrentCalls - permits.availablePermits(),
+                    count == 0 ? 0.0 : totalNanos.get() / 1_000_000.0 / count);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package trycb.service;
+
+/**
+ * Thrown when a tenant has used up its concurrent Astra call limit and no permit became
+ * available in time. Controllers map it to HTTP 429.
+ */
+public class TenantOverloadedException extends RuntimeException {
+
+    public TenantOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -13,8 +13,6 @@ package trycb.service;
 // import com.couchbase.client.java.kv.InsertOptions;
 
 // Astra DB Data API Imports - Corrected for 2.0.0-PREVIEW3
-import com.datastax.astra.client.databases.Database;
-import com.datastax.astra.client.collections.Collection;
 // Corrected path for Document
 import com.datastax.astra.client.collections.definition.documents.Document;
 // Corrected path for Filter/Filters
@@ -33,7 +31,6 @@ import com.datastax.astra.client.collections.commands.Updates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException; // For insert conflict
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
 import org.springframework.security.authentication.AuthenticationServiceException;
@@ -58,39 +55,40 @@ public class TenantUser {
     static final String BOOKINGS_COLLECTION_NAME = "booking";
 
     private final TokenService jwtService;
-    private final Database astraDatabase;
-    private final String keyspace;
-    private Collection<Document> usersCollection;
-    private Collection<Document> bookingsCollection;
+    // Per-tenant user/booking collections; every Astra call goes through the tenant's limit
+    private final TenantCollections tenantCollections;
+    private final HedgedReads hedgedReads;
+    private final AstraGuard astraGuard;
+    private final BookingCache bookingCache;
+    private final BookingJournal bookingJournal;
+    private final KnownUsers knownUsers;
 
     @Autowired
-    public TenantUser(Database astraDatabase, @Value("${astra.api.keyspace}") String keyspace, TokenService jwtService) {
-        this.astraDatabase = astraDatabase;
-        this.keyspace = keyspace;
+    public TenantUser(TenantCollections tenantCollections, HedgedReads hedgedReads, AstraGuard astraGuard,
+                      BookingCache bookingCache, BookingJournal bookingJournal, KnownUsers knownUsers,
+                      TokenService jwtService) {
+        this.tenantCollections = tenantCollections;
+        this.hedgedReads = hedgedReads;
+        this.astraGuard = astraGuard;
+        this.bookingCache = bookingCache;
+        this.bookingJournal = bookingJournal;
+        this.knownUsers = knownUsers;
         this.jwtService = jwtService;
-        try {
-            this.usersCollection = astraDatabase.getCollection(USERS_COLLECTION_NAME, Document.class);
-            this.bookingsCollection = astraDatabase.getCollection(BOOKINGS_COLLECTION_NAME, Document.class);
-            LOGGER.info("TenantUser Service connected to Astra collections ('{}', '{}') in keyspace '{}'",
-                    USERS_COLLECTION_NAME, BOOKINGS_COLLECTION_NAME, keyspace);
-        } catch (Exception e) {
-            LOGGER.error("Failed to get Astra collections ('{}', '{}') in keyspace '{}'",
-                    USERS_COLLECTION_NAME, BOOKINGS_COLLECTION_NAME, keyspace, e);
-            this.usersCollection = null; // Mark as unusable
-            this.bookingsCollection = null;
-        }
     }
 
     /**
      * Try to log the given tenant user in using Astra DB.
      */
-    public Map<String, Object> login(final String username, final String password) {
-        if (usersCollection == null) {
-             throw new AuthenticationServiceException("User collection not available");
+    public Map<String, Object> login(final String tenant, final String username, final String password) {
+        // Usernames that certainly do not exist (e.g. credential stuffing) are rejected without a read
+        if (!knownUsers.mightExist(tenant, username)) {
+            LOGGER.warn("Login attempt failed: User '{}' not found.", username);
+            throw new AuthenticationCredentialsNotFoundException("Bad Username or Password");
         }
 
         // Fetch user document by username (_id)
-        Optional<Document> userDocOpt = usersCollection.findOne(Filters.eq("_id", username));
+        Optional<Document> userDocOpt = tenantCollections.execute(tenant,
+                t -> astraGuard.call(USERS_COLLECTION_NAME, "findOne", "eq:_id", () -> t.users().findOne(Filters.eq("_id", username))));
 
         if (userDocOpt.isEmpty()) {
              LOGGER.warn("Login attempt failed: User '{}' not found.", username);
@@ -117,11 +115,7 @@ public class TenantUser {
     /**
      * Create a tenant user in Astra DB.
      */
-    public Map<String, Object> createLogin(final String username, final String password) {
-        if (usersCollection == null) {
-            throw new AuthenticationServiceException("User collection not available");
-        }
-
+    public Map<String, Object> createLogin(final String tenant, final String username, final String password) {
         String passHash = BCrypt.hashpw(password, BCrypt.gensalt());
 
         Document newUserDoc = new Document()
@@ -134,17 +128,20 @@ public class TenantUser {
 
         try {
             // insertOne likely returns void or throws exception in this SDK version
-            usersCollection.insertOne(newUserDoc);
+            tenantCollections.execute(tenant, t -> astraGuard.call(USERS_COLLECTION_NAME, "insertOne", "none", () -> t.users().insertOne(newUserDoc)));
             // Removed check based on InsertOneResult
             // if (!result.getInsertedId().equals(username)) {
             //     LOGGER.error("User creation inserted ID mismatch for '{}'! Expected: {}, Got: {}", username, username, result.getInsertedId());
             //     throw new AuthenticationServiceException("Account creation failed unexpectedly.");
             // }
             LOGGER.info("User '{}' created successfully.", username);
+            knownUsers.added(tenant, username);
             return Map.of("token", jwtService.buildToken(username));
         } catch (DuplicateKeyException e) { // Assuming Astra client might throw something like this on _id conflict
              LOGGER.warn("User creation failed: Username '{}' already exists.", username);
             throw new AuthenticationServiceException("Username already exists", e);
+        } catch (TenantOverloadedException | AstraUnavailableException | IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
              LOGGER.error("User creation failed for '{}': {}", username, e.getMessage(), e);
             throw new AuthenticationServiceException("Error creating account: " + e.getMessage(), e);
@@ -154,16 +151,17 @@ public class TenantUser {
     /*
      * Register a flight (or flights) for the given tenant user using Astra DB.
      */
-    public Map<String, Object> registerFlightForUser(final String username, final List<Map<String, Object>> newFlights) {
+    public Map<String, Object> registerFlightForUser(final String tenant, final String username, final List<Map<String, Object>> newFlights) {
         // Log the list received by the service
         LOGGER.debug("Service received newFlights list: {}", newFlights);
 
-        if (usersCollection == null || bookingsCollection == null) {
-            throw new IllegalStateException("User or Booking collection not available");
+        if (bookingJournal.isEnabled()) {
+            return registerFlightsBehind(tenant, username, newFlights);
         }
 
         // 1. Fetch the user document first to get current bookings
-        Optional<Document> userDocOpt = usersCollection.findOne(Filters.eq("_id", username));
+        Optional<Document> userDocOpt = tenantCollections.execute(tenant,
+                t -> astraGuard.call(USERS_COLLECTION_NAME, "findOne", "eq:_id", () -> t.users().findOne(Filters.eq("_id", username))));
         if (userDocOpt.isEmpty()) {
             LOGGER.error("Cannot register flight: User '{}' not found.", username);
             throw new IllegalStateException("User not found");
@@ -180,6 +178,7 @@ public class TenantUser {
 
         List<String> addedFlightIds = new ArrayList<>();
         List<Map<String, Object>> addedFlightData = new ArrayList<>();
+        List<Map<String, Object>> addedBookings = new ArrayList<>(); // As stored, for the booking cache
 
         // 2. Insert new bookings
         for (Map<String, Object> newFlight : newFlights) {
@@ -196,10 +195,17 @@ public class TenantUser {
             bookingDoc.put("bookedon", "try-cb-java"); // Add booking source
 
             try {
-                bookingsCollection.insertOne(bookingDoc);
+                tenantCollections.execute(tenant, t -> astraGuard.call(BOOKINGS_COLLECTION_NAME, "insertOne", "none", () -> t.bookings().insertOne(bookingDoc)));
                 addedFlightIds.add(flightId);
                 addedFlightData.add(newFlight); // Keep original data for response
+                addedBookings.add(bookingDoc.getDocumentMap());
                 LOGGER.debug("Inserted booking {} for user {}", flightId, username);
+            } catch (AstraUnavailableException e) {
+                 if (addedFlightIds.isEmpty()) {
+                     throw e; // Nothing written yet, fail fast
+                 }
+                 LOGGER.warn("Stopped booking flights for user {}: {}", username, e.getMessage());
+                 break; // Keep the bookings already inserted and link them below
             } catch (Exception e) {
                  LOGGER.error("Failed to insert booking for user {}: {}", username, e.getMessage(), e);
                  // Decide on behavior: continue, stop, collect errors?
@@ -216,21 +222,54 @@ public class TenantUser {
                 // Update the user document with the new list of booking IDs
                 Update update = Updates.set("flights", allBookingIds);
                 // updateOne likely returns void or throws exception in this SDK version
-                usersCollection.updateOne(Filters.eq("_id", username), update);
+                tenantCollections.execute(tenant,
+                        t -> astraGuard.call(USERS_COLLECTION_NAME, "updateOne", "eq:_id", () -> t.users().updateOne(Filters.eq("_id", username), update)));
                 // Removed check based on UpdateResult
                 // if (updateResult.getModifiedCount() != 1) {
                 //    LOGGER.warn("User '{}' update might have failed, modified count: {}", username, updateResult.getModifiedCount());
                 //    // Consider potential inconsistency
                 // }
                 LOGGER.info("Updated user '{}' with {} new booking IDs.", username, addedFlightIds.size());
+                bookingCache.bookingsAdded(tenant, username, addedBookings); // Read-your-writes without an Astra read
             } catch (Exception e) {
                  LOGGER.error("Failed to update user '{}' with new booking IDs: {}", username, e.getMessage(), e);
+                 bookingCache.invalidate(tenant, username); // The update may still have been applied
                  // State might be inconsistent: bookings inserted but user not updated
                  throw new RuntimeException("Failed to finalize flight registration for user " + username, e);
             }
         }
 
-        return Map.of("added", addedFlightData);
+        return Map.of("added", addedFlightData, "bookingIds", addedFlightIds);
+    }
+
+    /*
+     * Write-behind variant: the bookings are only logged locally, BookingFlusher writes them to Astra.
+     */
+    private Map<String, Object> registerFlightsBehind(final String tenant, final String username, final List<Map<String, Object>> newFlights) {
+        if (CollectionUtils.isEmpty(newFlights)) {
+            throw new IllegalArgumentException("No flights provided in payload");
+        }
+        // As on the synchronous path: the flusher could never link bookings of a missing user
+        if (!knownUsers.exists(tenant, username)) {
+            LOGGER.error("Cannot register flight: User '{}' not found.", username);
+            throw new IllegalStateException("User not found");
+        }
+        List<String> bookingIds = new ArrayList<>();
+        List<Map<String, Object>> bookings = new ArrayList<>();
+        for (Map<String, Object> newFlight : newFlights) {
+            checkFlight(newFlight); // Validate all flights before logging any
+            String flightId = UUID.randomUUID().toString();
+            Map<String, Object> booking = new LinkedHashMap<>();
+            booking.put("_id", flightId);
+            booking.putAll(newFlight);
+            booking.put("bookedon", "try-cb-java"); // Add booking source
+            bookingIds.add(flightId);
+            bookings.add(booking);
+        }
+        bookingJournal.append(tenant, username, bookings);
+        bookingCache.bookingsAdded(tenant, username, bookings);
+        LOGGER.info("Logged {} bookings for user '{}', to be written to Astra", bookings.size(), username);
+        return Map.of("added", newFlights, "bookingIds", bookingIds);
     }
 
     // Adapted checkFlight to work with Map
@@ -258,14 +297,20 @@ public class TenantUser {
     /**
      * Get flights booked by a user using Astra DB.
      */
-    public List<Map<String, Object>> getFlightsForUser(final String username) {
-        if (usersCollection == null || bookingsCollection == null) {
-            LOGGER.error("User or Booking collection not available for getFlightsForUser");
-            return Collections.emptyList();
+    public List<Map<String, Object>> getFlightsForUser(final String tenant, final String username) {
+        // Bookings only change through this service, so a cached list is current
+        Optional<List<Map<String, Object>>> cached = bookingCache.get(tenant, username);
+        if (cached.isPresent()) {
+            return cached.get();
         }
-
-        // 1. Get user document
-        Optional<Document> userDocOpt = usersCollection.findOne(Filters.eq("_id", username));
+        long cacheStamp = bookingCache.stamp(tenant, username);
+        // Taken before reading Astra: a booking flushed meanwhile shows up twice (deduplicated below), never not at all
+        List<Map<String, Object>> pendingBookings = bookingJournal.pendingFor(tenant, username);
+
+        // 1. Get user document (reads on this path are idempotent, so they may be hedged)
+        Optional<Document> userDocOpt = tenantCollections.execute(tenant,
+                t -> astraGuard.call(USERS_COLLECTION_NAME, "findOne", "eq:_id",
+                        () -> hedgedReads.read("user.findOne", () -> t.users().findOne(Filters.eq("_id", username)))));
         if (userDocOpt.isEmpty()) {
             LOGGER.warn("User '{}' not found when retrieving flights.", username);
             return Collections.emptyList();
@@ -274,29 +319,43 @@ public class TenantUser {
         // 2. Extract booking IDs
         Document userDoc = userDocOpt.get();
         List<String> flightIdList = userDoc.getList("flights", String.class);
-        if (CollectionUtils.isEmpty(flightIdList)) {
+        if (CollectionUtils.isEmpty(flightIdList) && pendingBookings.isEmpty()) {
             LOGGER.info("User '{}' has no booked flights.", username);
             return Collections.emptyList();
         }
+        if (flightIdList == null) {
+            flightIdList = Collections.emptyList();
+        }
 
         // Workaround for apparent $in operator bug in SDK/API preview
         // Fetch bookings one by one instead of using Filters.in()
         List<Map<String, Object>> results = new ArrayList<>();
+        boolean complete = true; // Only complete lists are cached
         for (String flightId : flightIdList) {
             if (flightId == null || flightId.trim().isEmpty()) continue; // Skip invalid IDs
             try {
-                Optional<Document> bookingDocOpt = bookingsCollection.findOne(Filters.eq("_id", flightId));
+                Optional<Document> bookingDocOpt = tenantCollections.execute(tenant,
+                        t -> astraGuard.call(BOOKINGS_COLLECTION_NAME, "findOne", "eq:_id",
+                                () -> hedgedReads.read("booking.findOne", () -> t.bookings().findOne(Filters.eq("_id", flightId)))));
                 if (bookingDocOpt.isPresent()) {
                     results.add(bookingDocOpt.get().getDocumentMap());
                 } else {
                     LOGGER.warn("Booking document not found for ID: {} listed in user '{}' flights", flightId, username);
                 }
+            } catch (TenantOverloadedException | AstraUnavailableException e) {
+                throw e;
             } catch (Exception e) {
                 LOGGER.error("Failed to retrieve individual booking for ID {} for user '{}': {}", flightId, username, e.getMessage(), e);
                 // Decide whether to continue or fail fast - continuing for now
+                complete = false;
             }
         }
         LOGGER.info("Retrieved {} booking documents individually for user '{}'", results.size(), username);
+        Set<Object> retrievedIds = results.stream().map(booking -> booking.get("_id")).collect(Collectors.toSet());
+        pendingBookings.stream().filter(booking -> !retrievedIds.contains(booking.get("_id"))).forEach(results::add);
+        if (complete) {
+            bookingCache.put(tenant, username, cacheStamp, results);
+        }
 
         return results;
     }
@@ -34,18 +34,35 @@ public class TokenService {
      * username.
      */
     public void verifyAuthenticationHeader(String authorization, String expectedUsername) {
-        String token = authorization.replaceFirst("Bearer ", "");
-        String tokenName;
-        if (useJwt) {
-            tokenName = verifyJwt(token);
-        } else {
-            tokenName = verifySimple(token);
-        }
+        String tokenName = verifiedUsername(authorization);
         if (!expectedUsername.equals(tokenName)) {
             throw new IllegalStateException("Token and username don't match");
         }
     }
 
+    /**
+     * @return whether the Authorization header carries a (not yet verified) bearer token.
+     */
+    public static boolean hasBearerToken(String authorization) {
+        return authorization != null && authorization.startsWith("Bearer ") && !authorization.substring(7).trim().isEmpty();
+    }
+
+    /**
+     * @return the username the Authorization header was issued for.
+     * @throws IllegalStateException when the header couldn't be verified.
+     */
+    public String verifiedUsername(String authorization) {
+        String token = authorization.replaceFirst("Bearer ", "").trim();
+        if (token.isEmpty()) {
+            throw new IllegalStateException("Empty bearer token");
+        }
+        if (useJwt) {
+            return verifyJwt(token);
+        } else {
+            return verifySimple(token);
+        }
+    }
+
     private String verifyJwt(String token) {
         try {
             String username = Jwts.parser()
@@ -54,7 +71,7 @@ public class TokenService {
                     .getBody()
                     .get("user", String.class);
             return username;
-        } catch (JwtException e) {
+        } catch (JwtException | IllegalArgumentException e) {
             throw new IllegalStateException("Could not verify JWT token", e);
         }
     }
@@ -0,0 +1,48 @@
+package trycb.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries signups between application instances, so each instance's {@link KnownUsers} filters
+ * learn about users created elsewhere without rebuilding. Implementations for a shared broker
+ * (Redis pub/sub, Pulsar, ...) plug in as a bean of this type.
+ */
+public interface UserSignupBus {
+
+    void publish(Signup signup);
+
+    void subscribe(Consumer<Signup> listener);
+
+    /**
+     * @return true if signups published here reach every instance.
+     */
+    boolean isShared();
+
+    /**
+     * A tenant user was created on the instance {@code origin}.
+     */
+    final class Signup {
+
+        private final String origin;
+        private final String tenant;
+        private final String username;
+
+        public Signup(String origin, String tenant, String username) {
+            this.origin = origin;
+            this.tenant = tenant;
+            this.username = username;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
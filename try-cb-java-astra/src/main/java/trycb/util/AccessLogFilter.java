@@ -0,0 +1,141 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+/**
+ * Structured access log: one line per request with request id, route template, status,
+ * latency and the number of remote (Astra) calls made, written through {@link AsyncAccessLog}.
+ *
+ * Request bodies are only captured for a sampled fraction of requests. When disabled the
+ * filter passes requests straight through without allocating. The time spent in the filter
+ * itself is tracked so its overhead can be watched under load over JMX.
+ */
+@ManagedResource(objectName = "trycb:type=AccessLog", description = "Asynchronous access log")
+public class AccessLogFilter implements Filter, DisposableBean {
+
+    static final String REQUEST_ID_HEADER = "X-Request-Id";
+    private static final int MAX_REQUEST_ID_LENGTH = 64;
+
+    private volatile boolean enabled;
+    private final double payloadSampleRate;
+    private final int maxPayloadLength;
+    private final AsyncAccessLog log;
+
+    private final String idPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong overheadNanos = new AtomicLong();
+
+    public AccessLogFilter(boolean enabled, double payloadSampleRate, int maxPayloadLength, int bufferSize) {
+        this.enabled = enabled;
+        this.payloadSampleRate = payloadSampleRate;
+        this.maxPayloadLength = maxPayloadLength;
+        this.log = new AsyncAccessLog(bufferSize);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        if (!enabled) {
+            chain.doFilter(req, res);
+            return;
+        }
+        long start = System.nanoTime();
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            requestId = idPrefix + Long.toString(nextId.incrementAndGet(), 36);
+        }
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        if (payloadSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < payloadSampleRate) {
+            request = new ContentCachingRequestWrapper(request, maxPayloadLength);
+        }
+        RemoteCalls.begin(requestId);
+
+        long chainStart = System.nanoTime();
+        long chainEnd = chainStart;
+        try {
+            chain.doFilter(request, response);
+            chainEnd = System.nanoTime();
+        } finally {
+            if (chainEnd == chainStart) {
+                chainEnd = System.nanoTime(); // Chain threw
+            }
+            int remoteCalls = RemoteCalls.end();
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            log.append(System.currentTimeMillis(), requestId, request.getMethod(),
+                    route != null ? route.toString() : request.getRequestURI(),
+                    response.getStatus(), chainEnd - start, remoteCalls, payloadOf(request));
+            requests.incrementAndGet();
+            overheadNanos.addAndGet((chainStart - start) + (System.nanoTime() - chainEnd));
+        }
+    }
+
+    private static String payloadOf(HttpServletRequest request) {
+        if (!(request instanceof ContentCachingRequestWrapper)) {
+            return null;
+        }
+        byte[] body = ((ContentCachingRequestWrapper) request).getContentAsByteArray();
+        return body.length == 0 ? null : new String(body, StandardCharsets.UTF_8);
+    }
+
+    @ManagedAttribute(description = "Whether requests are logged")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "Enable or disable the access log at runtime")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Requests logged")
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @ManagedAttribute(description = "Entries dropped because the ring buffer was full")
+    public long getDropped() {
+        return log.getDropped();
+    }
+
+    @ManagedAttribute(description = "Entries waiting to be written")
+    public long getPending() {
+        return log.getPending();
+    }
+
+    @ManagedAttribute(description = "Average time spent in the filter itself per request, in microseconds")
+    public double getAverageOverheadMicros() {
+        long count = requests.get();
+        return count == 0 ? 0.0 : overheadNanos.get() / 1000.0 / count;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void destroy() {
+        log.close();
+    }
+
+}
@@ -0,0 +1,149 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control for the API: limits in-flight requests with adaptive {@link GradientLimiter}s
+ * and sheds the excess with 503 + Retry-After.
+ *
+ * Every endpoint listed in {@code astra.admission.endpoints} ({@code /api/<resource>}) has its
+ * own limit; requests to any other API path share one fallback limit, so made-up paths cannot
+ * create limiters. All API requests also share a global limit. Endpoints listed in
+ * {@code astra.admission.priority-endpoints} (cheap lookups such as airports) may use the whole
+ * global limit, the rest only {@code astra.admission.low-priority-share} of it, so expensive
+ * requests such as hotel vector searches are shed first when the app is overloaded.
+ *
+ * Runs after the rate limit, so rate-limited requests never take an admission slot, and after
+ * the request deadline has been started.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+@ManagedResource(objectName = "trycb:type=AdmissionControl", description = "Adaptive concurrency limits per endpoint")
+public class AdmissionControlFilter implements Filter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControlFilter.class);
+    private static final String API_PREFIX = "/api/";
+    private static final String OTHER_ENDPOINTS = "/api/*";
+
+    private final boolean enabled;
+    private final Set<String> priorityEndpoints;
+    private final double lowPriorityShare;
+    private final String retryAfterSeconds;
+
+    private final GradientLimiter globalLimiter;
+    private final Map<String, GradientLimiter> endpointLimiters; // Fixed at startup
+    private final GradientLimiter otherLimiter;
+
+    public AdmissionControlFilter(@Value("${astra.admission.enabled:true}") boolean enabled,
+                                  @Value("${astra.admission.initial-limit:20}") int initialLimit,
+                                  @Value("${astra.admission.min-limit:4}") int minLimit,
+                                  @Value("${astra.admission.max-limit:200}") int maxLimit,
+                                  @Value("${astra.admission.global-max-limit:400}") int globalMaxLimit,
+                                  @Value("${astra.admission.endpoints:/api/airports,/api/flightPaths,/api/hotels,/api/tenants,/api/batch,/api/admin}") String[] endpoints,
+                                  @Value("${astra.admission.priority-endpoints:/api/airports}") String priorityEndpoints,
+                                  @Value("${astra.admission.low-priority-share:0.7}") double lowPriorityShare,
+                                  @Value("${astra.admission.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.enabled = enabled;
+        this.endpointLimiters = Arrays.stream(endpoints).map(String::trim).filter(s -> !s.isEmpty()).distinct()
+                .collect(Collectors.toUnmodifiableMap(Function.identity(),
+                        name -> new GradientLimiter(name, initialLimit, minLimit, maxLimit)));
+        this.otherLimiter = new GradientLimiter(OTHER_ENDPOINTS, initialLimit, minLimit, maxLimit);
+        this.priorityEndpoints = Arrays.stream(priorityEndpoints.split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toSet());
+        this.lowPriorityShare = lowPriorityShare;
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+        this.globalLimiter = new GradientLimiter("global", initialLimit * 4, minLimit, globalMaxLimit);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        String endpoint = enabled ? endpointOf(((HttpServletRequest) req).getRequestURI()) : null;
+        if (endpoint == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        GradientLimiter endpointLimiter = endpointLimiters.getOrDefault(endpoint, otherLimiter);
+        double share = priorityEndpoints.contains(endpoint) ? 1.0 : lowPriorityShare;
+        if (!globalLimiter.tryAcquire(share)) {
+            shed((HttpServletResponse) res, endpoint);
+            return;
+        }
+        if (!endpointLimiter.tryAcquire(1.0)) {
+            globalLimiter.release(0, false);
+            shed((HttpServletResponse) res, endpoint);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean sample = false;
+        try {
+            chain.doFilter(req, res);
+            // Only successful requests measure the service; fast failures would drag the RTT down
+            sample = ((HttpServletResponse) res).getStatus() < 500;
+        } finally {
+            long rtt = System.nanoTime() - start;
+            endpointLimiter.release(rtt, sample);
+            globalLimiter.release(rtt, sample);
+        }
+    }
+
+    // "/api/hotels/foo/bar" -> "/api/hotels"; null for anything outside the API
+    static String endpointOf(String uri) {
+        if (uri == null || !uri.startsWith(API_PREFIX)) {
+            return null;
+        }
+        int end = uri.indexOf('/', API_PREFIX.length());
+        return end < 0 ? uri : uri.substring(0, end);
+    }
+
+    private void shed(HttpServletResponse response, String endpoint) throws IOException {
+        LOGGER.debug("Shedding request to {}", endpoint);
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader("Retry-After", retryAfterSeconds);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"message\":\"Server overloaded, retry later\",\"code\":-1}");
+    }
+
+    @ManagedAttribute(description = "Current limit, in-flight requests, rejections and RTTs of the global and per-endpoint limiters")
+    public String[] getLimiterStats() {
+        return Stream.concat(
+                Stream.of(globalLimiter.toString()),
+                Stream.concat(endpointLimiters.values().stream(), Stream.of(otherLimiter)).map(GradientLimiter::toString).sorted())
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void destroy() {}
+
+}
@@ -0,0 +1,45 @@
+package trycb.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one remote Data API operation on a collection. Rows and bytes are only
+ * computed when the event is recorded.
+ */
+@Name("trycb.AstraCall")
+@Label("Astra Call")
+@Category({"trycb", "Astra"})
+@Description("Remote Data API collection operation")
+@StackTrace(false)
+public class AstraCallEvent extends jdk.jfr.Event {
+
+    @Label("Collection")
+    public String collection;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Filter Kind")
+    @Description("Shape of the filter, e.g. eq:_id, and(eq,eq), vectorize")
+    public String filterKind;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Bytes")
+    @Description("Approximate JSON size of the returned documents")
+    @DataAmount
+    public long bytes;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Request Id")
+    @Description("X-Request-Id of the request the call was made for, as in the access log")
+    public String requestId;
+}
@@ -0,0 +1,130 @@
+package trycb.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous access-log appender.
+ *
+ * Request threads copy the fields of an entry into a preallocated ring buffer slot and return;
+ * a single background thread formats the entries and writes them to the {@code trycb.access}
+ * logger. When the writer falls behind and the ring is full, entries are dropped and counted
+ * rather than blocking request threads.
+ */
+public class AsyncAccessLog {
+
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("trycb.access");
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncAccessLog.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two.
+     */
+    public AsyncAccessLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.writer = new Thread(this::drain, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void append(long timestamp, String requestId, String method, String route, int status,
+                       long latencyNanos, int remoteCalls, String payload) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.timestamp = timestamp;
+        slot.requestId = requestId;
+        slot.method = method;
+        slot.route = route;
+        slot.status = status;
+        slot.latencyNanos = latencyNanos;
+        slot.remoteCalls = remoteCalls;
+        slot.payload = payload;
+        slot.published = sequence; // Volatile write publishes the fields above
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        while (running || consumed < claimed.get()) {
+            long next = consumed;
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published != next) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            line.setLength(0);
+            line.append("ts=").append(slot.timestamp)
+                    .append(" id=").append(slot.requestId)
+                    .append(" method=").append(slot.method)
+                    .append(" route=").append(slot.route)
+                    .append(" status=").append(slot.status)
+                    .append(" latencyMs=").append(slot.latencyNanos / 1000 / 1000.0)
+                    .append(" remoteCalls=").append(slot.remoteCalls);
+            if (slot.payload != null) {
+                line.append(" payload=").append(slot.payload);
+            }
+            slot.requestId = null;
+            slot.route = null;
+            slot.payload = null;
+            consumed = next + 1; // Hands the slot back to producers
+            try {
+                ACCESS_LOG.info(line.toString());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to write access log entry: {}", e.getMessage());
+            }
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getPending() {
+        return claimed.get() - consumed;
+    }
+
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Slot {
+        volatile long published = -1;
+        long timestamp;
+        String requestId;
+        String method;
+        String route;
+        int status;
+        long latencyNanos;
+        int remoteCalls;
+        String payload;
+    }
+}
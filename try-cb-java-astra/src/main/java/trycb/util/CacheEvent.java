@@ -0,0 +1,37 @@
+package trycb.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a cache lookup (hit or miss).
+ */
+@Name("trycb.Cache")
+@Label("Cache Lookup")
+@Category({"trycb", "Cache"})
+@Description("Lookup in an application-level cache")
+@StackTrace(false)
+public class CacheEvent extends jdk.jfr.Event {
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Hit")
+    public boolean hit;
+
+    public static void record(String cache, String key, boolean hit) {
+        CacheEvent event = new CacheEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.key = key;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
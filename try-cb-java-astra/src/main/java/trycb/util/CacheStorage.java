@@ -0,0 +1,48 @@
+package trycb.util;
+
+/**
+ * Where a cache keeps its values: on the heap as they are ({@link HeapCacheStorage}) or
+ * serialized in off-heap slabs ({@link OffHeapCacheStorage}). Both are bounded, expire entries
+ * after a time since write and/or since last access, and are safe for concurrent use.
+ */
+public interface CacheStorage<V> extends AutoCloseable {
+
+    /**
+     * @return the value, or null if absent or expired.
+     */
+    V get(String key);
+
+    /**
+     * Stores the value, evicting other entries if the storage is full.
+     *
+     * @return false if the value could not be stored (any previous value is removed then).
+     */
+    boolean put(String key, V value);
+
+    void remove(String key);
+
+    /**
+     * Drops all expired entries; they are also dropped when read.
+     *
+     * @return the number of entries dropped.
+     */
+    int removeExpired();
+
+    void clear();
+
+    int size();
+
+    /**
+     * @return entries evicted for size or expired.
+     */
+    long getEvictions();
+
+    /**
+     * @return off-heap memory allocated for values, 0 for heap storage.
+     */
+    long getOffHeapBytes();
+
+    @Override
+    default void close() {
+    }
+}
@@ -31,9 +31,13 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+// Early in the chain, so responses short-circuited by later filters carry CORS headers too
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
 public class CorsFilter implements Filter {
 
     @Override
@@ -0,0 +1,77 @@
+package trycb.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Time budget of the request being served on the current thread.
+ *
+ * {@link DeadlineFilter} starts one per request; every remote call made while serving it checks
+ * the remaining budget, so once it is spent the rest of a multi-call chain fails fast instead
+ * of waiting for the client timeouts. Work handed to another thread carries the deadline along
+ * via {@link #propagate(Supplier)}.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @return the deadline of the current thread, or null outside of a request.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * @return milliseconds left on the current thread's deadline, {@link Long#MAX_VALUE} if there is none.
+     */
+    public static long remainingMillis() {
+        Deadline deadline = CURRENT.get();
+        return deadline == null ? Long.MAX_VALUE : deadline.remaining(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wraps a call so that it runs under the caller's deadline on whatever thread executes it.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> call) {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return call;
+        }
+        return () -> {
+            Deadline previous = CURRENT.get();
+            CURRENT.set(deadline);
+            try {
+                return call.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0, expiresAtNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+}
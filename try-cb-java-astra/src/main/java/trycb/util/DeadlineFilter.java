@@ -0,0 +1,62 @@
+package trycb.util;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts a {@link Deadline} for every request: {@code astra.request.deadline-ms}, or less if the
+ * client asks for it with an {@code X-Request-Timeout} header (milliseconds). Runs after the rate
+ * limit and before admission control, so every admitted request already has its deadline.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 4)
+public class DeadlineFilter implements Filter {
+
+    static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final long deadlineMs;
+
+    public DeadlineFilter(@Value("${astra.request.deadline-ms:8000}") long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        long budgetMs = deadlineMs;
+        String requested = ((HttpServletRequest) req).getHeader(TIMEOUT_HEADER);
+        if (requested != null) {
+            try {
+                budgetMs = Math.min(budgetMs, Math.max(0, Long.parseLong(requested.trim())));
+            } catch (NumberFormatException e) {
+                // Ignore malformed header, keep the server-side budget
+            }
+        }
+
+        Deadline.set(Deadline.after(budgetMs));
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            Deadline.set(null);
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void destroy() {}
+
+}
@@ -0,0 +1,84 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts and stops Java Flight Recorder recordings at runtime over JMX, with the JDK "profile"
+ * settings plus the trycb events ({@link AstraCallEvent}, {@link RequestPhaseEvent},
+ * {@link CacheEvent}). While no recording is running the events cost a disabled-check only.
+ */
+@Component
+@ManagedResource(objectName = "trycb:type=FlightRecordings", description = "Java Flight Recorder recordings")
+public class FlightRecordings implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecordings.class);
+
+    private Recording recording;
+
+    @ManagedOperation(description = "Start a recording of the given length (0 = until stopped), written to the given .jfr file")
+    public synchronized String start(long durationSeconds, String file) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return "Recording already running: " + recording.getDestination();
+        }
+        Path destination = Paths.get(file).toAbsolutePath();
+        recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("trycb");
+        recording.enable(AstraCallEvent.class);
+        recording.enable(RequestPhaseEvent.class);
+        recording.enable(CacheEvent.class);
+        recording.setDestination(destination);
+        if (durationSeconds > 0) {
+            recording.setDuration(Duration.ofSeconds(durationSeconds));
+        }
+        recording.start();
+        LOGGER.info("Started flight recording to {}", destination);
+        return "Recording to " + destination;
+    }
+
+    @ManagedOperation(description = "Stop the running recording and write it to its file")
+    public synchronized String stop() {
+        if (recording == null) {
+            return "No recording running";
+        }
+        if (recording.getState() != RecordingState.RUNNING) {
+            // Finished on its own (fixed duration) and already written
+            recording.close();
+            recording = null;
+            return "No recording running";
+        }
+        Path destination = recording.getDestination();
+        recording.stop(); // Writes the destination file
+        recording.close();
+        recording = null;
+        LOGGER.info("Stopped flight recording, written to {}", destination);
+        return "Written to " + destination;
+    }
+
+    @ManagedAttribute(description = "State of the current recording")
+    public synchronized String getState() {
+        return recording == null ? "NONE" : recording.getState() + " -> " + recording.getDestination();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (recording != null) {
+            stop(); // Flush what was recorded so far on shutdown
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package trycb.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive concurrency limit driven by measured latency (gradient algorithm).
+ *
+ * Completed requests are averaged over short sampling windows. Each window compares that
+ * short-term RTT with a slowly moving long-term RTT: while latency stays near the long-term
+ * level the limit grows by a queue allowance of sqrt(limit); once requests start queueing
+ * and latency rises, the gradient {@code tolerance * longRtt / shortRtt} drops below 1 and
+ * shrinks the limit proportionally.
+ */
+public class GradientLimiter {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final double LONG_RTT_WEIGHT = 1.0 / 100; // Long-term RTT follows ~100 windows
+    private static final double TOLERANCE = 1.5; // Latency increase tolerated before shrinking
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile double limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // Sampling window, guarded by this
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private double longRttNanos;
+    private double lastShortRttNanos;
+
+    public GradientLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Admits a request if fewer than {@code share} of the current limit are in flight. Callers
+     * with a share below 1 are shed first when the limit shrinks. Every admitted request must
+     * be followed by {@link #release(long, boolean)}.
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param rttNanos time the request took.
+     * @param sample   false if the latency says nothing about load (e.g. the request failed fast).
+     */
+    public void release(long rttNanos, boolean sample) {
+        int current = inFlight.getAndDecrement();
+        if (sample) {
+            update(rttNanos, current);
+        }
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtCompletion) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtCompletion);
+
+        long now = System.nanoTime();
+        if (now - windowStart < WINDOW_NANOS || windowSamples < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        double shortRtt = (double) windowRttSum / windowSamples;
+        int maxInFlight = windowMaxInFlight;
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+        lastShortRttNanos = shortRtt;
+
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+            return;
+        }
+        longRttNanos += (shortRtt - longRttNanos) * LONG_RTT_WEIGHT;
+        if (longRttNanos / shortRtt > 2) {
+            // Latency dropped well below the long-term level (e.g. after an incident): catch up faster
+            longRttNanos *= 0.95;
+        }
+
+        double current = limit;
+        if (maxInFlight < current / 2) {
+            // Traffic did not come close to the limit, so latency says nothing about it
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRtt));
+        double target = current * gradient + Math.sqrt(current);
+        limit = Math.max(minLimit, Math.min(maxLimit, current * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s limit=%d inFlight=%d accepted=%d rejected=%d shortRttMs=%.1f longRttMs=%.1f",
+                name, (int) limit, inFlight.get(), accepted.get(), rejected.get(),
+                lastShortRttNanos / 1_000_000.0, longRttNanos / 1_000_000.0);
+    }
+}
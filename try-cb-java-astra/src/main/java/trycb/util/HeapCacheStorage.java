@@ -0,0 +1,125 @@
+package trycb.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache storage holding values on the heap as they are, least recently used first out once
+ * there are more than {@code maxEntries}.
+ *
+ * Values are stored and returned by reference, so callers must not modify them after
+ * {@link #put} or {@link #get}.
+ */
+public class HeapCacheStorage<V> implements CacheStorage<V> {
+
+    private final long expireAfterAccessNanos;
+    private final long expireAfterWriteNanos;
+    private final Map<String, Stored<V>> entries; // Guarded by itself
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param expireAfterAccessNanos drop entries not read or written for this long, 0 for never.
+     * @param expireAfterWriteNanos  drop entries this long after they were written, 0 for never.
+     */
+    public HeapCacheStorage(int maxEntries, long expireAfterAccessNanos, long expireAfterWriteNanos) {
+        this.expireAfterAccessNanos = expireAfterAccessNanos;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.entries = new LinkedHashMap<String, Stored<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored<V>> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public V get(String key) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Stored<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (expired(entry, now)) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                return null;
+            }
+            entry.accessed = now;
+            return entry.value;
+        }
+    }
+
+    @Override
+    public boolean put(String key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Stored<>(value, System.nanoTime()));
+        }
+        return true;
+    }
+
+    @Override
+    public void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public int removeExpired() {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            int before = entries.size();
+            entries.values().removeIf(entry -> expired(entry, now));
+            int removed = before - entries.size();
+            evictions.addAndGet(removed);
+            return removed;
+        }
+    }
+
+    private boolean expired(Stored<V> entry, long now) {
+        return (expireAfterAccessNanos > 0 && now - entry.accessed > expireAfterAccessNanos)
+                || (expireAfterWriteNanos > 0 && now - entry.written > expireAfterWriteNanos);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return 0;
+    }
+
+    private static final class Stored<V> {
+        final V value;
+        final long written;
+        long accessed; // Guarded by the entries lock
+
+        Stored(V value, long written) {
+            this.value = value;
+            this.written = written;
+            this.accessed = written;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache storage keeping values serialized as Smile in off-heap slabs, with only the index on the
+ * heap. Large cached documents then neither fill the old generation nor have to be marked and
+ * copied by the collector.
+ *
+ * Slabs are direct buffers or, given a file, regions of that memory-mapped file (truncated on
+ * open, deleted on close), allocated when first written. They are written as a ring: a value goes
+ * to the current slab's write offset, and when it does not fit, writing moves on to the next slab
+ * and the entries still in it are evicted. Eviction is by size and oldest written first, except
+ * that a value read from the slab recycled next is written again at the head, so entries in use
+ * survive. Replaced and removed values leave dead bytes until their slab is recycled.
+ *
+ * Values are deserialized on every hit, so callers get their own copy, and never otherwise.
+ * Values larger than a slab are not stored.
+ */
+public class OffHeapCacheStorage<V> implements CacheStorage<V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapCacheStorage.class);
+    private static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+
+    private final int slabBytes;
+    private final FileChannel file; // Null for direct slabs
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final long expireAfterAccessNanos;
+    private final long expireAfterWriteNanos;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock (written under the write lock)
+    private final ByteBuffer[] slabs;
+    private final List<List<Slot>> slabSlots; // Slots written to each slab, including replaced ones
+    private final Map<String, Slot> index = new HashMap<>();
+    private int head; // Slab being written
+    private int headOffset;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * @param capacityBytes          total size of the slabs; at least two slabs are used.
+     * @param mappedFile             file to map the slabs from, null for direct buffers.
+     * @param expireAfterAccessNanos drop entries not read or written for this long, 0 for never.
+     * @param expireAfterWriteNanos  drop entries this long after they were written, 0 for never.
+     */
+    public OffHeapCacheStorage(long capacityBytes, int slabBytes, Path mappedFile, TypeReference<V> type,
+                               long expireAfterAccessNanos, long expireAfterWriteNanos) throws IOException {
+        int slabCount = (int) Math.max(2, capacityBytes / slabBytes);
+        this.slabBytes = (int) Math.min(slabBytes, capacityBytes / slabCount);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabSlots = new ArrayList<>(slabCount);
+        for (int i = 0; i < slabCount; i++) {
+            slabSlots.add(new ArrayList<>());
+        }
+        this.file = mappedFile == null ? null : FileChannel.open(mappedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        this.reader = SMILE.readerFor(type);
+        this.writer = SMILE.writerFor(type);
+        this.expireAfterAccessNanos = expireAfterAccessNanos;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+    }
+
+    @Override
+    public V get(String key) {
+        long now = System.nanoTime();
+        Slot slot;
+        byte[] bytes = null;
+        boolean promote = false;
+        lock.readLock().lock();
+        try {
+            slot = index.get(key);
+            if (slot == null) {
+                return null;
+            }
+            if (!expired(slot, now)) {
+                slot.accessed = now;
+                bytes = new byte[slot.length];
+                slabs[slot.slab].duplicate().position(slot.offset).get(bytes);
+                promote = slot.slab == (head + 1) % slabs.length;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (bytes == null || promote) {
+            lock.writeLock().lock();
+            try {
+                // Unless replaced meanwhile
+                if (index.get(key) == slot) {
+                    if (bytes == null) {
+                        index.remove(key);
+                        evictions.incrementAndGet();
+                    } else if (slot.slab == (head + 1) % slabs.length) {
+                        write(key, bytes, slot.written).accessed = now;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return reader.readValue(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt cache entry " + key, e);
+        }
+    }
+
+    @Override
+    public boolean put(String key, V value) {
+        byte[] bytes;
+        try {
+            bytes = writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Not caching {}: {}", key, e.getMessage());
+            bytes = null;
+        }
+        lock.writeLock().lock();
+        try {
+            if (bytes == null || bytes.length > slabBytes) {
+                rejections.incrementAndGet();
+                index.remove(key);
+                return false;
+            }
+            write(key, bytes, System.nanoTime());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private Slot write(String key, byte[] bytes, long written) {
+        if (headOffset + bytes.length > slabBytes) {
+            head = (head + 1) % slabs.length;
+            headOffset = 0;
+            recycle(head);
+        }
+        ByteBuffer slab = slabs[head];
+        if (slab == null) {
+            slab = slabs[head] = allocate(head);
+        }
+        slab.duplicate().position(headOffset).put(bytes);
+        Slot slot = new Slot(key, head, headOffset, bytes.length, written);
+        headOffset += bytes.length;
+        slabSlots.get(head).add(slot);
+        index.put(key, slot);
+        return slot;
+    }
+
+    private void recycle(int slab) {
+        List<Slot> slots = slabSlots.get(slab);
+        for (Slot slot : slots) {
+            if (index.get(slot.key) == slot) {
+                index.remove(slot.key);
+                evictions.incrementAndGet();
+            }
+        }
+        slots.clear();
+    }
+
+    private ByteBuffer allocate(int slab) {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(slabBytes);
+        }
+        try {
+            return file.map(FileChannel.MapMode.READ_WRITE, (long) slab * slabBytes, slabBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map cache slab " + slab, e);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            // The bytes stay until the slab is recycled
+            index.remove(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int removeExpired() {
+        long now = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            int before = index.size();
+            index.values().removeIf(slot -> expired(slot, now));
+            int removed = before - index.size();
+            evictions.addAndGet(removed);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean expired(Slot slot, long now) {
+        return (expireAfterAccessNanos > 0 && now - slot.accessed > expireAfterAccessNanos)
+                || (expireAfterWriteNanos > 0 && now - slot.written > expireAfterWriteNanos);
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            slabSlots.forEach(List::clear);
+            head = 0;
+            headOffset = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return values not stored because they were larger than a slab or not serializable.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long allocated = 0;
+            for (ByteBuffer slab : slabs) {
+                allocated += slab == null ? 0 : slabBytes;
+            }
+            return allocated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes of the values currently stored, without the dead bytes of replaced ones.
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return index.values().stream().mapToLong(slot -> slot.length).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Direct buffers are freed once collected, the mapped file is deleted when closed
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            Arrays.fill(slabs, null);
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not close cache file: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Slot {
+        final String key;
+        final int slab;
+        final int offset;
+        final int length;
+        final long written;
+        volatile long accessed; // Also updated under the read lock
+
+        Slot(String key, int slab, int offset, int length, long written) {
+            this.key = key;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.written = written;
+            this.accessed = written;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import trycb.service.TokenService;
+
+/**
+ * Rate limits per route, client and user with {@link TokenBuckets}; requests over the limit get
+ * 429 + Retry-After.
+ *
+ * Routes are configured in {@code rate-limit.rules} as {@code <ant pattern>|<requests per second>|<burst>},
+ * the first matching rule applies and other routes are not limited. Each client IP has its own
+ * bucket per rule, and so has each user of a request with a valid Authorization header, so a user
+ * spreading requests over many addresses is limited as well; a request whose bearer token does
+ * not verify gets 401. Runs after the reference response cache, so cached responses are never
+ * limited. Endpoints also reachable another way (sub-queries of {@code /api/batch}) are charged
+ * through {@link #chargerFor}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+@ManagedResource(objectName = "trycb:type=RateLimit", description = "Per-route, per-client and per-user rate limits")
+public class RateLimitFilter implements Filter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitFilter.class);
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final boolean enabled;
+    private final boolean trustForwardedFor;
+    private final TokenService tokenService;
+    private final List<Rule> rules;
+
+    public RateLimitFilter(TokenService tokenService,
+                           @Value("${rate-limit.enabled:true}") boolean enabled,
+                           @Value("${rate-limit.rules:}") String[] rules,
+                           @Value("${rate-limit.max-keys:100000}") int maxKeys,
+                           @Value("${rate-limit.trust-forwarded-for:false}") boolean trustForwardedFor) {
+        this.tokenService = tokenService;
+        this.enabled = enabled;
+        this.trustForwardedFor = trustForwardedFor;
+        this.rules = Arrays.stream(rules).map(String::trim).filter(r -> !r.isEmpty())
+                .map(r -> Rule.parse(r, maxKeys)).collect(Collectors.toList());
+        LOGGER.info("Rate limiting {} for {}", enabled ? "enabled" : "disabled", this.rules);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        Rule rule = enabled ? match(request.getRequestURI()) : null;
+        if (rule == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        String user;
+        try {
+            user = authenticatedUser(request);
+        } catch (IllegalStateException e) {
+            reject((HttpServletResponse) res, HttpStatus.UNAUTHORIZED, "Invalid bearer token");
+            return;
+        }
+        long waitNanos = acquire(rule, clientAddress(request), user);
+        if (waitNanos > 0) {
+            limit((HttpServletResponse) res, waitNanos);
+            return;
+        }
+        chain.doFilter(req, res);
+    }
+
+    /**
+     * Charges the request's client and user for calls of other endpoints made on its behalf, as
+     * if each had been requested directly. An unverified bearer token only charges the client.
+     *
+     * @return for the URI of an endpoint: 0 if the call is allowed, otherwise the nanoseconds until it would be.
+     */
+    public ToLongFunction<String> chargerFor(HttpServletRequest request) {
+        if (!enabled) {
+            return uri -> 0;
+        }
+        String address = clientAddress(request);
+        String verifiedUser;
+        try {
+            verifiedUser = authenticatedUser(request);
+        } catch (IllegalStateException e) {
+            verifiedUser = null;
+        }
+        String user = verifiedUser;
+        return uri -> {
+            Rule rule = match(uri);
+            return rule == null ? 0 : acquire(rule, address, user);
+        };
+    }
+
+    private long acquire(Rule rule, String address, String user) {
+        long waitNanos = rule.buckets.tryAcquire("ip:" + address);
+        if (waitNanos == 0 && user != null) {
+            waitNanos = rule.buckets.tryAcquire("user:" + user);
+        }
+        (waitNanos > 0 ? rule.limited : rule.allowed).increment();
+        return waitNanos;
+    }
+
+    private Rule match(String uri) {
+        for (Rule rule : rules) {
+            if (MATCHER.match(rule.pattern, uri)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        String forwardedFor = trustForwardedFor ? request.getHeader("X-Forwarded-For") : null;
+        if (StringUtils.hasText(forwardedFor)) {
+            int comma = forwardedFor.indexOf(',');
+            return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Only verified tokens count, so nobody can use up another user's budget.
+     *
+     * @return null without a bearer token.
+     * @throws IllegalStateException if the bearer token does not verify.
+     */
+    private String authenticatedUser(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return tokenService.verifiedUsername(authorization);
+    }
+
+    private void limit(HttpServletResponse response, long waitNanos) throws IOException {
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds(waitNanos)));
+        reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests, retry later");
+    }
+
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"message\":\"" + message + "\",\"code\":-1}");
+    }
+
+    @ManagedAttribute(description = "Allowed and limited requests and tracked keys per rule")
+    public String[] getRuleStats() {
+        return rules.stream().map(rule -> String.format("%s allowed=%d limited=%d keys=%d",
+                rule, rule.allowed.sum(), rule.limited.sum(), rule.buckets.size())).toArray(String[]::new);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void destroy() {}
+
+    private static final class Rule {
+
+        final String pattern;
+        final String limit;
+        final TokenBuckets buckets;
+        final LongAdder allowed = new LongAdder();
+        final LongAdder limited = new LongAdder();
+
+        private Rule(String pattern, String limit, TokenBuckets buckets) {
+            this.pattern = pattern;
+            this.limit = limit;
+            this.buckets = buckets;
+        }
+
+        static Rule parse(String rule, int maxKeys) {
+            String[] parts = rule.split("\\|");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Rate limit rule must be <pattern>|<requests per second>|<burst>: " + rule);
+            }
+            double perSecond = Double.parseDouble(parts[1].trim());
+            int burst = Integer.parseInt(parts[2].trim());
+            return new Rule(parts[0].trim(), perSecond + "/s burst " + burst, new TokenBuckets(perSecond, burst, maxKeys));
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " " + limit;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Serialized-response cache with content-hash ETags for reference data endpoints
+ * (airports, flight paths).
+ *
+ * The first GET for a URL is serialized as usual and its bytes are kept for
+ * {@code http-cache.ttl-seconds} together with an MD5 ETag. Until then, repeat requests are
+ * answered from those bytes, or with 304 Not Modified if the client (or CDN) already holds
+ * the same ETag, so neither Astra nor the JSON serializer is involved. Every response also
+ * gets the Cache-Control policy of its endpoint.
+ *
+ * Only 200 responses are cached, and services fail instead of returning partial results when
+ * Astra errors. Controllers mark results that are no final answer, such as empty ones (the data
+ * may still be missing), with {@link #doNotCache()}. Those and every other response (errors,
+ * including the 429s and 503s of the filters after this one) carry {@code no-store} instead of
+ * the endpoint's policy, so no shared cache keeps them.
+ *
+ * Responses are cached per encoding the Accept header selects (JSON, Smile, CBOR), and carry
+ * {@code Vary: Accept} so shared caches keep the encodings apart as well.
+ */
+@ManagedResource(objectName = "trycb:type=ReferenceResponseCache", description = "Cached reference data responses")
+public class ReferenceResponseFilter implements Filter {
+
+    private static final String DO_NOT_CACHE = ReferenceResponseFilter.class.getName() + ".doNotCache";
+    private static final String NO_STORE = "no-store";
+
+    private final Map<String, String> cacheControlByPrefix;
+    private final List<MediaType> encodings;
+    private final long ttlNanos;
+    private final Map<String, CachedResponse> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param cacheControlByPrefix Cache-Control header value per path prefix, e.g. "/api/airports".
+     * @param encodings            Media types the responses are negotiated between, the default first.
+     */
+    public ReferenceResponseFilter(Map<String, String> cacheControlByPrefix, List<MediaType> encodings,
+                                   long ttlSeconds, int maxEntries) {
+        this.cacheControlByPrefix = cacheControlByPrefix;
+        this.encodings = encodings;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        String cacheControl = cacheControlOf(request.getRequestURI());
+        if (cacheControl == null || !"GET".equals(request.getMethod())) {
+            chain.doFilter(req, res);
+            return;
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+        String key = encodingOf(request) + " " + (request.getQueryString() == null
+                ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString());
+        CachedResponse entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.createdAt < ttlNanos) {
+            hits.incrementAndGet();
+            CacheEvent.record("response", key, true);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            write(request, response, entry);
+            return;
+        }
+        misses.incrementAndGet();
+        CacheEvent.record("response", key, false);
+
+        // Until the outcome is known: responses committed early through sendError keep this one
+        response.setHeader(HttpHeaders.CACHE_CONTROL, NO_STORE);
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(req, wrapper);
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK || request.getAttribute(DO_NOT_CACHE) != null) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        wrapper.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        byte[] body = wrapper.getContentAsByteArray();
+        entry = new CachedResponse(body, wrapper.getContentType(), "\"" + DigestUtils.md5DigestAsHex(body) + "\"");
+        entries.put(key, entry);
+        wrapper.resetBuffer();
+        write(request, wrapper, entry);
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * Keeps the response to the current request out of this cache and out of shared caches.
+     */
+    public static void doNotCache() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(DO_NOT_CACHE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private void write(HttpServletRequest request, HttpServletResponse response, CachedResponse entry) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, entry.etag);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(entry.etag) || ifNoneMatch.trim().equals("*"))) {
+            notModified.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (entry.contentType != null) {
+            response.setContentType(entry.contentType);
+        }
+        response.setContentLength(entry.body.length);
+        response.getOutputStream().write(entry.body);
+    }
+
+    // The encoding content negotiation will pick, so a cached Smile body is never served to a JSON client
+    private MediaType encodingOf(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept != null) {
+            try {
+                List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+                MediaType.sortBySpecificityAndQuality(accepted);
+                for (MediaType type : accepted) {
+                    for (MediaType encoding : encodings) {
+                        if (type.isCompatibleWith(encoding)) {
+                            return encoding;
+                        }
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                // Rejected by the controller, whichever the key
+            }
+        }
+        return encodings.get(0);
+    }
+
+    private String cacheControlOf(String uri) {
+        for (Map.Entry<String, String> policy : cacheControlByPrefix.entrySet()) {
+            if (uri.startsWith(policy.getKey())) {
+                return policy.getValue();
+            }
+        }
+        return null;
+    }
+
+    @ManagedOperation(description = "Drop all cached responses, e.g. after reference data was reloaded")
+    public void clear() {
+        entries.clear();
+    }
+
+    @ManagedAttribute(description = "Responses served from the cache (including 304s)")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Responses answered with 304 Not Modified")
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    @ManagedAttribute(description = "Responses that had to be generated")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Cached responses")
+    public int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void destroy() {}
+
+    private static final class CachedResponse {
+        final byte[] body;
+        final String contentType;
+        final String etag;
+        final long createdAt = System.nanoTime();
+
+        CachedResponse(byte[] body, String contentType, String etag) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+    }
+}
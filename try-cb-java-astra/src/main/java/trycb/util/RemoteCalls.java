@@ -0,0 +1,73 @@
+package trycb.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Id and count of remote calls of the request being served on the current thread, reported in
+ * the access log and on JFR events. Counting only happens between {@link #begin(String)} and
+ * {@link #end()}; outside of that, {@link #increment()} is a no-op and allocates nothing. Work
+ * handed to another thread carries the request along via {@link #propagate(Supplier)}.
+ */
+public final class RemoteCalls {
+
+    private static final ThreadLocal<RemoteCalls> CURRENT = new ThreadLocal<>();
+
+    private final String requestId;
+    private final AtomicInteger count = new AtomicInteger(); // Also counted by threads the request's work was handed to
+
+    private RemoteCalls(String requestId) {
+        this.requestId = requestId;
+    }
+
+    static void begin(String requestId) {
+        CURRENT.set(new RemoteCalls(requestId));
+    }
+
+    /**
+     * @return the number of remote calls counted since {@link #begin(String)}.
+     */
+    static int end() {
+        RemoteCalls current = CURRENT.get();
+        if (current == null) {
+            return 0;
+        }
+        CURRENT.set(null); // Keeps the thread's map entry, unlike remove()
+        return current.count.get();
+    }
+
+    public static void increment() {
+        RemoteCalls current = CURRENT.get();
+        if (current != null) {
+            current.count.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the access log id of the request served on the current thread, null outside of one.
+     */
+    public static String requestId() {
+        RemoteCalls current = CURRENT.get();
+        return current == null ? null : current.requestId;
+    }
+
+    /**
+     * Wraps a call so that its remote calls count towards the caller's request on whatever
+     * thread executes it.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> call) {
+        RemoteCalls current = CURRENT.get();
+        if (current == null) {
+            return call;
+        }
+        return () -> {
+            RemoteCalls previous = CURRENT.get();
+            CURRENT.set(current);
+            try {
+                return call.get();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package trycb.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one phase of serving a request, e.g. the route fetch of a flight path search.
+ */
+@Name("trycb.RequestPhase")
+@Label("Request Phase")
+@Category({"trycb", "Request"})
+@Description("Phase of a multi-step request")
+@StackTrace(false)
+public class RequestPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Request")
+    public String request;
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Request Id")
+    @Description("X-Request-Id of the request, as in the access log")
+    public String requestId;
+
+    /**
+     * Starts timing a phase; {@link #commit()} it when the phase is done.
+     */
+    public static RequestPhaseEvent start(String request, String phase) {
+        RequestPhaseEvent event = new RequestPhaseEvent();
+        if (event.isEnabled()) {
+            event.request = request;
+            event.phase = phase;
+            event.requestId = RemoteCalls.requestId();
+            event.begin();
+        }
+        return event;
+    }
+}
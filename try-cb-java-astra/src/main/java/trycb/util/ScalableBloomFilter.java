@@ -0,0 +1,158 @@
+package trycb.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of strings that grows with its content (a scalable Bloom filter).
+ *
+ * It starts with one stage sized for {@code initialCapacity} keys; once a stage is full, keys go
+ * to a new stage twice as large with half the false-positive rate, so the overall rate stays
+ * below {@code falsePositiveRate} however many keys are added. {@link #mightContain} never
+ * answers false for a key that was added. Safe for concurrent use.
+ */
+public class ScalableBloomFilter {
+
+    private static final double TIGHTENING = 0.5; // False-positive rate ratio of consecutive stages
+
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        stages.add(new Stage(Math.max(1, initialCapacity), falsePositiveRate * (1 - TIGHTENING)));
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                return; // Already (or seemingly) present, do not use up capacity
+            }
+        }
+        current().put(hash);
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Stage current() {
+        Stage last = stages.get(stages.size() - 1);
+        if (last.count.get() < last.capacity) {
+            return last;
+        }
+        synchronized (stages) {
+            last = stages.get(stages.size() - 1);
+            if (last.count.get() >= last.capacity) {
+                last = new Stage(last.capacity * 2, last.targetRate * TIGHTENING);
+                stages.add(last);
+            }
+            return last;
+        }
+    }
+
+    /**
+     * @return the number of keys added (keys that seemed present already are not counted).
+     */
+    public long getCount() {
+        return stages.stream().mapToLong(stage -> stage.count.get()).sum();
+    }
+
+    /**
+     * @return the expected false-positive rate for the keys added so far.
+     */
+    public double getFalsePositiveRate() {
+        double allNegative = 1.0;
+        for (Stage stage : stages) {
+            allNegative *= 1 - stage.falsePositiveRate();
+        }
+        return 1 - allNegative;
+    }
+
+    public long getMemoryBytes() {
+        return stages.stream().mapToLong(stage -> stage.bits.length() * 8L).sum();
+    }
+
+    public int getStages() {
+        return stages.size();
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes with a Murmur3 finalizer; its halves seed the double hashing
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+
+        final long capacity;
+        final double targetRate;
+        final long bitCount;
+        final int hashes;
+        final AtomicLongArray bits;
+        final AtomicLong count = new AtomicLong();
+
+        Stage(long capacity, double targetRate) {
+            this.capacity = capacity;
+            this.targetRate = targetRate;
+            // Optimal sizing: m = -n ln(p) / ln(2)^2 bits, k = m/n ln(2) hashes
+            long words = Math.max(1, (long) Math.ceil(-capacity * Math.log(targetRate) / (Math.log(2) * Math.log(2)) / 64));
+            this.bits = new AtomicLongArray(Math.toIntExact(words));
+            this.bitCount = words * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long bit = index(h1, h2, i);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                long current;
+                while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    // Another key set a bit of the same word, retry
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        boolean contains(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long bit = index(h1, h2, i);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Double hashing: the i-th bit is h1 + i * h2
+        private long index(int h1, int h2, int i) {
+            return Math.floorMod(h1 + (long) i * h2, bitCount);
+        }
+
+        double falsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * count.get() / bitCount), hashes);
+        }
+    }
+}
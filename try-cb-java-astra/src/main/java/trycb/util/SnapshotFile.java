@@ -0,0 +1,418 @@
+package trycb.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the airport, airline and route reference data, read through a
+ * memory-mapped file so lookups need neither Astra nor a warm-up.
+ *
+ * Layout (big-endian): a 64-byte header (magic, format version, creation time, record counts,
+ * body length and a CRC32 of the rest of the file), then fixed-width records and indexes, then the string
+ * table. Strings are stored once and referenced by number (-1 for none).
+ * <pre>
+ *   airports   32 bytes each: id, faa, icao, name,
+ *                             latitude, longitude (doubles)  sorted by faa
+ *   icao index  4 bytes each: airport record number         sorted by icao
+ *   name index  4 bytes each: airport record number         sorted by name
+ *   airlines    8 bytes each: id, name                      sorted by id
+ *   routes     24 bytes each: source, destination, airline id, equipment,
+ *                             first schedule, schedule count  sorted by (source, destination)
+ *   schedules  12 bytes each: day, utc, flight
+ *   strings    (count + 1) 4-byte offsets into the UTF-8 bytes that follow
+ * </pre>
+ * Instances are immutable and safe for concurrent use.
+ */
+public final class SnapshotFile {
+
+    public static final int VERSION = 2; // 2: airport coordinates
+
+    private static final long MAGIC = 0x5452594342534E50L; // "TRYCBSNP"
+    private static final int HEADER_BYTES = 64;
+    private static final int AIRPORT_BYTES = 32;
+    private static final int AIRLINE_BYTES = 8;
+    private static final int ROUTE_BYTES = 24;
+    private static final int SCHEDULE_BYTES = 12;
+    private static final int NONE = -1;
+    private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final ByteBuffer buffer;
+    private final long createdAt;
+    private final int airportCount;
+    private final int airlineCount;
+    private final int routeCount;
+    private final int scheduleCount;
+    private final int stringCount;
+    // Section offsets
+    private final int airports;
+    private final int icaoIndex;
+    private final int nameIndex;
+    private final int airlines;
+    private final int routes;
+    private final int schedules;
+    private final int stringOffsets;
+    private final int stringBytes;
+
+    private SnapshotFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.createdAt = buffer.getLong(16);
+        this.airportCount = buffer.getInt(24);
+        this.airlineCount = buffer.getInt(28);
+        this.routeCount = buffer.getInt(32);
+        this.scheduleCount = buffer.getInt(36);
+        this.stringCount = buffer.getInt(40);
+        this.airports = HEADER_BYTES;
+        this.icaoIndex = airports + airportCount * AIRPORT_BYTES;
+        this.nameIndex = icaoIndex + airportCount * 4;
+        this.airlines = nameIndex + airportCount * 4;
+        this.routes = airlines + airlineCount * AIRLINE_BYTES;
+        this.schedules = routes + routeCount * ROUTE_BYTES;
+        this.stringOffsets = schedules + scheduleCount * SCHEDULE_BYTES;
+        this.stringBytes = stringOffsets + (stringCount + 1) * 4;
+    }
+
+    /**
+     * Maps and validates a snapshot.
+     *
+     * @throws IOException if the file cannot be read, is of another format version or is corrupt.
+     */
+    public static SnapshotFile open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a reference snapshot: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after close
+        }
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a reference snapshot: " + file);
+        }
+        int version = buffer.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("Unsupported reference snapshot version " + version + " (expected " + VERSION + "): " + file);
+        }
+        long bodyLength = buffer.getLong(48);
+        if (HEADER_BYTES + bodyLength != buffer.capacity()) {
+            throw new IOException("Truncated reference snapshot: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(slice(buffer, 0, 56));
+        crc.update(slice(buffer, HEADER_BYTES, buffer.capacity()));
+        if (crc.getValue() != buffer.getLong(56)) {
+            throw new IOException("Reference snapshot checksum mismatch: " + file);
+        }
+        SnapshotFile snapshot = new SnapshotFile(buffer);
+        if (snapshot.stringBytes + snapshot.stringOffset(snapshot.stringCount) != buffer.capacity()) {
+            throw new IOException("Inconsistent reference snapshot: " + file);
+        }
+        return snapshot;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(from).limit(to);
+        return slice;
+    }
+
+    public List<Airport> airportsByFaa(String faa) {
+        List<Airport> found = new ArrayList<>();
+        for (int i = lowerBound(airportCount, this::airportFaa, faa); i < airportCount && faa.equals(airportFaa(i)); i++) {
+            found.add(airport(i));
+        }
+        return found;
+    }
+
+    public List<Airport> airportsByIcao(String icao) {
+        List<Airport> found = new ArrayList<>();
+        IntFunction<String> icaoAt = i -> string(buffer.getInt(airports + buffer.getInt(icaoIndex + i * 4) * AIRPORT_BYTES + 8));
+        for (int i = lowerBound(airportCount, icaoAt, icao); i < airportCount && icao.equals(icaoAt.apply(i)); i++) {
+            found.add(airport(buffer.getInt(icaoIndex + i * 4)));
+        }
+        return found;
+    }
+
+    public Optional<Airport> airportByName(String name) {
+        IntFunction<String> nameAt = i -> string(buffer.getInt(airports + buffer.getInt(nameIndex + i * 4) * AIRPORT_BYTES + 12));
+        int i = lowerBound(airportCount, nameAt, name);
+        return i < airportCount && name.equals(nameAt.apply(i))
+                ? Optional.of(airport(buffer.getInt(nameIndex + i * 4)))
+                : Optional.empty();
+    }
+
+    public Optional<String> airlineName(String id) {
+        IntFunction<String> idAt = i -> string(buffer.getInt(airlines + i * AIRLINE_BYTES));
+        int i = lowerBound(airlineCount, idAt, id);
+        return i < airlineCount && id.equals(idAt.apply(i))
+                ? Optional.ofNullable(string(buffer.getInt(airlines + i * AIRLINE_BYTES + 4)))
+                : Optional.empty();
+    }
+
+    public List<Route> routes(String source, String destination) {
+        String key = routeKey(source, destination);
+        IntFunction<String> keyAt = i -> routeKey(string(buffer.getInt(routes + i * ROUTE_BYTES)), string(buffer.getInt(routes + i * ROUTE_BYTES + 4)));
+        List<Route> found = new ArrayList<>();
+        for (int i = lowerBound(routeCount, keyAt, key); i < routeCount && key.equals(keyAt.apply(i)); i++) {
+            int record = routes + i * ROUTE_BYTES;
+            List<Schedule> schedule = new ArrayList<>();
+            int first = buffer.getInt(record + 16);
+            for (int s = first; s < first + buffer.getInt(record + 20); s++) {
+                int entry = schedules + s * SCHEDULE_BYTES;
+                schedule.add(new Schedule(buffer.getInt(entry), string(buffer.getInt(entry + 4)), string(buffer.getInt(entry + 8))));
+            }
+            found.add(new Route(source, destination, string(buffer.getInt(record + 8)), string(buffer.getInt(record + 12)), schedule));
+        }
+        return found;
+    }
+
+    private Airport airport(int i) {
+        int record = airports + i * AIRPORT_BYTES;
+        return new Airport(string(buffer.getInt(record)), string(buffer.getInt(record + 4)),
+                string(buffer.getInt(record + 8)), string(buffer.getInt(record + 12)),
+                buffer.getDouble(record + 16), buffer.getDouble(record + 24));
+    }
+
+    private String airportFaa(int i) {
+        return string(buffer.getInt(airports + i * AIRPORT_BYTES + 4));
+    }
+
+    private int stringOffset(int ref) {
+        return buffer.getInt(stringOffsets + ref * 4);
+    }
+
+    private String string(int ref) {
+        if (ref == NONE) {
+            return null;
+        }
+        int start = stringOffset(ref);
+        byte[] bytes = new byte[stringOffset(ref + 1) - start];
+        ByteBuffer view = buffer.duplicate(); // Absolute bulk reads need JDK 13
+        view.position(stringBytes + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // First index whose key is not less than the target; null keys sort first
+    private static int lowerBound(int count, IntFunction<String> keyAt, String target) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (NULLS_FIRST.compare(keyAt.apply(mid), target) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String routeKey(String source, String destination) {
+        return source + '\u0000' + destination;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getAirportCount() {
+        return airportCount;
+    }
+
+    public int getAirlineCount() {
+        return airlineCount;
+    }
+
+    public int getRouteCount() {
+        return routeCount;
+    }
+
+    public int getSizeBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Writes a snapshot, replacing the file atomically.
+     */
+    public static void write(Path file, List<Airport> airportList, List<Airline> airlineList, List<Route> routeList) throws IOException {
+        StringTable strings = new StringTable();
+        List<Airport> byFaa = new ArrayList<>(airportList);
+        byFaa.sort(Comparator.comparing((Airport a) -> a.faa, NULLS_FIRST));
+        List<Airline> byId = new ArrayList<>(airlineList);
+        byId.sort(Comparator.comparing((Airline a) -> a.id, NULLS_FIRST));
+        List<Route> byKey = new ArrayList<>(routeList);
+        byKey.sort(Comparator.comparing((Route r) -> routeKey(r.source, r.destination)));
+        int scheduleTotal = byKey.stream().mapToInt(r -> r.schedule.size()).sum();
+
+        ByteBuffer records = ByteBuffer.allocate(byFaa.size() * (AIRPORT_BYTES + 8) + byId.size() * AIRLINE_BYTES
+                + byKey.size() * ROUTE_BYTES + scheduleTotal * SCHEDULE_BYTES);
+        for (Airport airport : byFaa) {
+            records.putInt(strings.ref(airport.id)).putInt(strings.ref(airport.faa))
+                    .putInt(strings.ref(airport.icao)).putInt(strings.ref(airport.name))
+                    .putDouble(airport.latitude).putDouble(airport.longitude);
+        }
+        putIndex(records, byFaa, a -> a.icao);
+        putIndex(records, byFaa, a -> a.name);
+        for (Airline airline : byId) {
+            records.putInt(strings.ref(airline.id)).putInt(strings.ref(airline.name));
+        }
+        int nextSchedule = 0;
+        for (Route route : byKey) {
+            records.putInt(strings.ref(route.source)).putInt(strings.ref(route.destination))
+                    .putInt(strings.ref(route.airlineId)).putInt(strings.ref(route.equipment))
+                    .putInt(nextSchedule).putInt(route.schedule.size());
+            nextSchedule += route.schedule.size();
+        }
+        for (Route route : byKey) {
+            for (Schedule schedule : route.schedule) {
+                records.putInt(schedule.day).putInt(strings.ref(schedule.utc)).putInt(strings.ref(schedule.flight));
+            }
+        }
+        records.flip();
+
+        ByteBuffer offsets = ByteBuffer.allocate((strings.values.size() + 1) * 4);
+        int offset = 0;
+        List<byte[]> encoded = new ArrayList<>(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            offsets.putInt(offset);
+            offset += bytes.length;
+            encoded.add(bytes);
+        }
+        offsets.putInt(offset);
+        offsets.flip();
+        ByteBuffer stringData = ByteBuffer.allocate(offset);
+        encoded.forEach(stringData::put);
+        stringData.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putLong(MAGIC).putInt(VERSION).putInt(0).putLong(System.currentTimeMillis())
+                .putInt(byFaa.size()).putInt(byId.size()).putInt(byKey.size()).putInt(scheduleTotal)
+                .putInt(strings.values.size()).putInt(0)
+                .putLong((long) records.remaining() + offsets.remaining() + stringData.remaining());
+        CRC32 crc = new CRC32();
+        crc.update(slice(header, 0, 56));
+        crc.update(records.duplicate());
+        crc.update(offsets.duplicate());
+        crc.update(stringData.duplicate());
+        header.putLong(crc.getValue());
+        header.flip();
+
+        // Unique, so instances exporting to a shared volume at the same time do not write into each other's file
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer part : new ByteBuffer[] {header, records, offsets, stringData}) {
+                    while (part.hasRemaining()) {
+                        out.write(part);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void putIndex(ByteBuffer records, List<Airport> byFaa, Function<Airport, String> key) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < byFaa.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> key.apply(byFaa.get(i)), NULLS_FIRST));
+        order.forEach(records::putInt);
+    }
+
+    private static final class StringTable {
+
+        final Map<String, Integer> refs = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            return refs.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+    }
+
+    public static final class Airport {
+
+        public final String id;
+        public final String faa;
+        public final String icao;
+        public final String name;
+        public final double latitude;  // NaN if unknown
+        public final double longitude; // NaN if unknown
+
+        public Airport(String id, String faa, String icao, String name, double latitude, double longitude) {
+            this.id = id;
+            this.faa = faa;
+            this.icao = icao;
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public static final class Airline {
+
+        public final String id;
+        public final String name;
+
+        public Airline(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    public static final class Route {
+
+        public final String source;
+        public final String destination;
+        public final String airlineId;
+        public final String equipment;
+        public final List<Schedule> schedule;
+
+        public Route(String source, String destination, String airlineId, String equipment, List<Schedule> schedule) {
+            this.source = source;
+            this.destination = destination;
+            this.airlineId = airlineId;
+            this.equipment = equipment;
+            this.schedule = schedule;
+        }
+    }
+
+    public static final class Schedule {
+
+        public final int day;
+        public final String utc;
+        public final String flight;
+
+        public Schedule(int day, String utc, String flight) {
+            this.day = day;
+            this.utc = utc;
+            this.flight = flight;
+        }
+    }
+}
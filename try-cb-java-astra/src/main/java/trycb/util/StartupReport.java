@@ -0,0 +1,92 @@
+package trycb.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs where startup time went once the application is ready: JVM start to ready, time per
+ * startup phase (Spring's startup steps) and the slowest bean creations (durations include the
+ * beans they depend on). Needs the {@link BufferingApplicationStartup} set up in
+ * {@code Application.main}.
+ *
+ * With {@code startup.exit-after-ready} the application exits right after the report, e.g. for
+ * the training run of the class-data-sharing archive (the {@code appcds} Maven profile).
+ */
+@Component
+@ManagedResource(objectName = "trycb:type=StartupReport", description = "Startup phase timings")
+public class StartupReport implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupReport.class);
+
+    private final ApplicationStartup applicationStartup;
+    private final int slowestBeans;
+    private final boolean exitAfterReady;
+    private volatile List<String> report = List.of();
+
+    public StartupReport(ApplicationStartup applicationStartup,
+                         @Value("${startup.report.slowest-beans:10}") int slowestBeans,
+                         @Value("${startup.exit-after-ready:false}") boolean exitAfterReady) {
+        this.applicationStartup = applicationStartup;
+        this.slowestBeans = slowestBeans;
+        this.exitAfterReady = exitAfterReady;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("ready after %d ms (JVM start)", ManagementFactory.getRuntimeMXBean().getUptime()));
+        if (applicationStartup instanceof BufferingApplicationStartup) {
+            List<StartupTimeline.TimelineEvent> events = ((BufferingApplicationStartup) applicationStartup).getBufferedTimeline().getEvents();
+
+            // Top-level steps only, so nested steps are not counted twice
+            Map<String, Long> phases = new TreeMap<>();
+            events.stream().filter(e -> e.getStartupStep().getParentId() == null)
+                    .forEach(e -> phases.merge(e.getStartupStep().getName(), e.getDuration().toMillis(), Long::sum));
+            phases.forEach((phase, ms) -> lines.add(String.format("phase %s: %d ms", phase, ms)));
+
+            events.stream()
+                    .filter(e -> "spring.beans.instantiate".equals(e.getStartupStep().getName()))
+                    .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration, Comparator.reverseOrder()))
+                    .limit(slowestBeans)
+                    .forEach(e -> lines.add(String.format("bean %s: %d ms", beanName(e.getStartupStep()), e.getDuration().toMillis())));
+        }
+        report = lines;
+        LOGGER.info("Startup report:\n  {}", String.join("\n  ", lines));
+
+        if (exitAfterReady) {
+            LOGGER.info("Exiting after startup (startup.exit-after-ready)");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+    private static String beanName(StartupStep step) {
+        return StreamSupport.stream(step.getTags().spliterator(), false)
+                .filter(tag -> "beanName".equals(tag.getKey()))
+                .map(StartupStep.Tag::getValue)
+                .findFirst().orElse("?");
+    }
+
+    @ManagedAttribute(description = "Time to ready, per startup phase and of the slowest bean creations")
+    public String[] getReport() {
+        return report.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,112 @@
+package trycb.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets sharing one rate and burst size, one per key, in a bounded map.
+ *
+ * Each bucket is a single {@link AtomicLong} holding the time at which it will be full again
+ * (the generic cell rate algorithm), so taking a token is one CAS and never blocks. A full bucket
+ * is indistinguishable from a new one, which makes expiry exact: full buckets are dropped when
+ * their stripe of the map runs out of room. Keys that still find no room share one overflow
+ * bucket, so flooding the map with new keys cannot hand out fresh bursts.
+ */
+public class TokenBuckets {
+
+    private static final int STRIPES = 16;
+
+    private final long intervalNanos; // Time to refill one token
+    private final long burstNanos;    // How far ahead of now a bucket may be drawn
+    private final int maxKeysPerStripe;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param permitsPerSecond sustained rate per key.
+     * @param burst tokens a full bucket holds.
+     * @param maxKeys bound on the number of buckets held.
+     */
+    public TokenBuckets(double permitsPerSecond, int burst, int maxKeys) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Takes a token from the key's bucket.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token.
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(bucket(key), System.nanoTime());
+    }
+
+    private long tryAcquire(AtomicLong bucket, long now) {
+        while (true) {
+            long fullAt = bucket.get();
+            long start = fullAt == Long.MIN_VALUE || fullAt - now < 0 ? now : fullAt;
+            long next = start + intervalNanos;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key) {
+        Stripe stripe = stripes[Math.floorMod(key.hashCode() ^ (key.hashCode() >>> 16), STRIPES)];
+        AtomicLong bucket = stripe.buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (stripe.size.get() >= maxKeysPerStripe && !stripe.sweep(System.nanoTime())) {
+            return overflow;
+        }
+        AtomicLong created = new AtomicLong(Long.MIN_VALUE);
+        bucket = stripe.buckets.putIfAbsent(key, created);
+        if (bucket == null) {
+            stripe.size.incrementAndGet();
+            return created;
+        }
+        return bucket;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size.get();
+        }
+        return size;
+    }
+
+    private final class Stripe {
+
+        final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        final AtomicInteger size = new AtomicInteger(); // Checked on every new key, cheaper than buckets.size()
+        final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+        // Drops full buckets; true if room was made. At most one sweep per stripe and millisecond
+        boolean sweep(long now) {
+            long last = lastSweep.get();
+            if (now - last < TimeUnit.MILLISECONDS.toNanos(1) || !lastSweep.compareAndSet(last, now)) {
+                return false;
+            }
+            // A bucket removed while another thread draws from it loses at most that one token
+            buckets.forEach((key, bucket) -> {
+                long fullAt = bucket.get();
+                if ((fullAt == Long.MIN_VALUE || fullAt - now < 0) && buckets.remove(key, bucket)) {
+                    size.decrementAndGet();
+                }
+            });
+            return size.get() < maxKeysPerStripe;
+        }
+    }
+}
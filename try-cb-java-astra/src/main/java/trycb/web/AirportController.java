@@ -14,6 +14,8 @@ import org.springframework.util.StringUtils;
 
 import trycb.model.Error;
 import trycb.service.Airport;
+import trycb.service.AstraUnavailableException;
+import trycb.util.ReferenceResponseFilter;
 
 import java.util.Collections;
 import java.util.List;
@@ -41,7 +43,13 @@ public class AirportController {
                 "data", resultData,
                 "context", Collections.emptyList()
             );
+            if (resultData.isEmpty()) {
+                ReferenceResponseFilter.doNotCache(); // May be data that is still missing
+            }
             return ResponseEntity.ok(response);
+        } catch (AstraUnavailableException e) {
+            LOGGER.warn("{}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
         } catch (Exception e) {
             LOGGER.error("Airport search failed for search '{}'", search, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Search failed: " + e.getMessage()));
@@ -0,0 +1,58 @@
+package trycb.web;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import trycb.model.Error;
+import trycb.service.BatchSearch;
+import trycb.util.RateLimitFilter;
+
+@RestController
+@RequestMapping("/api/batch")
+@CrossOrigin(origins = "*")
+public class BatchController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchController.class);
+
+    @Autowired
+    private BatchSearch batchSearchService;
+
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    // Expect { "queries": [ { "id": "out", "type": "flightPaths", "from": ..., "to": ..., "leave": ... }, ... ] }
+    @PostMapping
+    public ResponseEntity<?> search(@RequestBody Map<String, Object> payload, HttpServletRequest request) {
+        Object queries = payload.get("queries");
+        if (!(queries instanceof List)) {
+            return ResponseEntity.badRequest().body(new Error("Invalid payload structure: 'queries' array missing."));
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> results = batchSearchService.execute((List<Map<String, Object>>) queries,
+                    rateLimitFilter.chargerFor(request));
+            // Wrap response in { data: ..., context: [] }
+            Map<String, Object> response = Map.of(
+                "data", results,
+                "context", Collections.emptyList()
+            );
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            return ResponseEntity.badRequest().body(new Error(e.getMessage()));
+        } catch (Exception e) {
+            LOGGER.error("Batch search failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Search failed: " + e.getMessage()));
+        }
+    }
+
+}
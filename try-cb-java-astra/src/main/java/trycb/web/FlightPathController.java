@@ -16,6 +16,8 @@ import org.springframework.web.bind.annotation.*;
 
 import trycb.model.Error;
 import trycb.service.FlightPath;
+import trycb.service.AstraUnavailableException;
+import trycb.util.ReferenceResponseFilter;
 
 @RestController
 @RequestMapping("/api/flightPaths")
@@ -50,7 +52,13 @@ public class FlightPathController {
                 "data", resultData,
                 "context", Collections.emptyList()
             );
+            if (resultData.isEmpty()) {
+                ReferenceResponseFilter.doNotCache(); // May be data that is still missing
+            }
             return ResponseEntity.ok(response);
+        } catch (AstraUnavailableException e) {
+            LOGGER.warn("{}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
         } catch (Exception e) {
             LOGGER.error("Flight path search failed for date '{}', from '{}', to '{}'", leave, from, to, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Search failed: " + e.getMessage()));
@@ -10,8 +10,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
 
+import trycb.config.BinaryEncodings;
 import trycb.model.Error;
 import trycb.service.Hotel;
+import trycb.service.AstraUnavailableException;
 
 import java.util.Collections;
 import java.util.List;
@@ -27,19 +29,19 @@ public class HotelController {
     @Autowired
     private Hotel hotelService;
 
-    @GetMapping(value = "/{description}/{location}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(value = "/{description}/{location}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryEncodings.SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
     public ResponseEntity<?> findHotelsByDescriptionAndLocation(@PathVariable String description, @PathVariable String location) {
         LOGGER.info("Received hotel search request: desc='{}', loc='{}'", description, location);
         return findHotels(location, description);
     }
 
-    @GetMapping(value = "/{description}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(value = "/{description}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryEncodings.SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
     public ResponseEntity<?> findHotelsByDescription(@PathVariable String description) {
         LOGGER.info("Received hotel search request: desc='{}'", description);
         return findHotels("*", description);
     }
 
-    @GetMapping(value = "/", produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(value = "/", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryEncodings.SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
     public ResponseEntity<?> findHotelsByParams(@RequestParam(required = false) String location, @RequestParam(required = false) String description) {
         location = StringUtils.hasText(location) ? location : "*";
         description = StringUtils.hasText(description) ? description : "*";
@@ -55,6 +57,9 @@ public class HotelController {
                 "context", Collections.emptyList()
             );
             return ResponseEntity.ok(response);
+        } catch (AstraUnavailableException e) {
+            LOGGER.warn("{}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
         } catch (Exception e) {
             LOGGER.error("Hotel search failed for loc='{}', desc='{}'", location, description, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Search failed: " + e.getMessage()));
@@ -0,0 +1,84 @@
+package trycb.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import trycb.model.Error;
+import trycb.service.KnownUsers;
+import trycb.service.PopularRoutes;
+import trycb.service.ReferenceSnapshot;
+import trycb.util.ReferenceResponseFilter;
+
+/**
+ * Lets the data pipeline (e.g. sync_couchbase_to_astra.py) tell the app that collections
+ * changed, so derived in-memory data is dropped instead of served stale until it expires.
+ * Disabled unless app.invalidation.token is set; callers send it as X-Invalidation-Token.
+ */
+@RestController
+@RequestMapping("/api/admin/invalidate")
+public class InvalidationController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationController.class);
+    // Collections flight path results are derived from
+    private static final Set<String> FLIGHT_PATH_SOURCES = Set.of("airport", "route", "airline");
+
+    @Autowired
+    private PopularRoutes popularRoutes;
+
+    @Autowired
+    private ReferenceResponseFilter referenceResponseFilter;
+
+    @Autowired
+    private KnownUsers knownUsers;
+
+    @Autowired
+    private ReferenceSnapshot referenceSnapshot;
+
+    @Value("${app.invalidation.token:}")
+    private String token;
+
+    // Expect { "collections": ["route", "airline"] }
+    @PostMapping
+    public ResponseEntity<?> invalidate(@RequestBody Map<String, Object> payload,
+                                        @RequestHeader(value = "X-Invalidation-Token", required = false) String requestToken) {
+        if (!StringUtils.hasText(token) || !token.equals(requestToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new Error("Invalidation not allowed"));
+        }
+        Object collections = payload.get("collections");
+        if (!(collections instanceof List)) {
+            return ResponseEntity.badRequest().body(new Error("Invalid payload structure: 'collections' array missing."));
+        }
+
+        List<?> changed = (List<?>) collections;
+        boolean flightPathsAffected = changed.stream().map(String::valueOf).anyMatch(FLIGHT_PATH_SOURCES::contains);
+        List<String> invalidated = new ArrayList<>();
+        if (flightPathsAffected) {
+            popularRoutes.invalidate();
+            referenceResponseFilter.clear(); // Cached airport and flight path responses
+            referenceSnapshot.discard(); // Until a fresh snapshot is exported
+            invalidated.addAll(Arrays.asList("popularRoutes", "responses", "referenceSnapshot"));
+        }
+        if (changed.stream().map(String::valueOf).anyMatch("user"::equals)) {
+            knownUsers.rebuild(); // Users created by the pipeline must not be rejected as unknown
+            invalidated.add("knownUsers");
+        }
+        LOGGER.info("Invalidation for changed collections {}: {}", changed, invalidated);
+        return ResponseEntity.ok(Map.of(
+            "data", Map.of("invalidated", invalidated),
+            "context", Collections.emptyList()
+        ));
+    }
+}
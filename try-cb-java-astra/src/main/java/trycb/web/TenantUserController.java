@@ -31,6 +31,8 @@ import trycb.model.Error; // Keep for error response
 // import trycb.model.Result; // Removed
 
 // Service Imports
+import trycb.service.AstraUnavailableException;
+import trycb.service.TenantOverloadedException;
 import trycb.service.TenantUser;
 import trycb.service.TokenService;
 
@@ -60,7 +62,6 @@ public class TenantUserController {
     }
 
     @PostMapping("/login")
-    // Add tenant path variable (unused)
     public ResponseEntity<?> login(@PathVariable String tenant, @RequestBody Map<String, String> loginInfo) {
         LOGGER.info("Received login request for tenant: {}", tenant); // Log tenant for info
         String user = loginInfo.get("user");
@@ -70,12 +71,18 @@ public class TenantUserController {
         }
 
         try {
-            // Call refactored service method (no bucket/tenant)
-            Map<String, Object> result = tenantUserService.login(user, password);
+            // Tenant selects the user collection (see TenantCollections)
+            Map<String, Object> result = tenantUserService.login(tenant, user, password);
             return ResponseEntity.ok(result);
         } catch (AuthenticationException e) {
             LOGGER.error("Login failed for user '{}': {}", user, e.getMessage()); // Log username
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Error(e.getMessage()));
+        } catch (TenantOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new Error(e.getMessage()));
+        } catch (AstraUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new Error(e.getMessage()));
         } catch (Exception e) {
             LOGGER.error("Login internal error for user '{}'", user, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Login failed: " + e.getMessage()));
@@ -83,7 +90,6 @@ public class TenantUserController {
     }
 
     @PostMapping("/signup")
-    // Add tenant path variable (unused)
     public ResponseEntity<?> createLogin(@PathVariable String tenant, @RequestBody Map<String, String> signupInfo) {
         LOGGER.info("Received signup request for tenant: {}", tenant); // Log tenant for info
         String user = signupInfo.get("user");
@@ -93,8 +99,8 @@ public class TenantUserController {
         }
 
         try {
-            // Call refactored service method (no bucket/tenant/durability)
-            Map<String, Object> resultData = tenantUserService.createLogin(user, password);
+            // Call refactored service method (no bucket/durability)
+            Map<String, Object> resultData = tenantUserService.createLogin(tenant, user, password);
             // Wrap response in { data: ..., context: [] }
             Map<String, Object> response = Map.of(
                 "data", resultData,
@@ -105,6 +111,12 @@ public class TenantUserController {
         } catch (AuthenticationServiceException e) { // Assuming service throws this for duplicates
             LOGGER.warn("Signup failed for user '{}': {}", user, e.getMessage());
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new Error(e.getMessage()));
+        } catch (TenantOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new Error(e.getMessage()));
+        } catch (AstraUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new Error(e.getMessage()));
         } catch (Exception e) {
             LOGGER.error("Signup internal error for user '{}'", user, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Signup failed: " + e.getMessage()));
@@ -112,14 +124,13 @@ public class TenantUserController {
     }
 
     @PutMapping("/{username}/flights")
-    // Add username path variable, keep tenant (unused)
     // Expect the wrapper object { "flights": [...] }
-    public ResponseEntity<?> book(@PathVariable String tenant, // Keep for path structure
+    public ResponseEntity<?> book(@PathVariable String tenant,
                                   @PathVariable String username, // Get username from path
                                   @RequestBody Map<String, Object> payload, // Correct parameter name
                                   @RequestHeader("Authorization") String authentication) {
         LOGGER.info("Received booking request payload for tenant: {}, user: {}: {}", tenant, username, payload);
-        if (authentication == null || !authentication.startsWith("Bearer ")) {
+        if (!TokenService.hasBearerToken(authentication)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Error("Bearer Authentication must be used"));
         }
 
@@ -144,7 +155,7 @@ public class TenantUserController {
             LOGGER.debug("Controller passing flightsList to service: {}", flightsList);
 
             // Call refactored service method with the extracted list
-            Map<String, Object> result = tenantUserService.registerFlightForUser(username, flightsList);
+            Map<String, Object> result = tenantUserService.registerFlightForUser(tenant, username, flightsList);
             // Wrap response in { data: ..., context: [] }
             Map<String, Object> response = Map.of(
                 "data", result,
@@ -157,6 +168,10 @@ public class TenantUserController {
         } catch (IllegalArgumentException e) { // Assuming service throws this for bad flight data
             LOGGER.warn("Invalid booking data for user '{}': {}", username, e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Error(e.getMessage()));
+        } catch (TenantOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new Error(e.getMessage()));
+        } catch (AstraUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
         } catch (Exception e) { // Catch-all for other errors
              LOGGER.error("Booking internal error for user '{}'", username, e);
              return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("Booking failed: " + e.getMessage()));
@@ -164,12 +179,11 @@ public class TenantUserController {
     }
 
     @GetMapping("/{username}/flights")
-    // Add username path variable, keep tenant (unused)
-    public ResponseEntity<?> booked(@PathVariable String tenant, // Keep for path structure
+    public ResponseEntity<?> booked(@PathVariable String tenant,
                                     @PathVariable String username, // Get username from path
                                     @RequestHeader("Authorization") String authentication) {
         LOGGER.info("Received get booked flights request for tenant: {}, user: {}", tenant, username);
-        if (authentication == null || !authentication.startsWith("Bearer ")) {
+        if (!TokenService.hasBearerToken(authentication)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Error("Bearer Authentication must be used"));
         }
 
@@ -177,7 +191,7 @@ public class TenantUserController {
             // Verify against username from path
             jwtService.verifyAuthenticationHeader(authentication, username);
             // Call refactored service method with username from path
-            List<Map<String, Object>> resultData = tenantUserService.getFlightsForUser(username);
+            List<Map<String, Object>> resultData = tenantUserService.getFlightsForUser(tenant, username);
             // Wrap response in { data: ..., context: [] }
             Map<String, Object> response = Map.of(
                 "data", resultData,
@@ -188,6 +202,12 @@ public class TenantUserController {
               LOGGER.warn("Access forbidden to flights for user '{}': {}", username, e.getMessage());
             // Reuse service message or provide generic forbidden
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new Error(e.getMessage()));
+        } catch (TenantOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new Error(e.getMessage()));
+        } catch (AstraUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new Error(e.getMessage()));
         } catch (Exception e) {
               LOGGER.error("Get flights internal error for user '{}'", username, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
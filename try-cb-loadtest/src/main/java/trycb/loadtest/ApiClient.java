@@ -0,0 +1,132 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The application's REST API as the front-end calls it. Every call is timed and recorded in
+ * {@link Metrics} under its endpoint name; calls return the response's {@code data} or null if
+ * the request failed.
+ */
+final class ApiClient {
+
+    static final String AIRPORTS = "airports";
+    static final String FLIGHT_PATHS = "flightPaths";
+    static final String HOTELS = "hotels";
+    static final String SIGNUP = "signup";
+    static final String LOGIN = "login";
+    static final String BOOK = "book";
+    static final String BOOKINGS = "bookings";
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final Metrics metrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ApiClient(HttpClient client, String baseUrl, Duration timeout, Metrics metrics) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.metrics = metrics;
+    }
+
+    JsonNode airports(String search) {
+        return call(AIRPORTS, get("/api/airports?search=" + URLEncoder.encode(search, StandardCharsets.UTF_8)), 200);
+    }
+
+    JsonNode flightPaths(String from, String to, String leave) {
+        return call(FLIGHT_PATHS, get("/api/flightPaths/" + segment(from) + "/" + segment(to)
+                + "?leave=" + URLEncoder.encode(leave, StandardCharsets.UTF_8)), 200);
+    }
+
+    JsonNode hotels(String description, String location) {
+        return call(HOTELS, get("/api/hotels/" + segment(description) + "/" + segment(location)), 200);
+    }
+
+    JsonNode signup(String tenant, String user, String password) {
+        return call(SIGNUP, post("/api/tenants/" + tenant + "/user/signup", Map.of("user", user, "password", password)), 201);
+    }
+
+    JsonNode login(String tenant, String user, String password) {
+        return call(LOGIN, post("/api/tenants/" + tenant + "/user/login", Map.of("user", user, "password", password)), 200);
+    }
+
+    JsonNode book(String tenant, String user, String token, List<Map<String, Object>> flights) {
+        HttpRequest request = request("/api/tenants/" + tenant + "/user/" + user + "/flights")
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(json(Map.of("flights", flights)))).build();
+        return call(BOOK, request, 200);
+    }
+
+    JsonNode bookings(String tenant, String user, String token) {
+        HttpRequest request = request("/api/tenants/" + tenant + "/user/" + user + "/flights")
+                .header("Authorization", "Bearer " + token).GET().build();
+        return call(BOOKINGS, request, 200);
+    }
+
+    private JsonNode call(String endpoint, HttpRequest request, int expectedStatus) {
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            metrics.failure(endpoint, -1);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long nanos = System.nanoTime() - start;
+        if (response.statusCode() != expectedStatus) {
+            metrics.failure(endpoint, response.statusCode());
+            return null;
+        }
+        try {
+            JsonNode body = objectMapper.readTree(response.body());
+            metrics.success(endpoint, nanos);
+            return body.path("data");
+        } catch (IOException e) {
+            // 200 with a body that is no JSON counts as a failure
+            metrics.failure(endpoint, response.statusCode());
+            return null;
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body) {
+        return request(path).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json(body))).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout).header("Accept", "application/json");
+    }
+
+    private byte[] json(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static String segment(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
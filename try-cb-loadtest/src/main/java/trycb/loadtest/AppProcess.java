@@ -0,0 +1,105 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application under test, started from its Spring Boot jar in a separate JVM and pointed at
+ * the Data API stub. It runs in the report directory (snapshot and booking log files end up
+ * there) and logs to {@code app.log}.
+ */
+final class AppProcess implements AutoCloseable {
+
+    private final Process process;
+    private final String baseUrl;
+
+    private AppProcess(Process process, String baseUrl) {
+        this.process = process;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Starts the application and waits until it answers.
+     */
+    static AppProcess start(Settings settings, String astraEndpoint, String keyspace, Path workDir) throws IOException, InterruptedException {
+        Path jar = Paths.get(settings.get("app.jar")).toAbsolutePath();
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException("Application jar " + jar + " not found, build it with mvn package in try-cb-java-astra");
+        }
+        int port = settings.getInt("app.port");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(split(settings.get("app.jvm-args")));
+        command.addAll(List.of("-jar", jar.toString(),
+                "--server.port=" + port,
+                "--astra.api.endpoint=" + astraEndpoint,
+                "--astra.api.token=loadtest",
+                "--astra.api.keyspace=" + keyspace,
+                // The stub speaks plain HTTP/1.1
+                "--astra.http.version=HTTP_1_1"));
+        command.addAll(split(settings.get("app.args")));
+
+        Process process = new ProcessBuilder(command).directory(workDir.toFile())
+                .redirectErrorStream(true).redirectOutput(workDir.resolve("app.log").toFile()).start();
+        AppProcess app = new AppProcess(process, "http://localhost:" + port);
+        try {
+            app.awaitReady(settings.getDuration("app.startup-timeout"));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            app.close();
+            throw e;
+        }
+        return app;
+    }
+
+    private void awaitReady(Duration timeout) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest probe = HttpRequest.newBuilder(URI.create(baseUrl + "/")).timeout(Duration.ofSeconds(2)).build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue() + ", see app.log");
+            }
+            try {
+                if (client.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            TimeUnit.MILLISECONDS.sleep(250);
+        }
+        throw new IllegalStateException("Application not ready after " + timeout.toSeconds() + " s, see app.log");
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    private static List<String> split(String args) {
+        return args.isEmpty() ? List.of() : Arrays.asList(args.split("\\s+"));
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(15, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
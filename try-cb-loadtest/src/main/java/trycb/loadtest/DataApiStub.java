@@ -0,0 +1,143 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the Astra Data API: {@code POST /api/json/v1/<keyspace>/<collection>} with
+ * a JSON command, answered from {@link StubCollection}s held in memory.
+ *
+ * Each command is delayed by a log-normally distributed latency (median {@code stub.latency-ms},
+ * spread {@code stub.latency-sigma}) so the application sees Astra-like response times, and a
+ * fraction {@code stub.error-rate} of commands fails with 503. Collections are created on first
+ * use. The token is not checked.
+ */
+final class DataApiStub implements AutoCloseable {
+
+    private static final String PATH = "/api/json/v1/";
+    private static final TypeReference<Map<String, Map<String, Object>>> COMMAND = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, StubCollection> collections = new ConcurrentHashMap<>();
+    private final double latencyMedianMs;
+    private final double latencySigma;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder commands = new LongAdder();
+
+    DataApiStub(int port, double latencyMedianMs, double latencySigma, double errorRate) throws IOException {
+        this.latencyMedianMs = latencyMedianMs;
+        this.latencySigma = latencySigma;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        // Requests spend most of their time in the simulated latency, one thread each
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "data-api-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    long getCommands() {
+        return commands.sum();
+    }
+
+    StubCollection collection(String keyspace, String name) {
+        return collections.computeIfAbsent(keyspace + "." + name, key -> new StubCollection());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            commands.increment();
+            Map<String, Map<String, Object>> command;
+            try (InputStream body = exchange.getRequestBody()) {
+                command = objectMapper.readValue(body, COMMAND);
+            } catch (IOException e) {
+                respond(exchange, 400, error("INVALID_REQUEST", "Malformed command: " + e.getMessage()));
+                return;
+            }
+            simulateLatency();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 503, error("SERVER_UNAVAILABLE", "Injected failure"));
+                return;
+            }
+
+            String[] path = exchange.getRequestURI().getPath().substring(PATH.length()).split("/");
+            if (command == null || command.size() != 1) {
+                respond(exchange, 200, error("INVALID_REQUEST", "Expected exactly one command"));
+            } else if (path.length == 2) {
+                Map.Entry<String, Map<String, Object>> entry = command.entrySet().iterator().next();
+                Map<String, Object> options = entry.getValue() == null ? Map.of() : entry.getValue();
+                respond(exchange, 200, collection(path[0], path[1]).execute(entry.getKey(), options));
+            } else if (path.length == 1 && command.containsKey("findCollections")) {
+                List<String> names = collections.keySet().stream().filter(key -> key.startsWith(path[0] + "."))
+                        .map(key -> key.substring(path[0].length() + 1)).sorted().collect(Collectors.toList());
+                respond(exchange, 200, Map.of("status", Map.of("collections", names)));
+            } else {
+                respond(exchange, 200, error("UNSUPPORTED_COMMAND", "Not supported by the stub: " + command.keySet()));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 200, error("SERVER_UNHANDLED_ERROR", String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void simulateLatency() {
+        if (latencyMedianMs <= 0) {
+            return;
+        }
+        double ms = latencyMedianMs * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+        try {
+            TimeUnit.MICROSECONDS.sleep((long) (ms * 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, Object> response) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static Map<String, Object> error(String errorCode, String message) {
+        return Map.of("errors", List.of(Map.of("errorCode", errorCode, "message", message)));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,180 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Closed-loop load test of the application's REST API.
+ *
+ * By default it starts the Data API stub with generated reference data, starts the application
+ * jar against it, runs {@code users} virtual users through the configured journeys for
+ * {@code warmup} + {@code duration}, prints throughput, error rate and latency percentiles per
+ * endpoint and writes them to {@code report-dir} ({@code summary.json}, one {@code .hgrm} latency
+ * distribution per endpoint, the application's log). With {@code target=<url>} it drives an
+ * application that is already running instead; with {@code mode=stub} it only runs the stub.
+ *
+ * Exits with 1 if an SLO is violated or, given a {@code baseline} summary, a metric regressed;
+ * see {@link SloCheck}.
+ */
+public final class LoadTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.load(args);
+        System.exit(run(settings));
+    }
+
+    private static int run(Settings settings) throws Exception {
+        Path reportDir = Paths.get(settings.get("report-dir")).toAbsolutePath();
+        Files.createDirectories(reportDir);
+        String target = settings.get("target");
+        boolean stubOnly = "stub".equals(settings.get("mode"));
+
+        DataApiStub stub = null;
+        AppProcess app = null;
+        try {
+            if (target.isEmpty() || stubOnly) {
+                stub = startStub(settings);
+                if (stubOnly) {
+                    System.out.printf("Data API stub listening on %s (keyspace %s), stop with Ctrl-C%n",
+                            stub.getEndpoint(), settings.get("stub.keyspace"));
+                    Thread.currentThread().join();
+                }
+                System.out.println("Starting the application against the stub at " + stub.getEndpoint());
+                app = AppProcess.start(settings, stub.getEndpoint(), settings.get("stub.keyspace"), reportDir);
+                target = app.getBaseUrl();
+            }
+            Map<String, Metrics.Result> results = drive(settings, target);
+            if (stub != null) {
+                System.out.printf("Data API commands served by the stub: %d%n", stub.getCommands());
+            }
+            return report(settings, results, reportDir);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    private static DataApiStub startStub(Settings settings) throws IOException {
+        DataApiStub stub = new DataApiStub(settings.getInt("stub.port"), settings.getDouble("stub.latency-ms"),
+                settings.getDouble("stub.latency-sigma"), settings.getDouble("stub.error-rate"));
+        String keyspace = settings.get("stub.keyspace");
+        stub.collection(keyspace, "airport").insertAll(SeedData.airports());
+        stub.collection(keyspace, "airline").insertAll(SeedData.airlines());
+        stub.collection(keyspace, "route").insertAll(SeedData.routes());
+        stub.collection(keyspace, "hotel").insertAll(SeedData.hotels(settings.getInt("stub.hotels")));
+        stub.start();
+        return stub;
+    }
+
+    private static Map<String, Metrics.Result> drive(Settings settings, String target) throws InterruptedException {
+        int users = settings.getInt("users");
+        Duration warmup = settings.getDuration("warmup");
+        Duration duration = settings.getDuration("duration");
+        Duration progressInterval = settings.getDuration("progress-interval");
+        Map<String, Integer> journeys = new LinkedHashMap<>();
+        settings.withPrefix("journey.").forEach((journey, weight) -> journeys.put(journey, Integer.parseInt(weight)));
+        List<String> tenants = settings.getList("tenants");
+
+        Metrics metrics = new Metrics();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        ApiClient api = new ApiClient(client, target, settings.getDuration("request-timeout"), metrics);
+        AtomicBoolean stopped = new AtomicBoolean();
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        for (int i = 0; i < users; i++) {
+            executor.execute(new VirtualUser(api, tenants.get(i % tenants.size()), "loadtest_" + run + "_" + i, journeys,
+                    settings.getList("airports"), settings.getDuration("think-time"), stopped, i));
+        }
+        System.out.printf("%d users against %s: %d s warmup, %d s measured, journeys %s%n",
+                users, target, warmup.toSeconds(), duration.toSeconds(), journeys);
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        boolean measuring = false;
+        long last = start;
+        while (true) {
+            if (!measuring && System.nanoTime() >= measureFrom) {
+                metrics.reset();
+                measuring = true;
+            }
+            if (System.nanoTime() >= end) {
+                break;
+            }
+            long next = Math.min(last + progressInterval.toNanos(), measuring ? end : measureFrom);
+            TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+            long now = System.nanoTime();
+            progress(metrics, measuring ? "measure" : "warmup", (now - start) / 1e9, (now - last) / 1e9);
+            last = now;
+        }
+        stopped.set(true);
+        Map<String, Metrics.Result> results = metrics.results();
+        executor.shutdown();
+        if (!executor.awaitTermination(settings.getDuration("request-timeout").toSeconds() + 5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static void progress(Metrics metrics, String phase, double elapsedSeconds, double intervalSeconds) {
+        Histogram interval = metrics.interval();
+        System.out.printf("[%5.0f s %-7s] %8.1f req/s  p50 %7.2f ms  p99 %8.2f ms  failed %d%n", elapsedSeconds, phase,
+                interval.getTotalCount() / intervalSeconds, interval.getValueAtPercentile(50) / 1000.0,
+                interval.getValueAtPercentile(99) / 1000.0, metrics.intervalFailures());
+    }
+
+    private static int report(Settings settings, Map<String, Metrics.Result> results, Path reportDir) throws IOException {
+        System.out.println();
+        Metrics.printTable(results, System.out);
+        Metrics.writeDistributions(results, reportDir);
+        Map<String, Map<String, Double>> summary = new LinkedHashMap<>();
+        results.forEach((endpoint, result) -> summary.put(endpoint, result.metrics()));
+        Path summaryFile = reportDir.resolve("summary.json");
+        OBJECT_MAPPER.writeValue(summaryFile.toFile(), Map.of("endpoints", summary));
+        System.out.println("\nReport written to " + reportDir);
+
+        List<String> failures = new ArrayList<>(SloCheck.slos(results, settings.withPrefix("slo.")));
+        String baseline = settings.get("baseline");
+        if (!baseline.isEmpty()) {
+            Map<String, Map<String, Map<String, Double>>> base = OBJECT_MAPPER.readValue(Paths.get(baseline).toFile(),
+                    new TypeReference<>() {});
+            failures.addAll(SloCheck.regressions(results, base.get("endpoints"),
+                    settings.getDouble("regression.tolerance"), settings.getDouble("regression.floor-ms")));
+        }
+        if (failures.isEmpty()) {
+            System.out.println("All SLOs met" + (baseline.isEmpty() ? "" : ", no regression against " + baseline));
+            return 0;
+        }
+        System.out.println("FAILED:");
+        failures.forEach(failure -> System.out.println("  " + failure));
+        return 1;
+    }
+}
@@ -0,0 +1,191 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency (HdrHistogram, microseconds) and outcome counts per endpoint.
+ *
+ * Requests are recorded wait-free through a {@link Recorder} per endpoint; {@link #interval()}
+ * moves what was recorded since the last call into the run totals and returns it for the
+ * progress line. Only successful requests count towards latency, so fast rejections cannot make
+ * the percentiles look better; failures are counted by status (-1 for no response).
+ */
+final class Metrics {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder intervalFailures = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+
+    void success(String endpoint, long nanos) {
+        Endpoint stats = endpoint(endpoint);
+        stats.recorder.recordValue(Math.min(MAX_MICROS, Math.max(1, nanos / 1000)));
+    }
+
+    void failure(String endpoint, int status) {
+        Endpoint stats = endpoint(endpoint);
+        stats.failed.increment();
+        intervalFailures.increment();
+        stats.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, n -> new Endpoint());
+    }
+
+    /**
+     * Drops everything recorded so far, e.g. at the end of the warmup.
+     */
+    synchronized void reset() {
+        endpoints.values().forEach(Endpoint::reset);
+        intervalFailures.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return failed requests since the previous call.
+     */
+    long intervalFailures() {
+        return intervalFailures.sumThenReset();
+    }
+
+    /**
+     * @return latency of successful requests since the previous call, over all endpoints.
+     */
+    synchronized Histogram interval() {
+        Histogram all = new Histogram(MAX_MICROS, 3);
+        endpoints.values().forEach(endpoint -> all.add(endpoint.interval()));
+        return all;
+    }
+
+    /**
+     * @return results since the last reset, per endpoint and for all requests ("total").
+     */
+    synchronized Map<String, Result> results() {
+        interval();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        Map<String, Result> results = new TreeMap<>();
+        Histogram all = new Histogram(MAX_MICROS, 3);
+        long allFailed = 0;
+        Map<Integer, Long> allStatuses = new TreeMap<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Endpoint endpoint = entry.getValue();
+            Map<Integer, Long> statuses = new TreeMap<>();
+            endpoint.statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+            results.put(entry.getKey(), new Result(endpoint.total.copy(), endpoint.failed.sum(), statuses, seconds));
+            all.add(endpoint.total);
+            allFailed += endpoint.failed.sum();
+            statuses.forEach((status, count) -> allStatuses.merge(status, count, Long::sum));
+        }
+        results.put(Result.TOTAL, new Result(all, allFailed, allStatuses, seconds));
+        return results;
+    }
+
+    private static final class Endpoint {
+
+        final Recorder recorder = new Recorder(MAX_MICROS, 3);
+        final Histogram total = new Histogram(MAX_MICROS, 3);
+        final LongAdder failed = new LongAdder();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        Histogram recycled;
+
+        Histogram interval() {
+            Histogram interval = recorder.getIntervalHistogram(recycled);
+            total.add(interval);
+            recycled = interval;
+            return interval;
+        }
+
+        void reset() {
+            recorder.reset();
+            total.reset();
+            failed.reset();
+            statuses.clear();
+        }
+    }
+
+    /**
+     * Outcome of one endpoint over the measured part of the run. Latencies are in milliseconds.
+     */
+    static final class Result {
+
+        static final String TOTAL = "total";
+
+        final Histogram histogram;
+        final long requests;
+        final long failed;
+        final Map<Integer, Long> failedByStatus;
+        final double throughput;
+
+        Result(Histogram histogram, long failed, Map<Integer, Long> failedByStatus, double seconds) {
+            this.histogram = histogram;
+            this.failed = failed;
+            this.requests = histogram.getTotalCount() + failed;
+            this.failedByStatus = failedByStatus;
+            this.throughput = seconds > 0 ? histogram.getTotalCount() / seconds : 0;
+        }
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) failed / requests;
+        }
+
+        double percentileMs(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        double maxMs() {
+            return histogram.getMaxValue() / 1000.0;
+        }
+
+        /**
+         * @return the metrics SLOs and baselines refer to: rps, errors, p50, p90, p99, p999, max.
+         */
+        Map<String, Double> metrics() {
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            metrics.put("rps", throughput);
+            metrics.put("errors", errorRate());
+            metrics.put("p50", percentileMs(50));
+            metrics.put("p90", percentileMs(90));
+            metrics.put("p99", percentileMs(99));
+            metrics.put("p999", percentileMs(99.9));
+            metrics.put("max", maxMs());
+            return metrics;
+        }
+    }
+
+    static void printTable(Map<String, Result> results, PrintStream out) {
+        out.printf("%-12s %9s %9s %8s %9s %9s %9s %9s %9s  %s%n",
+                "endpoint", "requests", "rps", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "failures by status");
+        results.forEach((name, result) -> out.printf("%-12s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                name, result.requests, result.throughput, result.errorRate() * 100, result.percentileMs(50),
+                result.percentileMs(90), result.percentileMs(99), result.percentileMs(99.9), result.maxMs(),
+                result.failedByStatus.isEmpty() ? "" : result.failedByStatus));
+    }
+
+    /**
+     * Writes each endpoint's latency distribution as {@code <endpoint>.hgrm} (milliseconds), the
+     * format HdrHistogram's plotter reads.
+     */
+    static void writeDistributions(Map<String, Result> results, Path directory) throws IOException {
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")),
+                    false, StandardCharsets.UTF_8)) {
+                entry.getValue().histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+}
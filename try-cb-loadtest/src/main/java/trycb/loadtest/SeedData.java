@@ -0,0 +1,186 @@
+package trycb.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reference data loaded into the stub, shaped like the migrated travel-sample collections:
+ * airports with coordinates, airlines, a route with a daily schedule between every pair of
+ * airports, and hotels with long descriptions and reviews. Generated from a fixed seed, so runs
+ * are comparable.
+ */
+final class SeedData {
+
+    // faa, icao, name, city, country, latitude, longitude
+    static final Object[][] AIRPORTS = {
+            {"SFO", "KSFO", "San Francisco Intl", "San Francisco", "United States", 37.6190, -122.3749},
+            {"LAX", "KLAX", "Los Angeles Intl", "Los Angeles", "United States", 33.9425, -118.4081},
+            {"SEA", "KSEA", "Seattle Tacoma Intl", "Seattle", "United States", 47.4490, -122.3093},
+            {"JFK", "KJFK", "John F Kennedy Intl", "New York", "United States", 40.6398, -73.7789},
+            {"LGA", "KLGA", "La Guardia", "New York", "United States", 40.7772, -73.8726},
+            {"BOS", "KBOS", "General Edward Lawrence Logan Intl", "Boston", "United States", 42.3643, -71.0052},
+            {"ORD", "KORD", "Chicago Ohare Intl", "Chicago", "United States", 41.9786, -87.9048},
+            {"ATL", "KATL", "Hartsfield Jackson Atlanta Intl", "Atlanta", "United States", 33.6367, -84.4281},
+            {"DFW", "KDFW", "Dallas Fort Worth Intl", "Dallas-Fort Worth", "United States", 32.8968, -97.0380},
+            {"DEN", "KDEN", "Denver Intl", "Denver", "United States", 39.8617, -104.6732},
+            {"MIA", "KMIA", "Miami Intl", "Miami", "United States", 25.7932, -80.2906},
+            {"LAS", "KLAS", "Mc Carran Intl", "Las Vegas", "United States", 36.0801, -115.1522},
+            {"PHX", "KPHX", "Phoenix Sky Harbor Intl", "Phoenix", "United States", 33.4343, -112.0116},
+            {"IAH", "KIAH", "George Bush Intercontinental", "Houston", "United States", 29.9844, -95.3414},
+            {"MSP", "KMSP", "Minneapolis St Paul Intl", "Minneapolis", "United States", 44.8820, -93.2218},
+            {"LHR", "EGLL", "Heathrow", "London", "United Kingdom", 51.4775, -0.4614},
+            {"LGW", "EGKK", "Gatwick", "London", "United Kingdom", 51.1481, -0.1903},
+            {"MAN", "EGCC", "Manchester", "Manchester", "United Kingdom", 53.3537, -2.2750},
+            {"CDG", "LFPG", "Charles De Gaulle", "Paris", "France", 49.0128, 2.5500},
+            {"ORY", "LFPO", "Orly", "Paris", "France", 48.7253, 2.3594},
+            {"NCE", "LFMN", "Cote D'Azur", "Nice", "France", 43.6584, 7.2159},
+            {"LYS", "LFLL", "Saint Exupery", "Lyon", "France", 45.7256, 5.0811},
+    };
+
+    // id, name, iata, icao, country
+    private static final String[][] AIRLINES = {
+            {"airline_24", "American Airlines", "AA", "AAL", "United States"},
+            {"airline_2009", "Delta Air Lines", "DL", "DAL", "United States"},
+            {"airline_5209", "United Airlines", "UA", "UAL", "United States"},
+            {"airline_4547", "Southwest Airlines", "WN", "SWA", "United States"},
+            {"airline_3029", "JetBlue Airways", "B6", "JBU", "United States"},
+            {"airline_1355", "British Airways", "BA", "BAW", "United Kingdom"},
+            {"airline_137", "Air France", "AF", "AFR", "France"},
+            {"airline_2297", "easyJet", "U2", "EZY", "United Kingdom"},
+    };
+
+    private static final String[] EQUIPMENT = {"738", "320", "319 320", "73W", "757", "777", "321 320"};
+
+    static final String[] HOTEL_WORDS = ("quiet central modern historic family beach pool spa breakfast parking wifi "
+            + "garden terrace view harbour river station airport shopping museum restaurant bar budget luxury suites "
+            + "renovated friendly spacious clean cosy boutique business conference gym sauna balcony").split(" ");
+
+    private static final String[] FILLER = ("the a is in of and with to from near our rooms offer guests enjoy "
+            + "located walk minutes short all each are free on request").split(" ");
+
+    private SeedData() {
+    }
+
+    static List<Map<String, Object>> airports() {
+        List<Map<String, Object>> airports = new ArrayList<>();
+        for (int i = 0; i < AIRPORTS.length; i++) {
+            Object[] airport = AIRPORTS[i];
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("_id", "airport_" + (3400 + i));
+            doc.put("type", "airport");
+            doc.put("airportname", airport[2]);
+            doc.put("city", airport[3]);
+            doc.put("country", airport[4]);
+            doc.put("faa", airport[0]);
+            doc.put("icao", airport[1]);
+            doc.put("tz", "UTC");
+            doc.put("geo", Map.of("lat", airport[5], "lon", airport[6], "alt", 0));
+            airports.add(doc);
+        }
+        return airports;
+    }
+
+    static List<Map<String, Object>> airlines() {
+        List<Map<String, Object>> airlines = new ArrayList<>();
+        for (String[] airline : AIRLINES) {
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("_id", airline[0]);
+            doc.put("type", "airline");
+            doc.put("name", airline[1]);
+            doc.put("iata", airline[2]);
+            doc.put("icao", airline[3]);
+            doc.put("callsign", airline[1].toUpperCase());
+            doc.put("country", airline[4]);
+            airlines.add(doc);
+        }
+        return airlines;
+    }
+
+    /**
+     * One or two airlines per airport pair, each with one to three flights a day.
+     */
+    static List<Map<String, Object>> routes() {
+        Random random = new Random(47);
+        List<Map<String, Object>> routes = new ArrayList<>();
+        for (Object[] from : AIRPORTS) {
+            for (Object[] to : AIRPORTS) {
+                if (from == to) {
+                    continue;
+                }
+                int airlineCount = 1 + random.nextInt(2);
+                for (int a = 0; a < airlineCount; a++) {
+                    String[] airline = AIRLINES[random.nextInt(AIRLINES.length)];
+                    List<Map<String, Object>> schedule = new ArrayList<>();
+                    for (int day = 0; day < 7; day++) {
+                        for (int f = 1 + random.nextInt(3); f > 0; f--) {
+                            schedule.add(Map.of("day", day,
+                                    "utc", String.format("%02d:%02d:00", random.nextInt(24), random.nextInt(60)),
+                                    "flight", airline[2] + (100 + random.nextInt(900))));
+                        }
+                    }
+                    Map<String, Object> doc = new LinkedHashMap<>();
+                    doc.put("_id", "route_" + (10000 + routes.size()));
+                    doc.put("type", "route");
+                    doc.put("airline", airline[2]);
+                    doc.put("airlineid", airline[0]);
+                    doc.put("sourceairport", from[0]);
+                    doc.put("destinationairport", to[0]);
+                    doc.put("stops", 0);
+                    doc.put("equipment", EQUIPMENT[random.nextInt(EQUIPMENT.length)]);
+                    doc.put("schedule", schedule);
+                    routes.add(doc);
+                }
+            }
+        }
+        return routes;
+    }
+
+    static List<Map<String, Object>> hotels(int count) {
+        Random random = new Random(11);
+        List<Map<String, Object>> hotels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Object[] airport = AIRPORTS[random.nextInt(AIRPORTS.length)];
+            List<Map<String, Object>> reviews = new ArrayList<>();
+            for (int r = random.nextInt(6); r > 0; r--) {
+                reviews.add(Map.of("author", "Guest " + random.nextInt(10000),
+                        "date", String.format("2015-%02d-%02d 10:00:00 +0300", 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                        "content", text(random, 40 + random.nextInt(120)),
+                        "ratings", Map.of("Overall", 1 + random.nextInt(5), "Cleanliness", 1 + random.nextInt(5),
+                                "Service", 1 + random.nextInt(5), "Value", 1 + random.nextInt(5))));
+            }
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("_id", "hotel_" + (20000 + i));
+            doc.put("type", "hotel");
+            doc.put("name", capitalize(HOTEL_WORDS[random.nextInt(HOTEL_WORDS.length)]) + " " + airport[3] + " Hotel " + i);
+            doc.put("title", airport[3]);
+            doc.put("address", (1 + random.nextInt(300)) + " " + capitalize(HOTEL_WORDS[random.nextInt(HOTEL_WORDS.length)]) + " Street");
+            doc.put("city", airport[3]);
+            doc.put("state", null);
+            doc.put("country", airport[4]);
+            doc.put("description", text(random, 60 + random.nextInt(200)));
+            doc.put("free_breakfast", random.nextBoolean());
+            doc.put("free_parking", random.nextBoolean());
+            doc.put("free_internet", random.nextBoolean());
+            doc.put("geo", Map.of("lat", airport[5], "lon", airport[6], "accuracy", "APPROXIMATE"));
+            doc.put("reviews", reviews);
+            hotels.add(doc);
+        }
+        return hotels;
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String[] source = random.nextInt(3) == 0 ? HOTEL_WORDS : FILLER;
+            text.append(i == 0 ? "" : i % 12 == 0 ? ". " : " ").append(source[random.nextInt(source.length)]);
+        }
+        return capitalize(text.append('.').toString());
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,94 @@
+package trycb.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Load test settings: the defaults in {@code loadtest.properties}, overridden by the file given
+ * with {@code --config=<file>}, overridden by {@code --<key>=<value>} arguments.
+ */
+final class Settings {
+
+    private final Properties properties;
+
+    private Settings(Properties properties) {
+        this.properties = properties;
+    }
+
+    static Settings load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream defaults = Settings.class.getResourceAsStream("/loadtest.properties")) {
+            properties.load(defaults);
+        }
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments must be --<key>=<value>: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            overrides.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        String config = overrides.getProperty("config");
+        if (config != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(config), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        properties.putAll(overrides);
+        return new Settings(properties);
+    }
+
+    String get(String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing setting " + key);
+        }
+        return value.trim();
+    }
+
+    int getInt(String key) {
+        return Integer.parseInt(get(key));
+    }
+
+    double getDouble(String key) {
+        return Double.parseDouble(get(key));
+    }
+
+    List<String> getList(String key) {
+        return Arrays.stream(get(key).split(",")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+
+    /**
+     * Durations are given as e.g. {@code 500ms}, {@code 30s} or {@code 2m}; plain numbers are seconds.
+     */
+    Duration getDuration(String key) {
+        String value = get(key);
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        } else if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        } else if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    /**
+     * @return settings {@code <prefix><name>=<value>} as name -> value, in key order.
+     */
+    Map<String, String> withPrefix(String prefix) {
+        return properties.stringPropertyNames().stream().filter(key -> key.startsWith(prefix)).sorted()
+                .collect(Collectors.toMap(key -> key.substring(prefix.length()), this::get, (a, b) -> a, LinkedHashMap::new));
+    }
+}
@@ -0,0 +1,90 @@
+package trycb.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks run results against service level objectives and, optionally, against a baseline run.
+ *
+ * SLOs are {@code <endpoint>.<metric>=<limit>} settings (prefix {@code slo.}): {@code p50},
+ * {@code p90}, {@code p99}, {@code p999} and {@code max} are upper bounds in milliseconds,
+ * {@code errors} an upper bound on the failed fraction and {@code rps} a lower bound on
+ * throughput. {@code *.<metric>} applies to every endpoint without its own limit,
+ * {@code total.<metric>} to all requests together.
+ *
+ * Against a baseline (the {@code summary.json} of an earlier run), a p50 or p99 more than
+ * {@code regression.tolerance} above the baseline's (and at least {@code regression.floor-ms}
+ * slower, so sub-millisecond noise does not count), or a throughput that much below it, is a
+ * regression.
+ */
+final class SloCheck {
+
+    private static final List<String> UPPER_BOUNDS = List.of("errors", "p50", "p90", "p99", "p999", "max");
+
+    private SloCheck() {
+    }
+
+    static List<String> slos(Map<String, Metrics.Result> results, Map<String, String> slos) {
+        List<String> violations = new ArrayList<>();
+        for (Map.Entry<String, String> slo : slos.entrySet()) {
+            int dot = slo.getKey().lastIndexOf('.');
+            if (dot < 0) {
+                throw new IllegalArgumentException("SLOs must be slo.<endpoint>.<metric>: slo." + slo.getKey());
+            }
+            String endpoint = slo.getKey().substring(0, dot);
+            String metric = slo.getKey().substring(dot + 1);
+            if (!"rps".equals(metric) && !UPPER_BOUNDS.contains(metric)) {
+                throw new IllegalArgumentException("Unknown SLO metric " + metric + " (rps, errors, p50, p90, p99, p999, max)");
+            }
+            double limit = Double.parseDouble(slo.getValue());
+            if ("*".equals(endpoint)) {
+                results.keySet().stream()
+                        .filter(name -> !Metrics.Result.TOTAL.equals(name) && !slos.containsKey(name + "." + metric))
+                        .forEach(name -> check(name, metric, limit, results.get(name), violations));
+            } else {
+                check(endpoint, metric, limit, results.get(endpoint), violations);
+            }
+        }
+        return violations;
+    }
+
+    private static void check(String endpoint, String metric, double limit, Metrics.Result result, List<String> violations) {
+        if (result == null) {
+            violations.add(String.format("%s: no requests (SLO %s)", endpoint, metric));
+            return;
+        }
+        double value = result.metrics().get(metric);
+        boolean upper = UPPER_BOUNDS.contains(metric);
+        if (upper ? value > limit : value < limit) {
+            violations.add(String.format("%s.%s = %.3f, SLO %s %.3f", endpoint, metric, value, upper ? "<=" : ">=", limit));
+        }
+    }
+
+    static List<String> regressions(Map<String, Metrics.Result> results, Map<String, Map<String, Double>> baseline,
+                                    double tolerance, double floorMs) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> base : baseline.entrySet()) {
+            Metrics.Result result = results.get(base.getKey());
+            if (result == null) {
+                regressions.add(base.getKey() + ": in the baseline but no requests in this run");
+                continue;
+            }
+            Map<String, Double> metrics = result.metrics();
+            for (String latency : List.of("p50", "p99")) {
+                double before = base.getValue().getOrDefault(latency, Double.NaN);
+                double now = metrics.get(latency);
+                if (now > before * (1 + tolerance) && now - before >= floorMs) {
+                    regressions.add(String.format("%s.%s %.2f ms, baseline %.2f ms (+%.0f%%)",
+                            base.getKey(), latency, now, before, (now / before - 1) * 100));
+                }
+            }
+            double before = base.getValue().getOrDefault("rps", Double.NaN);
+            double now = metrics.get("rps");
+            if (now < before * (1 - tolerance)) {
+                regressions.add(String.format("%s.rps %.1f, baseline %.1f (%.0f%%)", base.getKey(), now, before, (now / before - 1) * 100));
+            }
+        }
+        return regressions;
+    }
+}
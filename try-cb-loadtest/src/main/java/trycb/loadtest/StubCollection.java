@@ -0,0 +1,449 @@
+package trycb.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory collection answering the Data API commands the application sends: find, findOne,
+ * insertOne, insertMany, updateOne, deleteOne and countDocuments.
+ *
+ * Filters support implicit equality, {@code $eq $ne $in $nin $exists $gt $gte $lt $lte},
+ * {@code $and} and {@code $or}; updates {@code $set $unset $inc $push $addToSet} on top-level
+ * fields. A {@code $vectorize} sort ranks documents by how often the query words occur in their
+ * text, which is enough to return plausible hotels. Updates replace field values rather than
+ * modifying them, so the shallow copies handed out under the read lock stay consistent.
+ */
+final class StubCollection {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int VECTOR_LIMIT = 1000;
+
+    private final Map<Object, Map<String, Object>> documents = new LinkedHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void insertAll(Collection<Map<String, Object>> seed) {
+        lock.writeLock().lock();
+        try {
+            seed.forEach(doc -> documents.put(doc.get("_id"), new LinkedHashMap<>(doc)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the Data API response to the command.
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> execute(String command, Map<String, Object> body) {
+        Map<String, Object> filter = body.get("filter") instanceof Map ? (Map<String, Object>) body.get("filter") : Map.of();
+        Map<String, Object> options = body.get("options") instanceof Map ? (Map<String, Object>) body.get("options") : Map.of();
+        switch (command) {
+            case "find":
+                return find(filter, (Map<String, Object>) body.get("sort"), (Map<String, Object>) body.get("projection"), options);
+            case "findOne":
+                return findOne(filter, (Map<String, Object>) body.get("sort"), (Map<String, Object>) body.get("projection"));
+            case "countDocuments":
+                return count(filter);
+            case "insertOne":
+                return insert(List.of((Map<String, Object>) body.get("document")));
+            case "insertMany":
+                return insert((List<Map<String, Object>>) body.get("documents"));
+            case "updateOne":
+                return updateOne(filter, (Map<String, Object>) body.get("update"), Boolean.TRUE.equals(options.get("upsert")));
+            case "deleteOne":
+                return deleteOne(filter);
+            default:
+                return DataApiStub.error("UNSUPPORTED_COLLECTION_COMMAND", "Command not supported by the stub: " + command);
+        }
+    }
+
+    private Map<String, Object> find(Map<String, Object> filter, Map<String, Object> sort, Map<String, Object> projection,
+                                     Map<String, Object> options) {
+        int limit = options.get("limit") instanceof Number ? ((Number) options.get("limit")).intValue() : Integer.MAX_VALUE;
+        int skip = options.get("skip") instanceof Number ? ((Number) options.get("skip")).intValue() : 0;
+        lock.readLock().lock();
+        try {
+            List<Map<String, Object>> matches = sorted(matching(filter), sort);
+            Map<String, Object> data = new LinkedHashMap<>();
+            if (sort != null && sort.containsKey("$vectorize")) {
+                // Vector searches return one page of up to the limit
+                data.put("documents", project(matches.subList(0, Math.min(matches.size(), Math.min(limit, VECTOR_LIMIT))), projection));
+                data.put("nextPageState", null);
+            } else {
+                List<Map<String, Object>> limited = matches.subList(Math.min(skip, matches.size()),
+                        (int) Math.min(matches.size(), (long) skip + limit));
+                int offset = options.get("pageState") instanceof String ? Integer.parseInt((String) options.get("pageState")) : 0;
+                int end = Math.min(limited.size(), offset + PAGE_SIZE);
+                data.put("documents", project(limited.subList(Math.min(offset, end), end), projection));
+                data.put("nextPageState", end < limited.size() ? String.valueOf(end) : null);
+            }
+            return Map.of("data", data);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> findOne(Map<String, Object> filter, Map<String, Object> sort, Map<String, Object> projection) {
+        lock.readLock().lock();
+        try {
+            List<Map<String, Object>> matches = sorted(matching(filter), sort);
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("document", matches.isEmpty() ? null : project(matches.subList(0, 1), projection).get(0));
+            return Map.of("data", data);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> count(Map<String, Object> filter) {
+        lock.readLock().lock();
+        try {
+            return Map.of("status", Map.of("count", matching(filter).size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> insert(List<Map<String, Object>> docs) {
+        List<Object> insertedIds = new ArrayList<>();
+        List<Map<String, Object>> errors = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (Map<String, Object> doc : docs) {
+                Map<String, Object> copy = new LinkedHashMap<>(doc);
+                copy.putIfAbsent("_id", UUID.randomUUID().toString());
+                Object id = copy.get("_id");
+                if (documents.putIfAbsent(id, copy) == null) {
+                    insertedIds.add(id);
+                } else {
+                    errors.add(Map.of("errorCode", "DOCUMENT_ALREADY_EXISTS",
+                            "message", "Failed to insert document with _id '" + id + "': Document already exists with the given _id"));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", Map.of("insertedIds", insertedIds));
+        if (!errors.isEmpty()) {
+            response.put("errors", errors);
+        }
+        return response;
+    }
+
+    private Map<String, Object> updateOne(Map<String, Object> filter, Map<String, Object> update, boolean upsert) {
+        lock.writeLock().lock();
+        try {
+            List<Map<String, Object>> matches = matching(filter);
+            Map<String, Object> status = new LinkedHashMap<>();
+            if (matches.isEmpty()) {
+                status.put("matchedCount", 0);
+                status.put("modifiedCount", 0);
+                if (upsert) {
+                    Map<String, Object> doc = new LinkedHashMap<>();
+                    filter.forEach((field, value) -> {
+                        if (!field.startsWith("$") && !(value instanceof Map)) {
+                            doc.put(field, value);
+                        }
+                    });
+                    doc.putIfAbsent("_id", UUID.randomUUID().toString());
+                    apply(doc, update);
+                    documents.put(doc.get("_id"), doc);
+                    status.put("upsertedId", doc.get("_id"));
+                }
+                return Map.of("status", status);
+            }
+            Map<String, Object> doc = matches.get(0);
+            Map<String, Object> before = new LinkedHashMap<>(doc);
+            apply(doc, update);
+            status.put("matchedCount", 1);
+            status.put("modifiedCount", before.equals(doc) ? 0 : 1);
+            return Map.of("status", status);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, Object> deleteOne(Map<String, Object> filter) {
+        lock.writeLock().lock();
+        try {
+            List<Map<String, Object>> matches = matching(filter);
+            if (!matches.isEmpty()) {
+                documents.remove(matches.get(0).get("_id"));
+            }
+            return Map.of("status", Map.of("deletedCount", matches.isEmpty() ? 0 : 1));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds a lock
+    private List<Map<String, Object>> matching(Map<String, Object> filter) {
+        Object id = filter.size() == 1 ? filter.get("_id") : null;
+        if (id != null && !(id instanceof Map)) {
+            Map<String, Object> doc = documents.get(id);
+            return doc == null ? List.of() : List.of(doc);
+        }
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (Map<String, Object> doc : documents.values()) {
+            if (matches(doc, filter)) {
+                matches.add(doc);
+            }
+        }
+        return matches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matches(Map<String, Object> doc, Map<String, Object> filter) {
+        for (Map.Entry<String, Object> condition : filter.entrySet()) {
+            String key = condition.getKey();
+            if ("$and".equals(key)) {
+                if (!((List<Map<String, Object>>) condition.getValue()).stream().allMatch(f -> matches(doc, f))) {
+                    return false;
+                }
+            } else if ("$or".equals(key)) {
+                if (((List<Map<String, Object>>) condition.getValue()).stream().noneMatch(f -> matches(doc, f))) {
+                    return false;
+                }
+            } else if (!matchesField(doc, key, condition.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesField(Map<String, Object> doc, String path, Object condition) {
+        boolean present = hasPath(doc, path);
+        Object value = valueAt(doc, path);
+        if (!(condition instanceof Map) || ((Map<String, Object>) condition).keySet().stream().noneMatch(k -> k.startsWith("$"))) {
+            return equalsOrContains(value, condition);
+        }
+        for (Map.Entry<String, Object> operator : ((Map<String, Object>) condition).entrySet()) {
+            Object operand = operator.getValue();
+            boolean ok;
+            switch (operator.getKey()) {
+                case "$eq":
+                    ok = equalsOrContains(value, operand);
+                    break;
+                case "$ne":
+                    ok = !equalsOrContains(value, operand);
+                    break;
+                case "$in":
+                    ok = ((List<Object>) operand).stream().anyMatch(candidate -> equalsOrContains(value, candidate));
+                    break;
+                case "$nin":
+                    ok = ((List<Object>) operand).stream().noneMatch(candidate -> equalsOrContains(value, candidate));
+                    break;
+                case "$exists":
+                    ok = present == Boolean.TRUE.equals(operand);
+                    break;
+                case "$gt":
+                    ok = compare(value, operand) > 0;
+                    break;
+                case "$gte":
+                    ok = compare(value, operand) >= 0;
+                    break;
+                case "$lt":
+                    ok = value != null && compare(value, operand) < 0;
+                    break;
+                case "$lte":
+                    ok = value != null && compare(value, operand) <= 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Filter operator not supported by the stub: " + operator.getKey());
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object valueAt(Map<String, Object> doc, String path) {
+        Object value = doc;
+        for (String part : path.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<String, Object>) value).get(part);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean hasPath(Map<String, Object> doc, String path) {
+        int dot = path.lastIndexOf('.');
+        Object parent = dot < 0 ? doc : valueAt(doc, path.substring(0, dot));
+        return parent instanceof Map && ((Map<String, Object>) parent).containsKey(path.substring(dot + 1));
+    }
+
+    // Equality as in the Data API: an array field also matches one of its elements
+    private static boolean equalsOrContains(Object value, Object operand) {
+        if (sameValue(value, operand)) {
+            return true;
+        }
+        return value instanceof List && ((List<?>) value).stream().anyMatch(element -> sameValue(element, operand));
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return Objects.equals(a, b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private static List<Map<String, Object>> sorted(List<Map<String, Object>> matches, Map<String, Object> sort) {
+        if (sort == null || sort.isEmpty()) {
+            return matches;
+        }
+        Object vectorize = sort.get("$vectorize");
+        if (vectorize != null) {
+            List<String> words = Arrays.asList(String.valueOf(vectorize).toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"));
+            List<Map.Entry<Map<String, Object>, Integer>> scored = new ArrayList<>();
+            for (Map<String, Object> doc : matches) {
+                scored.add(Map.entry(doc, score(doc, words)));
+            }
+            scored.sort(Map.Entry.<Map<String, Object>, Integer>comparingByValue().reversed());
+            List<Map<String, Object>> ranked = new ArrayList<>();
+            scored.forEach(entry -> ranked.add(entry.getKey()));
+            return ranked;
+        }
+        Comparator<Map<String, Object>> order = null;
+        for (Map.Entry<String, Object> field : sort.entrySet()) {
+            Comparator<Map<String, Object>> byField = (x, y) -> compare(valueAt(x, field.getKey()), valueAt(y, field.getKey()));
+            if (field.getValue() instanceof Number && ((Number) field.getValue()).intValue() < 0) {
+                byField = byField.reversed();
+            }
+            order = order == null ? byField : order.thenComparing(byField);
+        }
+        List<Map<String, Object>> ordered = new ArrayList<>(matches);
+        ordered.sort(order);
+        return ordered;
+    }
+
+    private static int score(Map<String, Object> doc, List<String> words) {
+        String text = (String.valueOf(doc.get("name")) + ' ' + doc.get("description") + ' ' + doc.get("city")
+                + ' ' + doc.get("country")).toLowerCase(Locale.ROOT);
+        int score = 0;
+        for (String word : words) {
+            if (word.length() > 2 && text.contains(word)) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    // Top-level inclusion ({"a": 1}) or exclusion ({"a": 0}) projections; _id is included unless excluded
+    private static List<Map<String, Object>> project(List<Map<String, Object>> docs, Map<String, Object> projection) {
+        List<Map<String, Object>> projected = new ArrayList<>(docs.size());
+        boolean inclusion = projection != null && projection.entrySet().stream()
+                .anyMatch(e -> !"_id".equals(e.getKey()) && isTrue(e.getValue()));
+        for (Map<String, Object> doc : docs) {
+            Map<String, Object> copy;
+            if (projection == null || projection.isEmpty()) {
+                copy = new LinkedHashMap<>(doc);
+            } else if (inclusion || projection.size() == 1 && isTrue(projection.get("_id"))) {
+                copy = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> field : doc.entrySet()) {
+                    if (isTrue(projection.get(field.getKey())) || "_id".equals(field.getKey()) && !projection.containsKey("_id")) {
+                        copy.put(field.getKey(), field.getValue());
+                    }
+                }
+            } else {
+                copy = new LinkedHashMap<>(doc);
+                projection.forEach((field, include) -> {
+                    if (!isTrue(include)) {
+                        copy.remove(field);
+                    }
+                });
+            }
+            projected.add(copy);
+        }
+        return projected;
+    }
+
+    private static boolean isTrue(Object value) {
+        return Boolean.TRUE.equals(value) || value instanceof Number && ((Number) value).intValue() != 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void apply(Map<String, Object> doc, Map<String, Object> update) {
+        for (Map.Entry<String, Object> operation : update.entrySet()) {
+            Map<String, Object> fields = (Map<String, Object>) operation.getValue();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                String name = field.getKey();
+                Object operand = field.getValue();
+                switch (operation.getKey()) {
+                    case "$set":
+                        doc.put(name, operand);
+                        break;
+                    case "$unset":
+                        doc.remove(name);
+                        break;
+                    case "$inc": {
+                        Number current = doc.get(name) instanceof Number ? (Number) doc.get(name) : 0;
+                        Number increment = (Number) operand;
+                        doc.put(name, isIntegral(current) && isIntegral(increment)
+                                ? (Number) (current.longValue() + increment.longValue())
+                                : (Number) (current.doubleValue() + increment.doubleValue()));
+                        break;
+                    }
+                    case "$push":
+                    case "$addToSet": {
+                        List<Object> list = doc.get(name) instanceof List ? new ArrayList<>((List<Object>) doc.get(name)) : new ArrayList<>();
+                        List<Object> values = operand instanceof Map && ((Map<String, Object>) operand).containsKey("$each")
+                                ? (List<Object>) ((Map<String, Object>) operand).get("$each") : List.of(operand);
+                        for (Object value : values) {
+                            if ("$push".equals(operation.getKey()) || !list.contains(value)) {
+                                list.add(value);
+                            }
+                        }
+                        doc.put(name, list);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Update operator not supported by the stub: " + operation.getKey());
+                }
+            }
+        }
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package trycb.loadtest;
+
+import java.text.DateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * One simulated front-end user: signs up once, then runs journeys picked by weight until the run
+ * stops, each request waiting for the previous response (closed loop), with an optional think
+ * time between journeys.
+ * <ul>
+ *   <li>browse: look up two airports, search flights between them, search hotels</li>
+ *   <li>book: log in, look up two airports, search flights, book one, list the bookings</li>
+ *   <li>signup: sign up a new user and log in</li>
+ * </ul>
+ * A closed loop slows down with the application, so under overload it under-reports latency
+ * (coordinated omission); compare runs at the same number of users, and watch throughput too.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final String PASSWORD = "loadtest-password";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ApiClient api;
+    private final String tenant;
+    private final String username;
+    private final Map<String, Integer> journeys;
+    private final int totalWeight;
+    private final List<String> airports;
+    private final Duration thinkTime;
+    private final AtomicBoolean stopped;
+    private final Random random;
+    private String token;
+    private int signups;
+
+    VirtualUser(ApiClient api, String tenant, String username, Map<String, Integer> journeys, List<String> airports,
+                Duration thinkTime, AtomicBoolean stopped, long seed) {
+        this.api = api;
+        this.tenant = tenant;
+        this.username = username;
+        this.journeys = journeys;
+        this.totalWeight = journeys.values().stream().mapToInt(Integer::intValue).sum();
+        this.airports = airports;
+        this.thinkTime = thinkTime;
+        this.stopped = stopped;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        JsonNode signedUp = api.signup(tenant, username, PASSWORD);
+        token = signedUp == null ? null : signedUp.path("token").asText(null);
+        while (!stopped.get() && !Thread.currentThread().isInterrupted()) {
+            String journey = pickJourney();
+            switch (journey) {
+                case "browse":
+                    browse();
+                    break;
+                case "book":
+                    book();
+                    break;
+                case "signup":
+                    signup();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown journey " + journey + " (browse, book, signup)");
+            }
+            think();
+        }
+    }
+
+    private void browse() {
+        List<String> route = airportNames();
+        if (route != null) {
+            api.flightPaths(route.get(0), route.get(1), departure());
+        }
+        api.hotels(SeedData.HOTEL_WORDS[random.nextInt(SeedData.HOTEL_WORDS.length)],
+                (String) SeedData.AIRPORTS[random.nextInt(SeedData.AIRPORTS.length)][3]);
+    }
+
+    private void book() {
+        if (token == null) {
+            JsonNode login = api.login(tenant, username, PASSWORD);
+            token = login == null ? null : login.path("token").asText(null);
+            if (token == null) {
+                return;
+            }
+        }
+        List<String> route = airportNames();
+        JsonNode flights = route == null ? null : api.flightPaths(route.get(0), route.get(1), departure());
+        if (flights == null || flights.size() == 0) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> flight = OBJECT_MAPPER.convertValue(flights.get(random.nextInt(flights.size())), Map.class);
+        List<Map<String, Object>> booking = new ArrayList<>();
+        booking.add(flight);
+        if (api.book(tenant, username, token, booking) != null) {
+            api.bookings(tenant, username, token);
+        }
+    }
+
+    private void signup() {
+        String newUser = username + "_" + (++signups);
+        if (api.signup(tenant, newUser, PASSWORD) != null) {
+            api.login(tenant, newUser, PASSWORD);
+        }
+    }
+
+    // Airport names of a random route, looked up by FAA code like the front-end's autocomplete
+    private List<String> airportNames() {
+        int from = random.nextInt(airports.size());
+        int to = (from + 1 + random.nextInt(airports.size() - 1)) % airports.size();
+        List<String> names = new ArrayList<>();
+        for (String faa : List.of(airports.get(from), airports.get(to))) {
+            JsonNode found = api.airports(faa);
+            if (found == null || found.size() == 0) {
+                return null;
+            }
+            names.add(found.get(0).path("airportname").asText());
+        }
+        return names;
+    }
+
+    private String departure() {
+        Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+        date.add(Calendar.DAY_OF_YEAR, 1 + random.nextInt(90));
+        DateFormat format = DateFormat.getDateInstance(DateFormat.SHORT, Locale.US);
+        format.setTimeZone(date.getTimeZone());
+        return format.format(date.getTime());
+    }
+
+    private String pickJourney() {
+        int pick = random.nextInt(totalWeight);
+        for (Map.Entry<String, Integer> journey : journeys.entrySet()) {
+            pick -= journey.getValue();
+            if (pick < 0) {
+                return journey.getKey();
+            }
+        }
+        throw new IllegalStateException("No journey configured");
+    }
+
+    private void think() {
+        if (thinkTime.isZero()) {
+            return;
+        }
+        try {
+            // Uniform between half and one and a half times the think time
+            TimeUnit.MILLISECONDS.sleep(thinkTime.toMillis() / 2 + (long) (random.nextDouble() * thinkTime.toMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+# verify_astra_migration.py
+#
+# Post-migration verification: proves that the Astra collections used by the backend
+# (airport, route, airline, hotel, user, booking) match a Couchbase source export.
+#
+# Both sides are streamed once. Every document is reduced to a canonical content hash (in a
+# process pool), and the (id, hash) pairs are folded into order-independent digests for
+# VERIFY_BUCKETS hash ranges of the id space. The range digests form the leaves of a Merkle
+# tree, so equal roots prove a collection matches without a document-by-document compare.
+# Only ranges whose digests differ are streamed a second time to name the missing, extra and
+# divergent ids.
+#
+# The source export is the JSON-lines output of
+#   cbexport json -c couchbase://localhost -u Administrator -p password -b travel-sample \
+#       -f lines -o travel-sample.jsonl --include-key _id
+# Source documents go through the same transformation as the migration before hashing, and
+# the generated vector fields ($vector, $vectorize) are ignored on both sides.
+import hashlib
+import json
+import logging
+import os
+import sys
+import time
+from concurrent.futures import ProcessPoolExecutor, ThreadPoolExecutor
+from itertools import islice
+
+import migrate_couchbase_to_astra_with_vector as migration
+
+# --- Configuration ---
+VERIFY_SOURCE_EXPORT = os.getenv("VERIFY_SOURCE_EXPORT", "travel-sample.jsonl")
+VERIFY_COLLECTIONS = ["airport", "route", "airline", "hotel", "user", "booking"] # Used by Airport, FlightPath, Hotel, TenantUser
+VERIFY_BUCKETS = 4096 # Hash ranges (Merkle leaves) per collection; a power of two
+VERIFY_HASH_WORKERS = os.cpu_count() or 4
+VERIFY_CHUNK_SIZE = 2000 # Documents per hashing task
+VERIFY_REPORT_LIMIT = 20 # Ids listed per category in the log; all are written to the report file
+VERIFY_REPORT_FILE = os.getenv("VERIFY_REPORT_FILE", "verification_report.json")
+IGNORED_FIELDS = ("$vector", "$vectorize")
+
+DIGEST_MODULUS = 1 << 128
+
+
+# --- Hashing ---
+
+def normalize(value):
+    """Integral floats hash like ints, since JSON round trips through the Data API may change 1.0 to 1."""
+    if isinstance(value, float) and value.is_integer():
+        return int(value)
+    if isinstance(value, dict):
+        return {k: normalize(v) for k, v in value.items()}
+    if isinstance(value, list):
+        return [normalize(v) for v in value]
+    return value
+
+
+def canonical_hash(doc: dict) -> bytes:
+    """Content hash of a document independent of key order and generated vector fields."""
+    body = {k: normalize(v) for k, v in doc.items() if k not in IGNORED_FIELDS}
+    canonical = json.dumps(body, sort_keys=True, separators=(",", ":"), ensure_ascii=False, default=str)
+    return hashlib.blake2b(canonical.encode("utf-8"), digest_size=16).digest()
+
+
+def bucket_of(doc_id: str) -> int:
+    return int.from_bytes(hashlib.blake2b(doc_id.encode("utf-8"), digest_size=4).digest(), "big") % VERIFY_BUCKETS
+
+
+def hash_chunk(docs: list) -> list:
+    """Worker task: (bucket, id, content hash) for each document of a chunk."""
+    return [(bucket_of(str(doc["_id"])), str(doc["_id"]), canonical_hash(doc)) for doc in docs]
+
+
+def entry_digest(doc_id: str, content_hash: bytes) -> int:
+    return int.from_bytes(hashlib.blake2b(doc_id.encode("utf-8") + content_hash, digest_size=16).digest(), "big")
+
+
+class RangeDigests:
+    """Per-bucket digests of one side of a collection. A bucket digest is the sum (mod 2^128)
+       of its entries' digests, so it can be built from a stream in any order."""
+
+    def __init__(self):
+        self.digests = [0] * VERIFY_BUCKETS
+        self.counts = [0] * VERIFY_BUCKETS
+
+    def add(self, bucket: int, doc_id: str, content_hash: bytes):
+        self.digests[bucket] = (self.digests[bucket] + entry_digest(doc_id, content_hash)) % DIGEST_MODULUS
+        self.counts[bucket] += 1
+
+    def total(self) -> int:
+        return sum(self.counts)
+
+    def merkle_root(self) -> str:
+        level = [d.to_bytes(16, "big") + c.to_bytes(8, "big") for d, c in zip(self.digests, self.counts)]
+        while len(level) > 1:
+            level = [hashlib.blake2b(level[i] + level[i + 1], digest_size=16).digest() for i in range(0, len(level), 2)]
+        return level[0].hex()
+
+
+def chunked(iterable, size):
+    iterator = iter(iterable)
+    while True:
+        chunk = list(islice(iterator, size))
+        if not chunk:
+            return
+        yield chunk
+
+
+def hash_stream(docs, pool: ProcessPoolExecutor, consume):
+    """Hashes a document stream in the process pool and feeds (bucket, id, hash) to consume.
+       Keeps a bounded number of chunks in flight so memory stays flat for large collections."""
+    in_flight = []
+    for chunk in chunked(docs, VERIFY_CHUNK_SIZE):
+        in_flight.append(pool.submit(hash_chunk, chunk))
+        if len(in_flight) >= VERIFY_HASH_WORKERS * 2:
+            for entry in in_flight.pop(0).result():
+                consume(*entry)
+    for future in in_flight:
+        for entry in future.result():
+            consume(*entry)
+
+
+# --- Document Streams ---
+
+def stream_source(collection_name: str):
+    """Source export documents of one type, transformed the same way as the migration."""
+    with open(VERIFY_SOURCE_EXPORT, encoding="utf-8") as f:
+        for line in f:
+            line = line.strip()
+            if not line:
+                continue
+            doc = json.loads(line)
+            if doc.get("type") != collection_name:
+                continue
+            key = str(doc.pop("_id"))
+            yield migration.prepare_astra_document(key, doc)
+
+
+def stream_astra(collection_name: str):
+    collection = migration.astra_db.get_collection(collection_name)
+    yield from collection.find({}, projection={field: False for field in IGNORED_FIELDS})
+
+
+# --- Verification ---
+
+def digest_side(docs, pool) -> RangeDigests:
+    digests = RangeDigests()
+    hash_stream(docs, pool, digests.add)
+    return digests
+
+
+def collect_ranges(docs, pool, buckets: set) -> dict:
+    """Second pass: id -> content hash for documents in the given (mismatching) buckets only."""
+    entries = {}
+
+    def keep(bucket, doc_id, content_hash):
+        if bucket in buckets:
+            entries[doc_id] = content_hash
+
+    hash_stream(docs, pool, keep)
+    return entries
+
+
+def verify_collection(collection_name: str, pool: ProcessPoolExecutor, side_pool: ThreadPoolExecutor) -> dict:
+    logging.info(f"--- Verifying collection: {collection_name} ---")
+    start_time = time.time()
+
+    source_future = side_pool.submit(digest_side, stream_source(collection_name), pool)
+    astra_future = side_pool.submit(digest_side, stream_astra(collection_name), pool)
+    source, astra = source_future.result(), astra_future.result()
+
+    source_root, astra_root = source.merkle_root(), astra.merkle_root()
+    result = {
+        "collection": collection_name,
+        "source_count": source.total(),
+        "astra_count": astra.total(),
+        "source_root": source_root,
+        "astra_root": astra_root,
+        "missing": [], "extra": [], "divergent": [],
+    }
+    if source_root != astra_root:
+        mismatched = {b for b in range(VERIFY_BUCKETS)
+                      if source.digests[b] != astra.digests[b] or source.counts[b] != astra.counts[b]}
+        logging.info(f"[{collection_name}] {len(mismatched)}/{VERIFY_BUCKETS} ranges differ, diffing them...")
+        source_entries = side_pool.submit(collect_ranges, stream_source(collection_name), pool, mismatched)
+        astra_entries = side_pool.submit(collect_ranges, stream_astra(collection_name), pool, mismatched)
+        source_entries, astra_entries = source_entries.result(), astra_entries.result()
+        result["missing"] = sorted(set(source_entries) - set(astra_entries))
+        result["extra"] = sorted(set(astra_entries) - set(source_entries))
+        result["divergent"] = sorted(doc_id for doc_id, content_hash in source_entries.items()
+                                     if doc_id in astra_entries and astra_entries[doc_id] != content_hash)
+
+    duration = time.time() - start_time
+    result["duration_seconds"] = round(duration, 2)
+    status = "MATCH" if source_root == astra_root else "MISMATCH"
+    logging.info(f"[{collection_name}] {status}: source {result['source_count']} docs, astra {result['astra_count']} docs, "
+                 f"missing {len(result['missing'])}, extra {len(result['extra'])}, divergent {len(result['divergent'])} "
+                 f"({duration:.2f} seconds)")
+    for category in ("missing", "extra", "divergent"):
+        if result[category]:
+            logging.info(f"[{collection_name}] {category} ids (first {VERIFY_REPORT_LIMIT}): {result[category][:VERIFY_REPORT_LIMIT]}")
+    return result
+
+
+# --- Main Execution ---
+
+def main():
+    """Verifies all configured collections and writes a JSON report. Exits non-zero on mismatch."""
+    logging.info("=== Starting Astra DB migration verification ===")
+    overall_start_time = time.time()
+    migration.connect_astra()
+
+    collections_to_verify = sys.argv[1:] or VERIFY_COLLECTIONS
+    results = []
+    with ProcessPoolExecutor(max_workers=VERIFY_HASH_WORKERS) as pool, ThreadPoolExecutor(max_workers=2) as side_pool:
+        for collection_name in collections_to_verify:
+            results.append(verify_collection(collection_name, pool, side_pool))
+
+    with open(VERIFY_REPORT_FILE, "w") as f:
+        json.dump(results, f, indent=2)
+
+    mismatches = [r["collection"] for r in results if r["source_root"] != r["astra_root"]]
+    logging.info("=== Verification Summary ===")
+    logging.info(f"Collections verified: {collections_to_verify}")
+    logging.info(f"Collections with differences: {mismatches or 'none'}")
+    logging.info(f"Report written to '{VERIFY_REPORT_FILE}'")
+    logging.info(f"Total Verification Duration: {time.time() - overall_start_time:.2f} seconds")
+    sys.exit(1 if mismatches else 0)
+
+
+if __name__ == "__main__":
+    main()